@@ -0,0 +1,128 @@
+package com.netflix.loadbalancer.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.client.ClientFactory;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.DummyPing;
+import com.netflix.loadbalancer.IRule;
+import com.netflix.loadbalancer.LoadBalancerStats;
+import com.netflix.loadbalancer.PollingServerListUpdater;
+import com.netflix.loadbalancer.Server;
+import com.netflix.loadbalancer.ServerList;
+import com.netflix.loadbalancer.ZoneAwareLoadBalancer;
+
+/**
+ * Measures the cost of {@link ZoneAwareLoadBalancer#chooseServer(Object)} for the rules shipped with
+ * ribbon-loadbalancer, with different number of servers and zones. The load balancer is shared by all
+ * benchmark threads, so the multi-threaded variants also show contention in the selection path.
+ * <p>
+ * Other thread counts can be measured by overriding the JMH thread count, for example
+ * <pre>{@code
+ * gradle :ribbon-benchmarks:jmh -Pjmh="LoadBalancerRuleBenchmark.chooseServer -t 32"
+ * }</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBalancerRuleBenchmark {
+
+    @Param({"RoundRobinRule", "RandomRule", "WeightedResponseTimeRule", "BestAvailableRule",
+            "AvailabilityFilteringRule", "ZoneAvoidanceRule", "PowerOfTwoChoicesRule",
+            "PeakEwmaRule"})
+    public String rule;
+
+    @Param({"10", "100", "1000", "5000"})
+    public int serverCount;
+
+    @Param({"1", "3"})
+    public int zoneCount;
+
+    private ZoneAwareLoadBalancer<Server> loadBalancer;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final List<Server> servers = new ArrayList<Server>(serverCount);
+        for (int i = 0; i < serverCount; i++) {
+            Server server = new Server("server" + i, 7001);
+            server.setZone("us-east-1" + (char) ('a' + i % zoneCount));
+            servers.add(server);
+        }
+        ServerList<Server> serverList = new ServerList<Server>() {
+            @Override
+            public List<Server> getInitialListOfServers() {
+                return servers;
+            }
+
+            @Override
+            public List<Server> getUpdatedListOfServers() {
+                return servers;
+            }
+        };
+
+        IClientConfig config = DefaultClientConfigImpl.getClientConfigWithDefaultValues(
+                "benchmark-" + rule + "-" + serverCount + "-" + zoneCount);
+        IRule lbRule = (IRule) ClientFactory.instantiateInstanceWithClientConfig(
+                "com.netflix.loadbalancer." + rule, config);
+        loadBalancer = new ZoneAwareLoadBalancer<Server>(config, lbRule, new DummyPing(), serverList, null,
+                new PollingServerListUpdater(config));
+
+        // give the stats based rules something to work with
+        LoadBalancerStats stats = loadBalancer.getLoadBalancerStats();
+        Random random = new Random(0);
+        for (Server server : servers) {
+            int activeRequests = random.nextInt(5);
+            for (int i = 0; i < activeRequests; i++) {
+                stats.incrementActiveRequestsCount(server);
+            }
+            for (int i = 0; i < 10; i++) {
+                stats.noteResponseTime(server, 10 + random.nextInt(100));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadBalancer.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Server chooseServer() {
+        return loadBalancer.chooseServer(null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Server chooseServer4Threads() {
+        return loadBalancer.chooseServer(null);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Server chooseServer16Threads() {
+        return loadBalancer.chooseServer(null);
+    }
+}
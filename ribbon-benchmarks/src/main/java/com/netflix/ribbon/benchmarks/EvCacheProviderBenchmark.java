@@ -0,0 +1,112 @@
+package com.netflix.ribbon.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rx.Subscription;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.ribbon.CacheProvider;
+import com.netflix.ribbon.evache.EvCacheOptions;
+import com.netflix.ribbon.evache.EvCacheProvider;
+
+/**
+ * Samples the latency of a cache hit from {@link EvCacheProvider}, from subscribing until the value is emitted,
+ * while a number of other gets are in flight. The EVCache client is replaced by one whose futures for hits are
+ * already completed, so the latency is the time it takes the provider to notice the completion.
+ * <p>
+ * The {@code baseline} implementation is {@link PollingEvCacheProvider}, which completes the gets as
+ * EvCacheProvider did before the timer wheel, so that one run compares both latency distributions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvCacheProviderBenchmark {
+
+    private static final String PENDING_KEY = "pending";
+
+    @Param({"0", "1000", "10000"})
+    public int pendingGets;
+
+    @Param({"provider", "baseline"})
+    public String implementation;
+
+    private CacheProvider<Object> provider;
+
+    private final List<Subscription> pending = new ArrayList<Subscription>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        EVCache evCache = (EVCache) Proxy.newProxyInstance(EVCache.class.getClassLoader(), new Class<?>[]{EVCache.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (!method.getName().equals("getAsynchronous")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        if (PENDING_KEY.equals(args[0])) {
+                            // never completes
+                            return new FutureTask<Object>(new Callable<Object>() {
+                                @Override
+                                public Object call() {
+                                    return null;
+                                }
+                            });
+                        }
+                        FutureTask<Object> hit = new FutureTask<Object>(new Callable<Object>() {
+                            @Override
+                            public Object call() {
+                                return "value";
+                            }
+                        });
+                        hit.run();
+                        return hit;
+                    }
+                });
+        EvCacheOptions options = new EvCacheOptions("benchmark", "benchmark-cache", false, 100, null, "{key}");
+        if (implementation.equals("baseline")) {
+            provider = new PollingEvCacheProvider(evCache);
+        } else {
+            provider = new EvCacheProvider<Object>(options, evCache);
+        }
+        for (int i = 0; i < pendingGets; i++) {
+            pending.add(provider.get(PENDING_KEY, null).subscribe());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (Subscription subscription : pending) {
+            subscription.unsubscribe();
+        }
+        pending.clear();
+    }
+
+    @Benchmark
+    public Object hit() {
+        return provider.get("hit", null).toBlocking().first();
+    }
+}
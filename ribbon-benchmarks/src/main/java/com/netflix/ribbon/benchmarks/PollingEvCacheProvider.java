@@ -0,0 +1,120 @@
+package com.netflix.ribbon.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheException;
+import com.netflix.ribbon.CacheProvider;
+import com.netflix.ribbon.evache.CacheFaultException;
+import com.netflix.ribbon.evache.CacheMissException;
+
+/**
+ * The completion of EVCache gets that {@link com.netflix.ribbon.evache.EvCacheProvider} used before the timer
+ * wheel, kept as the baseline of {@link EvCacheProviderBenchmark}: a single thread scans all pending futures
+ * and sleeps 1 ms between scans.
+ */
+class PollingEvCacheProvider implements CacheProvider<Object> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PollingEvCacheProvider.class);
+
+    private static final long WATCH_INTERVAL = 1;
+
+    private static final FutureObserver FUTURE_OBSERVER;
+
+    static {
+        FUTURE_OBSERVER = new FutureObserver();
+        FUTURE_OBSERVER.start();
+    }
+
+    private final EVCache evCache;
+
+    PollingEvCacheProvider(EVCache evCache) {
+        this.evCache = evCache;
+    }
+
+    @Override
+    public Observable<Object> get(final String key, Map<String, Object> requestProperties) {
+        return Observable.create(new OnSubscribe<Object>() {
+            @Override
+            public void call(Subscriber<? super Object> subscriber) {
+                try {
+                    FUTURE_OBSERVER.watchFuture(evCache.getAsynchronous(key), subscriber);
+                } catch (EVCacheException e) {
+                    subscriber.onError(new CacheFaultException("EVCache exception when getting value for key " + key, e));
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static final class FutureObserver extends Thread {
+        private final Map<Future, Subscriber> futureMap = new ConcurrentHashMap<Future, Subscriber>();
+
+        FutureObserver() {
+            super("EvCache-Polling-Future-Observer");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                for (Map.Entry<Future, Subscriber> f : futureMap.entrySet()) {
+                    Future<?> future = f.getKey();
+                    Subscriber subscriber = f.getValue();
+                    if (subscriber.isUnsubscribed()) {
+                        future.cancel(true);
+                        futureMap.remove(future);
+                    } else if (future.isDone()) {
+                        try {
+                            handleCompletedFuture(future, subscriber);
+                        } catch (Error e) {
+                            throw e;
+                        } catch (Throwable e) {
+                            LOGGER.warn("unexpected error during checking future result", e);
+                        } finally {
+                            futureMap.remove(future);
+                        }
+                    }
+                }
+
+                try {
+                    Thread.sleep(WATCH_INTERVAL);
+                } catch (InterruptedException e) {
+                    // Never terminate
+                }
+            }
+        }
+
+        private static void handleCompletedFuture(Future future, Subscriber subscriber) throws InterruptedException {
+            if (future.isCancelled()) {
+                subscriber.onError(new CacheFaultException("cache get request canceled"));
+            } else {
+                try {
+                    Object value = future.get();
+                    if (value == null) {
+                        subscriber.onError(new CacheMissException());
+                    } else {
+                        subscriber.onNext(value);
+                        subscriber.onCompleted();
+                    }
+                } catch (ExecutionException e) {
+                    subscriber.onError(e.getCause());
+                }
+            }
+        }
+
+        void watchFuture(Future future, Subscriber<?> subscriber) {
+            futureMap.put(future, subscriber);
+        }
+    }
+}
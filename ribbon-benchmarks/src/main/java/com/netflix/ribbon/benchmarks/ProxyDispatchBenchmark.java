@@ -0,0 +1,77 @@
+package com.netflix.ribbon.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.netflix.ribbon.ClientOptions;
+import com.netflix.ribbon.Ribbon;
+import com.netflix.ribbon.RibbonRequest;
+import com.netflix.ribbon.http.HttpRequestTemplate;
+import com.netflix.ribbon.http.HttpResourceGroup;
+import com.netflix.ribbon.proxy.annotation.Http;
+import com.netflix.ribbon.proxy.annotation.Http.HttpMethod;
+import com.netflix.ribbon.proxy.annotation.ResourceGroup;
+import com.netflix.ribbon.proxy.annotation.TemplateName;
+import com.netflix.ribbon.proxy.annotation.Var;
+
+/**
+ * Compares the cost of creating a request through a proxy of an annotated interface with creating the same
+ * request directly from an {@link HttpRequestTemplate}. The requests are only created, not executed, so the
+ * difference is the overhead of the proxy dispatch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyDispatchBenchmark {
+
+    @ResourceGroup(name = "proxyDispatchBenchmark")
+    public interface MovieService {
+        @TemplateName("findMovie")
+        @Http(method = HttpMethod.GET, uri = "/users/{userId}/movies/{movieId}")
+        RibbonRequest<ByteBuf> findMovie(@Var("userId") String userId, @Var("movieId") String movieId);
+    }
+
+    private MovieService movieService;
+
+    private HttpRequestTemplate<ByteBuf> template;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        movieService = Ribbon.from(MovieService.class);
+        HttpResourceGroup group = Ribbon.createHttpResourceGroup("templateDispatchBenchmark",
+                ClientOptions.create().withConfigurationBasedServerList("localhost:7001"));
+        template = group.newTemplateBuilder("findMovie")
+                .withMethod("GET")
+                .withUriTemplate("/users/{userId}/movies/{movieId}")
+                .build();
+    }
+
+    @Benchmark
+    public RibbonRequest<ByteBuf> proxy() {
+        return movieService.findMovie("user1", "movie1");
+    }
+
+    @Benchmark
+    public RibbonRequest<ByteBuf> template() {
+        return template.requestBuilder()
+                .withRequestProperty("userId", "user1")
+                .withRequestProperty("movieId", "movie1")
+                .build();
+    }
+}
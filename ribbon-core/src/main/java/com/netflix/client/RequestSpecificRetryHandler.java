@@ -57,7 +57,9 @@ public class RequestSpecificRetryHandler implements RetryHandler {
         } 
         else if (e instanceof ClientException) {
             ClientException ce = (ClientException) e;
-            if (ce.getErrorType() == ClientException.ErrorType.SERVER_THROTTLED) {
+            // the request was not processed by the server, so it is safe to try another one
+            if (ce.getErrorType() == ClientException.ErrorType.SERVER_THROTTLED
+                    || ce.getErrorType() == ClientException.ErrorType.CONCURRENCY_LIMIT_EXCEEDED) {
                 return !sameServer;
             } else {
                 return false;
@@ -190,6 +190,48 @@ public abstract class CommonClientConfigKey<T> implements IClientConfigKey<T> {
     
     public static final IClientConfigKey<String> ListOfServers = new CommonClientConfigKey<String>("listOfServers") {};
 
+    public static final IClientConfigKey<Boolean> EnableHedging = new CommonClientConfigKey<Boolean>("EnableHedging") {};
+
+    public static final IClientConfigKey<Integer> HedgeDelay = new CommonClientConfigKey<Integer>("HedgeDelay") {};
+
+    public static final IClientConfigKey<Double> HedgeDelayPercentile = new CommonClientConfigKey<Double>("HedgeDelayPercentile") {};
+
+    public static final IClientConfigKey<Double> MaxHedgePercent = new CommonClientConfigKey<Double>("MaxHedgePercent") {};
+
+    public static final IClientConfigKey<Boolean> EnableRetryBudget = new CommonClientConfigKey<Boolean>("EnableRetryBudget") {};
+
+    public static final IClientConfigKey<Double> RetryBudgetPercent = new CommonClientConfigKey<Double>("RetryBudgetPercent") {};
+
+    public static final IClientConfigKey<Integer> RetryBudgetMaxRetries = new CommonClientConfigKey<Integer>("RetryBudgetMaxRetries") {};
+
+    public static final IClientConfigKey<Boolean> EnableConcurrencyLimit = new CommonClientConfigKey<Boolean>("EnableConcurrencyLimit") {};
+
+    public static final IClientConfigKey<Boolean> ConcurrencyLimitPerServer = new CommonClientConfigKey<Boolean>("ConcurrencyLimitPerServer") {};
+
+    public static final IClientConfigKey<Integer> InitialConcurrencyLimit = new CommonClientConfigKey<Integer>("InitialConcurrencyLimit") {};
+
+    public static final IClientConfigKey<Double> ConcurrencyLimitRttTolerance = new CommonClientConfigKey<Double>("ConcurrencyLimitRttTolerance") {};
+
+    public static final IClientConfigKey<Boolean> EnableOutlierDetection = new CommonClientConfigKey<Boolean>("EnableOutlierDetection") {};
+
+    public static final IClientConfigKey<Integer> OutlierDetectionInterval = new CommonClientConfigKey<Integer>("OutlierDetectionInterval") {};
+
+    public static final IClientConfigKey<Integer> OutlierEjectionTime = new CommonClientConfigKey<Integer>("OutlierEjectionTime") {};
+
+    public static final IClientConfigKey<Integer> MaxOutlierEjectionPercent = new CommonClientConfigKey<Integer>("MaxOutlierEjectionPercent") {};
+
+    public static final IClientConfigKey<Double> OutlierSuccessRateStdevFactor = new CommonClientConfigKey<Double>("OutlierSuccessRateStdevFactor") {};
+
+    public static final IClientConfigKey<Double> OutlierLatencyFactor = new CommonClientConfigKey<Double>("OutlierLatencyFactor") {};
+
+    public static final IClientConfigKey<Integer> OutlierMinRequests = new CommonClientConfigKey<Integer>("OutlierMinRequests") {};
+
+    public static final IClientConfigKey<Integer> OutlierMinServers = new CommonClientConfigKey<Integer>("OutlierMinServers") {};
+
+    public static final IClientConfigKey<Integer> SlowStartWindow = new CommonClientConfigKey<Integer>("SlowStartWindow") {};
+
+    public static final IClientConfigKey<Double> SlowStartMinWeight = new CommonClientConfigKey<Double>("SlowStartMinWeight") {};
+
     private static final Set<IClientConfigKey> keys = new HashSet<IClientConfigKey>();
         
     static {
@@ -176,6 +176,26 @@ public class DefaultClientConfigImpl implements IClientConfig {
     public static final Boolean DEFAULT_ENABLE_ZONE_AFFINITY = Boolean.FALSE;
     public static final Boolean DEFAULT_ENABLE_ZONE_EXCLUSIVITY = Boolean.FALSE;
     public static final int DEFAULT_PORT = 7001;
+    public static final Boolean DEFAULT_ENABLE_HEDGING = Boolean.FALSE;
+    public static final int DEFAULT_HEDGE_DELAY = 100;
+    public static final double DEFAULT_MAX_HEDGE_PERCENT = 10;
+    public static final Boolean DEFAULT_ENABLE_RETRY_BUDGET = Boolean.FALSE;
+    public static final double DEFAULT_RETRY_BUDGET_PERCENT = 20;
+    public static final int DEFAULT_RETRY_BUDGET_MAX_RETRIES = 100;
+    public static final Boolean DEFAULT_ENABLE_CONCURRENCY_LIMIT = Boolean.FALSE;
+    public static final Boolean DEFAULT_CONCURRENCY_LIMIT_PER_SERVER = Boolean.FALSE;
+    public static final int DEFAULT_INITIAL_CONCURRENCY_LIMIT = 20;
+    public static final double DEFAULT_CONCURRENCY_LIMIT_RTT_TOLERANCE = 2.0;
+    public static final Boolean DEFAULT_ENABLE_OUTLIER_DETECTION = Boolean.FALSE;
+    public static final int DEFAULT_OUTLIER_DETECTION_INTERVAL = 10000;
+    public static final int DEFAULT_OUTLIER_EJECTION_TIME = 30000;
+    public static final int DEFAULT_MAX_OUTLIER_EJECTION_PERCENT = 20;
+    public static final double DEFAULT_OUTLIER_SUCCESS_RATE_STDEV_FACTOR = 1.9;
+    public static final double DEFAULT_OUTLIER_LATENCY_FACTOR = 3.0;
+    public static final int DEFAULT_OUTLIER_MIN_REQUESTS = 10;
+    public static final int DEFAULT_OUTLIER_MIN_SERVERS = 5;
+    public static final int DEFAULT_SLOW_START_WINDOW = 0;
+    public static final double DEFAULT_SLOW_START_MIN_WEIGHT = 0.1;
     public static final Boolean DEFAULT_ENABLE_LOADBALANCER = Boolean.TRUE;
 
     public static final String DEFAULT_PROPERTY_NAME_SPACE = "ribbon";
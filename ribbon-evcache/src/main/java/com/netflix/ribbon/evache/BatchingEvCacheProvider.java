@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.netflix.ribbon.evache;
+
+import com.netflix.evcache.EVCache;
+import com.netflix.evcache.EVCacheException;
+import com.netflix.evcache.EVCacheTranscoder;
+import com.netflix.ribbon.BatchingCacheProvider;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+import rx.schedulers.Schedulers;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An EVCache provider that fetches the lookups of concurrent requests with one EVCache bulk get,
+ * see {@link BatchingCacheProvider}.
+ */
+public class BatchingEvCacheProvider<T> extends BatchingCacheProvider<T> {
+
+    private final EvCacheOptions options;
+    private final EVCache evCache;
+
+    public BatchingEvCacheProvider(EvCacheOptions options, long batchWindowMillis, int maxBatchSize) {
+        this(options, EvCacheProvider.createEvCache(options), batchWindowMillis, maxBatchSize);
+    }
+
+    public BatchingEvCacheProvider(EvCacheOptions options, EVCache evCache, long batchWindowMillis, int maxBatchSize) {
+        super(batchWindowMillis, maxBatchSize);
+        this.options = options;
+        this.evCache = evCache;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Observable<Map<String, T>> getBulk(final Collection<String> keys) {
+        // the bulk get of EVCache blocks until all values are read
+        return Observable.create(new OnSubscribe<Map<String, T>>() {
+            @Override
+            public void call(Subscriber<? super Map<String, T>> subscriber) {
+                Map<String, T> values;
+                try {
+                    if (options.getTranscoder() == null) {
+                        values = evCache.getBulk(keys);
+                    } else {
+                        values = evCache.getBulk(keys, (EVCacheTranscoder<T>) options.getTranscoder());
+                    }
+                } catch (EVCacheException e) {
+                    subscriber.onError(new CacheFaultException("EVCache exception when getting values for keys " + keys, e));
+                    return;
+                }
+                if (values != null) {
+                    subscriber.onNext(values);
+                }
+                subscriber.onCompleted();
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    @Override
+    protected Throwable createMissException(String key) {
+        return new CacheMissException();
+    }
+}
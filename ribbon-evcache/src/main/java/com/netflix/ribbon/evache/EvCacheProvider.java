@@ -25,11 +25,19 @@ import org.slf4j.LoggerFactory;
 import rx.Observable;
 import rx.Observable.OnSubscribe;
 import rx.Subscriber;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * @author Tomasz Bak
@@ -38,8 +46,6 @@ public class EvCacheProvider<T> implements CacheProvider<T> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(EvCacheProvider.class);
 
-    private static final long WATCH_INTERVAL = 1;
-
     private static final FutureObserver FUTURE_OBSERVER;
 
     static {
@@ -51,7 +57,18 @@ public class EvCacheProvider<T> implements CacheProvider<T> {
     private final EVCache evCache;
 
     public EvCacheProvider(EvCacheOptions options) {
+        this(options, createEvCache(options));
+    }
+
+    /**
+     * Creates a provider that reads from the given EVCache client instead of building one from the options.
+     */
+    public EvCacheProvider(EvCacheOptions options, EVCache evCache) {
         this.options = options;
+        this.evCache = evCache;
+    }
+
+    static EVCache createEvCache(EvCacheOptions options) {
         EVCache.Builder builder = new EVCache.Builder();
         if (options.isEnableZoneFallback()) {
             builder.enableZoneFallback();
@@ -59,7 +76,7 @@ public class EvCacheProvider<T> implements CacheProvider<T> {
         builder.setDefaultTTL(options.getTimeToLive());
         builder.setAppName(options.getAppName());
         builder.setCacheName(options.getCacheName());
-        evCache = builder.build();
+        return builder.build();
     }
 
     @SuppressWarnings("unchecked")
@@ -83,45 +100,130 @@ public class EvCacheProvider<T> implements CacheProvider<T> {
         });
     }
 
+    /**
+     * Completes the subscribers of the futures returned by EVCache, which cannot notify on completion. Rather than
+     * scanning all pending futures continuously, each future is placed on a hashed timer wheel and checked every tick
+     * while it is young, when most cache hits complete, and with exponential backoff after that, so that a slow or
+     * abandoned future costs little. Unsubscribing cancels the future right away, and the thread sleeps while no
+     * futures are pending.
+     */
     @SuppressWarnings({"unchecked", "rawtypes"})
     static final class FutureObserver extends Thread {
-        private final Map<Future, Subscriber> futureMap = new ConcurrentHashMap<Future, Subscriber>();
+        private static final long TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+        // futures are checked every tick for the first 2 ms
+        private static final int EAGER_TICKS = 20;
+        private static final int MAX_DELAY_TICKS = 64;
+        // larger than the maximum delay, so a slot only holds futures that are due
+        private static final int WHEEL_SIZE = 128;
+
+        private final Queue<Watch> added = new ConcurrentLinkedQueue<Watch>();
+        private volatile boolean idle;
+
+        // only accessed by the observer thread
+        private final List<Watch>[] wheel = new List[WHEEL_SIZE];
+        private List<Watch> due = new ArrayList<Watch>();
+        private long tick;
+        private int pending;
+
+        private static final class Watch implements Action0 {
+            final Future future;
+            final Subscriber subscriber;
+            final AtomicBoolean finished = new AtomicBoolean();
+            int age;
+            int delay;
+
+            Watch(Future future, Subscriber subscriber) {
+                this.future = future;
+                this.subscriber = subscriber;
+            }
+
+            @Override
+            public void call() {
+                if (finished.compareAndSet(false, true)) {
+                    future.cancel(true);
+                }
+            }
+        }
 
         FutureObserver() {
             super("EvCache-Future-Observer");
             setDaemon(true);
+            for (int i = 0; i < WHEEL_SIZE; i++) {
+                wheel[i] = new ArrayList<Watch>();
+            }
         }
 
         @Override
         public void run() {
+            long nextTick = System.nanoTime();
             while (true) {
-                for (Map.Entry<Future, Subscriber> f : futureMap.entrySet()) {
-                    Future<?> future = f.getKey();
-                    Subscriber subscriber = f.getValue();
-                    if (subscriber.isUnsubscribed()) {
-                        future.cancel(true);
-                        futureMap.remove(future);
-                    } else if (future.isDone()) {
-                        try {
-                            handleCompletedFuture(future, subscriber);
-                        } catch (Error e) {
-                            throw e;
-                        } catch (Throwable e) {
-                            LOGGER.warn("unexpected error during checking future result", e);
-                        } finally {
-                            futureMap.remove(future);
-                        }
+                Watch watch;
+                while ((watch = added.poll()) != null) {
+                    watch.delay = 1;
+                    schedule(watch);
+                    pending++;
+                }
+                int slot = (int) (tick & (WHEEL_SIZE - 1));
+                List<Watch> current = wheel[slot];
+                wheel[slot] = due;
+                due = current;
+                for (Watch w : due) {
+                    if (check(w)) {
+                        pending--;
+                    } else {
+                        w.age += w.delay;
+                        w.delay = w.age < EAGER_TICKS ? 1 : Math.min(w.delay * 2, MAX_DELAY_TICKS);
+                        schedule(w);
                     }
                 }
+                due.clear();
+                tick++;
 
-                try {
-                    Thread.sleep(WATCH_INTERVAL);
-                } catch (InterruptedException e) {
-                    // Never terminate
+                if (pending == 0) {
+                    idle = true;
+                    if (added.isEmpty()) {
+                        LockSupport.park(this);
+                    }
+                    idle = false;
+                    nextTick = System.nanoTime();
+                } else {
+                    nextTick += TICK_NANOS;
+                    long wait = nextTick - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(this, wait);
+                    }
                 }
             }
         }
 
+        private void schedule(Watch watch) {
+            wheel[(int) ((tick + watch.delay) & (WHEEL_SIZE - 1))].add(watch);
+        }
+
+        /**
+         * @return true if the future is no longer watched
+         */
+        private static boolean check(Watch watch) {
+            if (watch.finished.get()) {
+                // canceled by unsubscribing
+                return true;
+            }
+            if (!watch.future.isDone()) {
+                return false;
+            }
+            if (!watch.finished.compareAndSet(false, true)) {
+                return true;
+            }
+            try {
+                handleCompletedFuture(watch.future, watch.subscriber);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                LOGGER.warn("unexpected error during checking future result", e);
+            }
+            return true;
+        }
+
         private static void handleCompletedFuture(Future future, Subscriber subscriber) throws InterruptedException {
             if (future.isCancelled()) {
                 subscriber.onError(new CacheFaultException("cache get request canceled"));
@@ -141,7 +243,12 @@ public class EvCacheProvider<T> implements CacheProvider<T> {
         }
 
         void watchFuture(Future future, Subscriber<?> subscriber) {
-            futureMap.put(future, subscriber);
+            Watch watch = new Watch(future, subscriber);
+            subscriber.add(Subscriptions.create(watch));
+            added.add(watch);
+            if (idle) {
+                LockSupport.unpark(this);
+            }
         }
     }
 }
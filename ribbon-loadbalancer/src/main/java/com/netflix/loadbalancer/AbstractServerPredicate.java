@@ -36,6 +36,12 @@ import com.netflix.loadbalancer.PredicateKey;
  * The input object of the predicate is {@link PredicateKey}, which has Server and load balancer key
  * information. Therefore, it is possible to develop logic to filter servers by both Server and load balancer
  * key or either one of them. 
+ * <p>
+ * Subclasses that are used on the request path should also override {@link #apply(Server, Object)}, which
+ * is used by {@link #chooseRoundRobin(List, Object)} and {@link #chooseRandomly(List, Object)} to evaluate
+ * the predicate in place without creating a {@link PredicateKey} or a filtered list for every request.
+ * A subclass that overrides {@link #getEligibleServers(List, Object)} is filtered in place only if it also
+ * overrides {@link #getEligibleIndices(List, Object, int[])}; otherwise its own filtering is used.
  * 
  * @author awang
  *
@@ -48,11 +54,23 @@ public abstract class AbstractServerPredicate implements Predicate<PredicateKey>
     private final Random random = new Random();
     
     private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private final boolean filtersInPlace = filtersInPlace(getClass());
+
+    /**
+     * Per thread buffer of indices of eligible servers, reused across requests
+     */
+    private static final ThreadLocal<int[]> eligibleIndices = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[64];
+        }
+    };
             
     private final Predicate<Server> serverOnlyPredicate =  new Predicate<Server>() {
         @Override
         public boolean apply(@Nullable Server input) {                    
-            return AbstractServerPredicate.this.apply(new PredicateKey(input));
+            return AbstractServerPredicate.this.apply(input, null);
         }
     };
 
@@ -62,6 +80,11 @@ public abstract class AbstractServerPredicate implements Predicate<PredicateKey>
             public boolean apply(@Nullable PredicateKey input) {
                 return true;
             }
+
+            @Override
+            public boolean apply(Server server, Object loadBalancerKey) {
+                return true;
+            }
         };
     }
 
@@ -101,6 +124,15 @@ public abstract class AbstractServerPredicate implements Predicate<PredicateKey>
     public void setLoadBalancerStats(LoadBalancerStats stats) {
         this.lbStats = stats;
     }
+
+    /**
+     * Evaluate this predicate for a server and load balancer key. The default implementation
+     * wraps them in a {@link PredicateKey} and calls {@link #apply(PredicateKey)}. Subclasses
+     * should override it to avoid the allocation.
+     */
+    public boolean apply(Server server, Object loadBalancerKey) {
+        return apply(new PredicateKey(loadBalancerKey, server));
+    }
     
     /**
      * Get the predicate to filter list of servers. The load balancer key is treated as null
@@ -130,13 +162,99 @@ public abstract class AbstractServerPredicate implements Predicate<PredicateKey>
         } else {
             List<Server> results = Lists.newArrayList();
             for (Server server: servers) {
-                if (this.apply(new PredicateKey(loadBalancerKey, server))) {
+                if (this.apply(server, loadBalancerKey)) {
                     results.add(server);
                 }
             }
             return results;            
         }
     }
+
+    /**
+     * Write the indices of servers that are eligible according to this predicate into
+     * the given array, which must be at least as long as the list of servers.
+     *
+     * @return number of eligible servers
+     */
+    protected int getEligibleIndices(List<Server> servers, Object loadBalancerKey, int[] indices) {
+        int count = 0;
+        for (int i = 0, size = servers.size(); i < size; i++) {
+            if (this.apply(servers.get(i), loadBalancerKey)) {
+                indices[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Filtering in place agrees with {@link #getEligibleServers(List, Object)} unless a subclass customizes
+     * the latter without customizing {@link #getEligibleIndices(List, Object, int[])} along with it
+     */
+    private static boolean filtersInPlace(Class<?> type) {
+        Class<?> serversOwner = declaringClass(type, "getEligibleServers", List.class, Object.class);
+        Class<?> indicesOwner = declaringClass(type, "getEligibleIndices", List.class, Object.class, int[].class);
+        return serversOwner.isAssignableFrom(indicesOwner);
+    }
+
+    private static Class<?> declaringClass(Class<?> type, String name, Class<?>... parameterTypes) {
+        for (Class<?> c = type; c != AbstractServerPredicate.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return c;
+            } catch (NoSuchMethodException e) { // NOPMD
+            }
+        }
+        return AbstractServerPredicate.class;
+    }
+
+    private static int[] eligibleIndicesBuffer(int size) {
+        int[] indices = eligibleIndices.get();
+        if (indices.length < size) {
+            indices = new int[Math.max(size, indices.length * 2)];
+            eligibleIndices.set(indices);
+        }
+        return indices;
+    }
+
+    /**
+     * Choose a server in a round robin fashion after the predicate filters a given list of servers and
+     * load balancer key. Unlike {@link #chooseRoundRobinAfterFiltering(List, Object)}, the servers are
+     * filtered in place and no objects are created in steady state. The list should support fast
+     * random access.
+     *
+     * @return the chosen server, or null if no server is eligible
+     */
+    @Nullable
+    public Server chooseRoundRobin(List<Server> servers, Object loadBalancerKey) {
+        if (!filtersInPlace) {
+            return chooseRoundRobinAfterFiltering(servers, loadBalancerKey).orNull();
+        }
+        int[] indices = eligibleIndicesBuffer(servers.size());
+        int count = getEligibleIndices(servers, loadBalancerKey, indices);
+        if (count == 0) {
+            return null;
+        }
+        return servers.get(indices[(nextIndex.getAndIncrement() & Integer.MAX_VALUE) % count]);
+    }
+
+    /**
+     * Choose a random server after the predicate filters a given list of servers and load balancer key.
+     * The servers are filtered in place as in {@link #chooseRoundRobin(List, Object)}.
+     *
+     * @return the chosen server, or null if no server is eligible
+     */
+    @Nullable
+    public Server chooseRandomly(List<Server> servers, Object loadBalancerKey) {
+        if (!filtersInPlace) {
+            return chooseRandomlyAfterFiltering(servers, loadBalancerKey).orNull();
+        }
+        int[] indices = eligibleIndicesBuffer(servers.size());
+        int count = getEligibleIndices(servers, loadBalancerKey, indices);
+        if (count == 0) {
+            return null;
+        }
+        return servers.get(indices[random.nextInt(count)]);
+    }
     
     /**
      * Choose a random server after the predicate filters a list of servers. Load balancer key 
@@ -210,6 +328,11 @@ public abstract class AbstractServerPredicate implements Predicate<PredicateKey>
             public boolean apply(PredicateKey input) {
                 return p.apply(input.getServer());
             }            
+
+            @Override
+            public boolean apply(Server server, Object loadBalancerKey) {
+                return p.apply(server);
+            }
         };        
     }
 }
@@ -20,14 +20,13 @@ package com.netflix.loadbalancer;
 import javax.annotation.Nullable;
 
 import com.netflix.client.config.IClientConfig;
-import com.netflix.config.ChainedDynamicProperty;
 import com.netflix.config.DynamicBooleanProperty;
 import com.netflix.config.DynamicIntProperty;
 import com.netflix.config.DynamicPropertyFactory;
 
 /**
- * Predicate with the logic of filtering out circuit breaker tripped servers and servers 
- * with too many concurrent connections from this client.
+ * Predicate with the logic of filtering out circuit breaker tripped servers, servers ejected
+ * as outliers by the {@link OutlierDetector} and servers with too many concurrent connections from this client.
  * 
  * @author awang
  *
@@ -40,7 +39,11 @@ public class AvailabilityPredicate extends  AbstractServerPredicate {
     private static final DynamicIntProperty ACTIVE_CONNECTIONS_LIMIT =
             DynamicPropertyFactory.getInstance().getIntProperty("niws.loadbalancer.availabilityFilteringRule.activeConnectionsLimit", Integer.MAX_VALUE);
 
-    private ChainedDynamicProperty.IntProperty activeConnectionsLimit = new ChainedDynamicProperty.IntProperty(ACTIVE_CONNECTIONS_LIMIT);
+    private static final int UNSET_ACTIVE_CONNECTIONS_LIMIT = Integer.MIN_VALUE;
+
+    // the limit of the client, which overrides ACTIVE_CONNECTIONS_LIMIT when it is set. It is read as an int
+    // instead of through a ChainedDynamicProperty, which would box the limit for every server that is filtered.
+    private DynamicIntProperty activeConnectionsLimit;
         
     public AvailabilityPredicate(IRule rule, IClientConfig clientConfig) {
         super(rule, clientConfig);
@@ -60,26 +63,40 @@ public class AvailabilityPredicate extends  AbstractServerPredicate {
         String id = "default";
         if (clientConfig != null) {
             id = clientConfig.getClientName();
-            activeConnectionsLimit = new ChainedDynamicProperty.IntProperty(id + "." + clientConfig.getNameSpace() + ".ActiveConnectionsLimit", ACTIVE_CONNECTIONS_LIMIT); 
+            activeConnectionsLimit = DynamicPropertyFactory.getInstance().getIntProperty(
+                    id + "." + clientConfig.getNameSpace() + ".ActiveConnectionsLimit", UNSET_ACTIVE_CONNECTIONS_LIMIT);
         }               
     }
     
     @Override
     public boolean apply(@Nullable PredicateKey input) {
+        return apply(input.getServer(), input.getLoadBalancerKey());
+    }
+
+    @Override
+    public boolean apply(Server server, Object loadBalancerKey) {
         LoadBalancerStats stats = getLBStats();
         if (stats == null) {
             return true;
         }
-        return !shouldSkipServer(stats.getSingleServerStat(input.getServer()));
+        if (stats.isOutlierEjected(server)) {
+            return false;
+        }
+        return !shouldSkipServer(stats.getSingleServerStat(server));
     }
     
     
     private boolean shouldSkipServer(ServerStats stats) {        
         if ((CIRCUIT_BREAKER_FILTERING.get() && stats.isCircuitBreakerTripped()) 
-                || stats.getActiveRequestsCount() >= activeConnectionsLimit.get()) {
+                || stats.getActiveRequestsCount() >= getActiveConnectionsLimit()) {
             return true;
         }
         return false;
     }
 
+    private int getActiveConnectionsLimit() {
+        int limit = activeConnectionsLimit == null ? UNSET_ACTIVE_CONNECTIONS_LIMIT : activeConnectionsLimit.get();
+        return limit == UNSET_ACTIVE_CONNECTIONS_LIMIT ? ACTIVE_CONNECTIONS_LIMIT.get() : limit;
+    }
+
 }
@@ -32,6 +32,8 @@ import com.netflix.util.concurrent.ShutdownEnabledTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -66,12 +68,29 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
 
     protected IPing ping = null;
 
+    /**
+     * The "all" and "up" server lists, published together as one immutable snapshot.
+     * Readers never lock; writers serialize on the write lock of {@link #allServerLock}.
+     */
+    protected volatile ServerListSnapshot serverListSnapshot = ServerListSnapshot.EMPTY;
+
+    /**
+     * @deprecated unmodifiable view of the "all" list of {@link #serverListSnapshot}, updated whenever a new
+     *             snapshot is published. Assigning it does not change the servers of the load balancer.
+     *             Use {@link #getServerListSnapshot()} instead.
+     */
+    @Deprecated
     @Monitor(name = PREFIX + "AllServerList", type = DataSourceType.INFORMATIONAL)
-    protected volatile List<Server> allServerList = Collections
-            .synchronizedList(new ArrayList<Server>());
+    protected volatile List<Server> allServerList = ServerListSnapshot.EMPTY.getAllServers();
+
+    /**
+     * @deprecated unmodifiable view of the "up" list of {@link #serverListSnapshot}, updated whenever a new
+     *             snapshot is published. Assigning it does not change the servers of the load balancer.
+     *             Use {@link #getServerListSnapshot()} instead.
+     */
+    @Deprecated
     @Monitor(name = PREFIX + "UpServerList", type = DataSourceType.INFORMATIONAL)
-    protected volatile List<Server> upServerList = Collections
-            .synchronizedList(new ArrayList<Server>());
+    protected volatile List<Server> upServerList = ServerListSnapshot.EMPTY.getUpServers();
 
     protected ReadWriteLock allServerLock = new ReentrantReadWriteLock();
     protected ReadWriteLock upServerLock = new ReentrantReadWriteLock();
@@ -87,6 +106,9 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
 
     protected LoadBalancerStats lbStats;
 
+    // false for the zone load balancers of a ZoneAwareLoadBalancer, which share its statistics
+    boolean ownsLoadBalancerStats = true;
+
     private volatile Counter counter = Monitors.newCounter("LoadBalancer_ChooseServer");
 
     private PrimeConnections primeConnections;
@@ -131,7 +153,7 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
 
     public BaseLoadBalancer(String name, IRule rule, LoadBalancerStats stats,
             IPing ping) {
-        this(name, rule, stats, ping, DEFAULT_PING_STRATEGY);
+        this(name, rule, stats, ping, pingStrategyFor(ping));
     }
     
     public BaseLoadBalancer(String name, IRule rule, LoadBalancerStats stats,
@@ -178,6 +200,17 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         setRule(rule);
         setPing(ping);
         setLoadBalancerStats(new LoadBalancerStats(clientName));
+        if (clientConfig.get(CommonClientConfigKey.EnableOutlierDetection, DefaultClientConfigImpl.DEFAULT_ENABLE_OUTLIER_DETECTION)) {
+            OutlierDetector outlierDetector = new OutlierDetector(this, lbStats, clientConfig);
+            lbStats.setOutlierDetector(outlierDetector);
+            Monitors.registerObject("OutlierDetector_" + name, outlierDetector);
+            outlierDetector.start();
+        }
+        SlowStart slowStart = SlowStart.create(clientConfig);
+        if (slowStart != null) {
+            lbStats.setSlowStart(slowStart);
+            addServerListChangeListener(slowStart);
+        }
         rule.setLoadBalancer(this);
         if (ping instanceof AbstractLoadBalancerPing) {
             ((AbstractLoadBalancerPing) ping).setLoadBalancer(this);
@@ -289,6 +322,11 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         this.lbStats = lbStats;
     }
 
+    /**
+     * @deprecated the server lists are published as an immutable {@link ServerListSnapshot}
+     *             and readers do not need to lock. Use {@link #getServerListSnapshot()} instead.
+     */
+    @Deprecated
     public Lock lockAllServerList(boolean write) {
         Lock aproposLock = write ? allServerLock.writeLock() : allServerLock
                 .readLock();
@@ -296,6 +334,11 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         return aproposLock;
     }
 
+    /**
+     * @deprecated the server lists are published as an immutable {@link ServerListSnapshot}
+     *             and readers do not need to lock. Use {@link #getServerListSnapshot()} instead.
+     */
+    @Deprecated
     public Lock lockUpServerList(boolean write) {
         Lock aproposLock = write ? upServerLock.writeLock() : upServerLock
                 .readLock();
@@ -343,6 +386,18 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         return ping;
     }
 
+    public IPingStrategy getPingStrategy() {
+        return pingStrategy;
+    }
+
+    /**
+     * A ping which is also an {@link IPingStrategy}, e.g. one that pings all servers concurrently,
+     * is used as its own ping strategy.
+     */
+    private static IPingStrategy pingStrategyFor(IPing ping) {
+        return ping instanceof IPingStrategy ? (IPingStrategy) ping : DEFAULT_PING_STRATEGY;
+    }
+
     public IRule getRule() {
         return rule;
     }
@@ -351,9 +406,12 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         return pingInProgress.get();
     }
 
-    /* Specify the object which is used to send pings. */
+    /* Specify the object which is used to send pings. It is also used as ping strategy if it is an IPingStrategy. */
 
     public void setPing(IPing ping) {
+        if (ping instanceof IPingStrategy || pingStrategy == this.ping) {
+            pingStrategy = pingStrategyFor(ping);
+        }
         if (ping != null) {
             if (!ping.equals(this.ping)) {
                 this.ping = ping;
@@ -387,10 +445,11 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
      *            if true, return only up servers.
      */
     public int getServerCount(boolean onlyAvailable) {
+        ServerListSnapshot snapshot = serverListSnapshot;
         if (onlyAvailable) {
-            return upServerList.size();
+            return snapshot.getUpServerCount();
         } else {
-            return allServerList.size();
+            return snapshot.getAllServerCount();
         }
     }
 
@@ -403,7 +462,7 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
             try {
                 ArrayList<Server> newList = new ArrayList<Server>();
 
-                newList.addAll(allServerList);
+                newList.addAll(serverListSnapshot.getAllServers());
                 newList.add(newServer);
                 setServersList(newList);
             } catch (Exception e) {
@@ -422,7 +481,7 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         if (newServers != null && newServers.size() > 0) {
             try {
                 ArrayList<Server> newList = new ArrayList<Server>();
-                newList.addAll(allServerList);
+                newList.addAll(serverListSnapshot.getAllServers());
                 newList.addAll(newServers);
                 setServersList(newList);
             } catch (Exception e) {
@@ -441,7 +500,7 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
 
             try {
                 ArrayList<Server> newList = new ArrayList<Server>();
-                newList.addAll(allServerList);
+                newList.addAll(serverListSnapshot.getAllServers());
 
                 for (Object server : newServers) {
                     if (server != null) {
@@ -495,6 +554,8 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
                 }
 
             }
+            ServerListSnapshot current = serverListSnapshot;
+            List<Server> allServerList = current.getAllServers();
             boolean listChanged = false;
             if (!allServerList.equals(allServers)) {
                 listChanged = true;
@@ -524,14 +585,20 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
             // This will reset readyToServe flag to true on all servers
             // regardless whether
             // previous priming connections are success or not
-            allServerList = allServers;
+            Server[] newAllServers = allServers.toArray(new Server[allServers.size()]);
             if (canSkipPing()) {
-                for (Server s : allServerList) {
+                for (Server s : newAllServers) {
                     s.setAlive(true);
                 }
-                upServerList = allServerList;
-            } else if (listChanged) {
-                forceQuickPing();
+                publish(current.next(newAllServers, newAllServers));
+            } else {
+                publish(current.next(newAllServers, current.upServersArray()));
+                if (listChanged) {
+                    forceQuickPing();
+                }
+            }
+            if (listChanged && lbStats != null && ownsLoadBalancerStats) {
+                lbStats.retainServers(allServers);
             }
         } finally {
             writeLock.unlock();
@@ -569,9 +636,10 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
      * @param availableOnly
      */
     public Server getServerByIndex(int index, boolean availableOnly) {
+        ServerListSnapshot snapshot = serverListSnapshot;
         try {
-            return (availableOnly ? upServerList.get(index) : allServerList
-                    .get(index));
+            return (availableOnly ? snapshot.getUpServer(index) : snapshot
+                    .getAllServer(index));
         } catch (Exception e) {
             return null;
         }
@@ -582,27 +650,48 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         return (availableOnly ? getReachableServers() : getAllServers());
     }
 
+    /**
+     * Publish a new snapshot, and the deprecated lists for subclasses that still read them. Called with the
+     * write lock of {@link #allServerLock} held.
+     */
+    @SuppressWarnings("deprecation")
+    private void publish(ServerListSnapshot snapshot) {
+        serverListSnapshot = snapshot;
+        allServerList = snapshot.getAllServers();
+        upServerList = snapshot.getUpServers();
+    }
+
+    /**
+     * Get the current immutable snapshot of the "all" and "up" server lists. The
+     * snapshot is read without locking and the two lists are always consistent with
+     * each other.
+     */
+    public ServerListSnapshot getServerListSnapshot() {
+        return serverListSnapshot;
+    }
+
     @Override
     public List<Server> getReachableServers() {
-        return Collections.unmodifiableList(upServerList);
+        return serverListSnapshot.getUpServers();
     }
 
     @Override
     public List<Server> getAllServers() {
-        return Collections.unmodifiableList(allServerList);
+        return serverListSnapshot.getAllServers();
     }
 
     @Override
     public List<Server> getServerList(ServerGroup serverGroup) {
+        ServerListSnapshot snapshot = serverListSnapshot;
         switch (serverGroup) {
         case ALL:
-            return allServerList;
+            return snapshot.getAllServers();
         case STATUS_UP:
-            return upServerList;
+            return snapshot.getUpServers();
         case STATUS_NOT_UP:
             ArrayList<Server> notAvailableServers = new ArrayList<Server>(
-                    allServerList);
-            ArrayList<Server> upServers = new ArrayList<Server>(upServerList);
+                    snapshot.getAllServers());
+            ArrayList<Server> upServers = new ArrayList<Server>(snapshot.getUpServers());
             notAvailableServers.removeAll(upServers);
             return notAvailableServers;
         }
@@ -659,18 +748,8 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
             Server[] allServers = null;
             boolean[] results = null;
 
-            Lock allLock = null;
-            Lock upLock = null;
-
             try {
-                /*
-                 * The readLock should be free unless an addServer operation is
-                 * going on...
-                 */
-                allLock = allServerLock.readLock();
-                allLock.lock();
-                allServers = allServerList.toArray(new Server[allServerList.size()]);
-                allLock.unlock();
+                allServers = serverListSnapshot.allServersArray();
 
                 int numCandidates = allServers.length;
                 results = pingerStrategy.pingServers(ping, allServers);
@@ -698,10 +777,7 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
                         newUpList.add(svr);
                     }
                 }
-                upLock = upServerLock.writeLock();
-                upLock.lock();
-                upServerList = newUpList;
-                upLock.unlock();
+                publishUpServers(allServers, newUpList);
 
                 notifyServerStatusChangeListener(changedServers);
 
@@ -714,6 +790,56 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         }
     }
 
+    /**
+     * Publish a new snapshot with the up servers computed by the {@link Pinger} for the
+     * given "all" servers. If the server list has been replaced while pinging, the up list
+     * is derived from the alive flags of the current server list instead.
+     */
+    private void publishUpServers(Server[] pingedServers, List<Server> upServers) {
+        Lock writeLock = allServerLock.writeLock();
+        writeLock.lock();
+        try {
+            ServerListSnapshot current = serverListSnapshot;
+            if (current.allServersArray() != pingedServers) {
+                upServers = new ArrayList<Server>();
+                for (Server svr : current.allServersArray()) {
+                    if (svr.isAlive()) {
+                        upServers.add(svr);
+                    }
+                }
+            }
+            publish(current.withUpServers(upServers.toArray(new Server[upServers.size()])));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Publish a new snapshot which keeps the "all" list and replaces the "up" list.
+     */
+    void setUpServers(List<Server> upServers) {
+        Lock writeLock = allServerLock.writeLock();
+        writeLock.lock();
+        try {
+            publish(serverListSnapshot.withUpServers(upServers.toArray(new Server[upServers.size()])));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Publish a new snapshot where the given servers are removed from the up list.
+     */
+    private void removeUpServers(Server... servers) {
+        Lock writeLock = allServerLock.writeLock();
+        writeLock.lock();
+        try {
+            publish(serverListSnapshot.withoutUpServers(servers));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     private void notifyServerStatusChangeListener(final Collection<Server> changedServers) {
         if (changedServers != null && !changedServers.isEmpty() && !serverStatusListeners.isEmpty()) {
             for (ServerStatusChangeListener listener : serverStatusListeners) {
@@ -777,6 +903,7 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
         logger.error("LoadBalancer:  markServerDown called on ["
                 + server.getId() + "]");
         server.setAlive(false);
+        removeUpServers(server);
         // forceQuickPing();
 
         notifyServerStatusChangeListener(singleton(server));
@@ -791,31 +918,21 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
             return;
         }
 
-        Lock writeLock = upServerLock.writeLock();
-
-        try {
-
-            final List<Server> changedServers = new ArrayList<Server>();
-
-            for (Server svr : upServerList) {
-                if (svr.isAlive() && (svr.getId().equals(id))) {
-                    triggered = true;
-                    svr.setAlive(false);
-                    changedServers.add(svr);
-                }
-            }
+        final List<Server> changedServers = new ArrayList<Server>();
 
-            if (triggered) {
-                logger.error("LoadBalancer:  markServerDown called on [" + id
-                        + "]");
-                notifyServerStatusChangeListener(changedServers);
+        for (Server svr : serverListSnapshot.upServersArray()) {
+            if (svr.isAlive() && (svr.getId().equals(id))) {
+                triggered = true;
+                svr.setAlive(false);
+                changedServers.add(svr);
             }
+        }
 
-        } finally {
-            try {
-                writeLock.unlock();
-            } catch (Exception e) { // NOPMD
-            }
+        if (triggered) {
+            removeUpServers(changedServers.toArray(new Server[changedServers.size()]));
+            logger.error("LoadBalancer:  markServerDown called on [" + id
+                    + "]");
+            notifyServerStatusChangeListener(changedServers);
         }
     }
 
@@ -842,7 +959,7 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("{NFLoadBalancer:name=").append(this.getName())
-                .append(",current list of Servers=").append(this.allServerList)
+                .append(",current list of Servers=").append(this.serverListSnapshot.getAllServers())
                 .append(",Load balancer stats=")
                 .append(this.lbStats.toString()).append("}");
         return sb.toString();
@@ -884,9 +1001,21 @@ public class BaseLoadBalancer extends AbstractLoadBalancer implements
     
     public void shutdown() {
         cancelPingTask();
+        OutlierDetector outlierDetector = lbStats == null ? null : lbStats.getOutlierDetector();
+        if (outlierDetector != null) {
+            outlierDetector.stop();
+            Monitors.unregisterObject("OutlierDetector_" + name, outlierDetector);
+        }
         if (primeConnections != null) {
             primeConnections.shutdown();
         }
+        if (pingStrategy instanceof Closeable) {
+            try {
+                ((Closeable) pingStrategy).close();
+            } catch (IOException e) {
+                logger.warn("Error closing the ping strategy of " + name, e);
+            }
+        }
         Monitors.unregisterObject("LoadBalancer_" + name, this);
         Monitors.unregisterObject("Rule_" + name, this.getRule());
     }
@@ -23,8 +23,6 @@ import java.util.List;
 
 import javax.annotation.Nullable;
 
-import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 
 /**
@@ -52,6 +50,43 @@ public class CompositePredicate extends AbstractServerPredicate {
         return delegate.apply(input);
     }
 
+    @Override
+    public boolean apply(Server server, Object loadBalancerKey) {
+        return delegate.apply(server, loadBalancerKey);
+    }
+
+    /**
+     * A predicate that is true if all of the given predicates are true, evaluated in order
+     * without creating {@link PredicateKey}s.
+     */
+    private static class AndPredicate extends AbstractServerPredicate {
+        private final AbstractServerPredicate[] components;
+
+        AndPredicate(AbstractServerPredicate... components) {
+            this.components = components.clone();
+        }
+
+        @Override
+        public boolean apply(@Nullable PredicateKey input) {
+            for (AbstractServerPredicate component: components) {
+                if (!component.apply(input)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean apply(Server server, Object loadBalancerKey) {
+            for (AbstractServerPredicate component: components) {
+                if (!component.apply(server, loadBalancerKey)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     
     public static class Builder {
         
@@ -64,8 +99,7 @@ public class CompositePredicate extends AbstractServerPredicate {
 
         Builder(AbstractServerPredicate ...primaryPredicates) {
             toBuild = new CompositePredicate();
-            Predicate<PredicateKey> chain = Predicates.<PredicateKey>and(primaryPredicates);
-            toBuild.delegate =  AbstractServerPredicate.ofKeyPredicate(chain);                
+            toBuild.delegate = new AndPredicate(primaryPredicates);
         }
 
         public Builder addFallbackPredicate(AbstractServerPredicate fallback) {
@@ -111,4 +145,18 @@ public class CompositePredicate extends AbstractServerPredicate {
         }
         return result;
     }
+
+    /**
+     * Same as {@link #getEligibleServers(List, Object)}, but writes the indices of the
+     * eligible servers into the given array.
+     */
+    @Override
+    protected int getEligibleIndices(List<Server> servers, Object loadBalancerKey, int[] indices) {
+        int count = super.getEligibleIndices(servers, loadBalancerKey, indices);
+        for (int i = 0, size = fallbacks.size(); i < size
+                && !(count >= minimalFilteredServers && count > (int) (servers.size() * minimalFilteredPercentage)); i++) {
+            count = fallbacks.get(i).getEligibleIndices(servers, loadBalancerKey, indices);
+        }
+        return count;
+    }
 }
@@ -26,6 +26,8 @@ import com.netflix.client.RetryHandler;
 import com.netflix.client.config.CommonClientConfigKey;
 import com.netflix.client.config.DefaultClientConfigImpl;
 import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.reactive.HedgingPolicy;
+import com.netflix.loadbalancer.reactive.RetryBudget;
 import com.netflix.servo.monitor.Monitors;
 import com.netflix.servo.monitor.Timer;
 import com.netflix.util.Pair;
@@ -61,6 +63,10 @@ public class LoadBalancerContext implements IClientConfigAware {
 
     private volatile Timer tracer;
 
+    private volatile HedgingPolicy hedgingPolicy;
+
+    private volatile RetryBudget retryBudget;
+
     public LoadBalancerContext(ILoadBalancer lb) {
         this.lb = lb;
     }
@@ -97,12 +103,39 @@ public class LoadBalancerContext implements IClientConfigAware {
 
         okToRetryOnAllOperations = clientConfig.getPropertyAsBoolean(CommonClientConfigKey.OkToRetryOnAllOperations, okToRetryOnAllOperations);
         defaultRetryHandler = new DefaultLoadBalancerRetryHandler(clientConfig);
+        hedgingPolicy = HedgingPolicy.create(clientConfig);
+        retryBudget = RetryBudget.create(clientConfig);
+        if (retryBudget != null) {
+            Monitors.registerObject("RetryBudget_" + clientName, retryBudget);
+        }
         
         tracer = getExecuteTracer();
 
         Monitors.registerObject("Client_" + clientName, this);
     }
 
+    /**
+     * Get the hedging policy of the client, or null if requests are not hedged
+     */
+    public final HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    public final void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Get the retry budget shared by the requests of the client, or null if retries are not limited by a budget
+     */
+    public final RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
+
+    public final void setRetryBudget(RetryBudget retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
     public Timer getExecuteTracer() {
         if (tracer == null) {
             synchronized(this) {
@@ -260,6 +293,11 @@ public class LoadBalancerContext implements IClientConfigAware {
      * to update related stats.  
      */
     public void noteRequestCompletion(ServerStats stats, Object response, Throwable e, long responseTime, RetryHandler errorHandler) {
+        if (e instanceof ClientException && ((ClientException) e).getErrorType() == ClientException.ErrorType.CONCURRENCY_LIMIT_EXCEEDED) {
+            // the request was rejected by the client before it was sent, so it says nothing about the server
+            noteRequestCancelled(stats);
+            return;
+        }
         try {
             recordStats(stats, responseTime);
             RetryHandler callErrorHandler = errorHandler == null ? getRetryHandler() : errorHandler;
@@ -278,6 +316,22 @@ public class LoadBalancerContext implements IClientConfigAware {
         }            
     }
 
+    /**
+     * This is called when a request is given up before it completed, for example the slower attempt of a
+     * hedged request, to release the active request noted by {@link #noteOpenConnection(ServerStats)}.
+     * The request has no outcome, so the request count and response times are not updated.
+     */
+    public void noteRequestCancelled(ServerStats stats) {
+        if (stats == null) {
+            return;
+        }
+        try {
+            stats.decrementActiveRequestsCount();
+        } catch (Throwable ex) {
+            logger.error("Unexpected exception", ex);
+        }
+    }
+
     /**
      * This is called after an error is thrown from the client
      * to update related stats.  
@@ -21,10 +21,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
@@ -46,6 +49,12 @@ import com.netflix.servo.monitor.Monitors;
  * This information can be used to just observe and understand the runtime
  * behavior of the loadbalancer or more importantly for the basis that
  * determines the loadbalacing strategy
+ * <p>
+ * By default the {@link ServerStats} of each server are kept in a cache which expires them
+ * when they have not been accessed for {@code niws.loadbalancer.serverStats.expire.minutes}.
+ * If {@code niws.loadbalancer.<name>.serverStats.attachToServer} is true, the stats are instead
+ * attached to the {@link Server} instance, so that looking them up on the request path is a field read,
+ * and they are only removed by {@link #retainServers(Collection)} when the server leaves the server list.
  * 
  * @author stonse
  * 
@@ -66,6 +75,14 @@ public class LoadBalancerStats {
 
     private volatile DynamicIntProperty maxCircuitTrippedTimeout;
 
+    private volatile DynamicIntProperty zoneSnapshotRefreshInterval;
+
+    private volatile ZoneSnapshots zoneSnapshots;
+
+    private volatile OutlierDetector outlierDetector;
+
+    private volatile SlowStart slowStart;
+
     private static final DynamicIntProperty SERVERSTATS_EXPIRE_MINUTES = 
         DynamicPropertyFactory.getInstance().getIntProperty("niws.loadbalancer.serverStats.expire.minutes", 30);
     
@@ -85,6 +102,9 @@ public class LoadBalancerStats {
                     }
                 });
         
+    // used instead of serverStatsCache when the stats are attached to the servers
+    private final ConcurrentMap<Server, ServerStats> attachedServerStats;
+
     private ServerStats createServerStats(Server server) {
         ServerStats ss = new ServerStats(this);
         //configure custom settings
@@ -95,20 +115,62 @@ public class LoadBalancerStats {
     }
     
     private LoadBalancerStats(){
+        this((ConcurrentMap<Server, ServerStats>) null);
+    }
+
+    private LoadBalancerStats(ConcurrentMap<Server, ServerStats> attachedServerStats){
         zoneStatsMap = new ConcurrentHashMap<String, ZoneStats>();  
         upServerListZoneMap = new ConcurrentHashMap<String, List<? extends Server>>();        
+        this.attachedServerStats = attachedServerStats;
     }
     
     public LoadBalancerStats(String name){
-        this();
+        this(isServerStatsAttached(name) ? new ConcurrentHashMap<Server, ServerStats>() : null);
         this.name = name;
         Monitors.registerObject(name, this); 
     }
+
+    private static boolean isServerStatsAttached(String name) {
+        return DynamicPropertyFactory.getInstance().getBooleanProperty(
+                "niws.loadbalancer." + name + ".serverStats.attachToServer", false).get();
+    }
        
     public String getName() {
         return name;
     }
 
+    public OutlierDetector getOutlierDetector() {
+        return outlierDetector;
+    }
+
+    public void setOutlierDetector(OutlierDetector outlierDetector) {
+        this.outlierDetector = outlierDetector;
+    }
+
+    public SlowStart getSlowStart() {
+        return slowStart;
+    }
+
+    public void setSlowStart(SlowStart slowStart) {
+        this.slowStart = slowStart;
+    }
+
+    /**
+     * @return the weight of the server according to the {@link SlowStart}, if any, which is 1 for warm servers
+     */
+    public double getSlowStartWeight(Server server, long currentTime) {
+        SlowStart current = slowStart;
+        return current == null ? 1 : current.getWeight(server, currentTime);
+    }
+
+    /**
+     * @return true if the server is currently ejected as an outlier by the {@link OutlierDetector}, if any
+     */
+    public boolean isOutlierEjected(Server server) {
+        OutlierDetector detector = outlierDetector;
+        return detector != null && detector.isEjected(server);
+    }
+
     public void setName(String name) {
         this.name = name;
     }
@@ -137,6 +199,14 @@ public class LoadBalancerStats {
         }
         return maxCircuitTrippedTimeout;        
     }
+
+    DynamicIntProperty getZoneSnapshotRefreshIntervalMillis() {
+        if (zoneSnapshotRefreshInterval == null) {
+            zoneSnapshotRefreshInterval = DynamicPropertyFactory.getInstance().getIntProperty(
+                    "niws.loadbalancer." + name + ".zoneSnapshotRefreshIntervalMillis", 100);
+        }
+        return zoneSnapshotRefreshInterval;
+    }
     
     /**
      * The caller o this class is tasked to call this method every so often if
@@ -151,13 +221,31 @@ public class LoadBalancerStats {
     
     
     public void addServer(Server server) {
-        try {
-            serverStatsCache.get(server);
-        } catch (ExecutionException e) {
-            ServerStats stats = createServerStats(server);
-            serverStatsCache.asMap().putIfAbsent(server, stats);
-        }
+        getServerStats(server);
     } 
+
+    /**
+     * Remove the stats of all servers which are not in the given list, if the stats are attached to the
+     * servers. Otherwise this does nothing, as the stats expire from the cache when they are no longer used.
+     * 
+     * @param servers the complete list of servers of the load balancer
+     */
+    public void retainServers(Collection<? extends Server> servers) {
+        ConcurrentMap<Server, ServerStats> attached = attachedServerStats;
+        if (attached == null) {
+            return;
+        }
+        Set<Server> retained = new HashSet<Server>(servers);
+        for (Map.Entry<Server, ServerStats> entry: attached.entrySet()) {
+            Server server = entry.getKey();
+            if (!retained.contains(server) && attached.remove(server, entry.getValue())) {
+                if (server.attachedStats == entry.getValue()) {
+                    server.attachedStats = null;
+                }
+                entry.getValue().close();
+            }
+        }
+    }
     
     /**
      * Method that updates the internal stats of Response times maintained on a per Server
@@ -171,6 +259,14 @@ public class LoadBalancerStats {
     }
     
     private ServerStats getServerStats(Server server) {
+        ConcurrentMap<Server, ServerStats> attached = attachedServerStats;
+        if (attached != null) {
+            ServerStats stats = server.attachedStats;
+            if (stats != null && stats.lbStats == this) {
+                return stats;
+            }
+            return attachServerStats(attached, server);
+        }
         try {
             return serverStatsCache.get(server);
         } catch (ExecutionException e) {
@@ -180,6 +276,22 @@ public class LoadBalancerStats {
         }
     }
     
+    private ServerStats attachServerStats(ConcurrentMap<Server, ServerStats> attached, Server server) {
+        ServerStats stats = attached.get(server);
+        if (stats == null) {
+            ServerStats created = createServerStats(server);
+            stats = attached.putIfAbsent(server, created);
+            if (stats == null) {
+                stats = created;
+            } else {
+                created.close();
+            }
+        }
+        // a server shared by several load balancers is attached to the last one and found in the map by the others
+        server.attachedStats = stats;
+        return stats;
+    }
+
     public void incrementActiveRequestsCount(Server server) {
         ServerStats ss = getServerStats(server); 
         ss.incrementActiveRequestsCount();
@@ -301,6 +413,43 @@ public class LoadBalancerStats {
         return new ZoneSnapshot(instanceCount, circuitBreakerTrippedCount, activeConnectionsCount, loadPerServer);
     }
     
+    /**
+     * Get the snapshots of all available zones, keyed by zone. Computing the snapshots iterates all up
+     * servers, so the result is cached and only recomputed when it is older than
+     * {@code niws.loadbalancer.<name>.zoneSnapshotRefreshIntervalMillis}, or when the mapping of
+     * zones to servers has changed. An interval of 0 disables the cache.
+     *
+     * @return unmodifiable map of zone to its snapshot
+     */
+    public Map<String, ZoneSnapshot> getZoneSnapshots() {
+        long currentTime = System.currentTimeMillis();
+        Map<String, List<? extends Server>> zoneMap = upServerListZoneMap;
+        ZoneSnapshots cached = zoneSnapshots;
+        if (cached != null && cached.zoneMap == zoneMap
+                && currentTime - cached.timestamp < getZoneSnapshotRefreshIntervalMillis().get()) {
+            return cached.snapshots;
+        }
+        Map<String, ZoneSnapshot> snapshots = new HashMap<String, ZoneSnapshot>();
+        for (Map.Entry<String, List<? extends Server>> entry: zoneMap.entrySet()) {
+            snapshots.put(entry.getKey(), getZoneSnapshot(entry.getValue()));
+        }
+        snapshots = Collections.unmodifiableMap(snapshots);
+        zoneSnapshots = new ZoneSnapshots(zoneMap, snapshots, currentTime);
+        return snapshots;
+    }
+
+    private static final class ZoneSnapshots {
+        final Map<String, List<? extends Server>> zoneMap;
+        final Map<String, ZoneSnapshot> snapshots;
+        final long timestamp;
+
+        ZoneSnapshots(Map<String, List<? extends Server>> zoneMap, Map<String, ZoneSnapshot> snapshots, long timestamp) {
+            this.zoneMap = zoneMap;
+            this.snapshots = snapshots;
+            this.timestamp = timestamp;
+        }
+    }
+
     public int getCircuitBreakerTrippedCount(String zone) {
         return getZoneSnapshot(zone).getCircuitTrippedCount();
     }
@@ -366,6 +515,9 @@ public class LoadBalancerStats {
      * returns map of Stats for all servers
      */
     public Map<Server,ServerStats> getServerStats(){
+        if (attachedServerStats != null) {
+            return attachedServerStats;
+        }
         return serverStatsCache.asMap();
     }
     
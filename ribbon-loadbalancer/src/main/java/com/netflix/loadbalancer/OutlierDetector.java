@@ -0,0 +1,285 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.annotations.Monitor;
+
+/**
+ * Periodically compares the servers of a load balancer with each other and ejects the outliers, the servers
+ * that fail much more often or respond much slower than their peers. Unlike the circuit breaker of
+ * {@link ServerStats}, which only trips on successive connection failures, this also avoids servers that
+ * fail a part of their requests or are slow.
+ * <p>
+ * Every interval, the success rate and the average response time of each server over the interval are
+ * computed from its {@link ServerStats}, for servers that received enough requests. A server is an outlier if
+ * <ul>
+ * <li>its success rate is below the mean success rate of the servers minus the configured factor times
+ * the standard deviation, if there are enough servers to compare, or</li>
+ * <li>its average response time is more than the configured factor times the median of the servers.</li>
+ * </ul>
+ * An outlier is ejected for the ejection time multiplied by the number of times it has been ejected in a row,
+ * so that a server that keeps being an outlier stays ejected longer. At most the configured percentage
+ * of the servers, but at least one, is ejected at the same time.
+ * <p>
+ * The ejected servers are published as an immutable set, which {@link AvailabilityPredicate} reads
+ * through {@link LoadBalancerStats#isOutlierEjected(Server)} without any computation on the request path.
+ */
+public class OutlierDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutlierDetector.class);
+
+    private static final String PREFIX = "OutlierDetector_";
+
+    private static class LazyHolder {
+        static final ScheduledExecutorService executor;
+
+        static {
+            ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                    .setNameFormat("OutlierDetector-%d")
+                    .setDaemon(true)
+                    .build());
+            pool.setRemoveOnCancelPolicy(true);
+            executor = pool;
+        }
+    }
+
+    private final ILoadBalancer loadBalancer;
+    private final LoadBalancerStats lbStats;
+    private final int intervalMillis;
+    private final int ejectionTimeMillis;
+    private final int maxEjectionPercent;
+    private final double successRateStdevFactor;
+    private final double latencyFactor;
+    private final int minRequests;
+    private final int minServers;
+
+    // only accessed by detectOutliers, which is synchronized
+    private final Map<Server, ServerState> states = new HashMap<Server, ServerState>();
+
+    private volatile Set<Server> ejected = Collections.emptySet();
+    private volatile ScheduledFuture<?> task;
+
+    private static class ServerState {
+        long requests;
+        long failures;
+        long responseTime;
+        // number of times the server has been ejected in a row
+        int ejections;
+        long ejectedUntil;
+    }
+
+    /**
+     * Per server measurements over one interval
+     */
+    private static class Sample {
+        final Server server;
+        final double successRate;
+        final double responseTime;
+
+        Sample(Server server, double successRate, double responseTime) {
+            this.server = server;
+            this.successRate = successRate;
+            this.responseTime = responseTime;
+        }
+    }
+
+    public OutlierDetector(ILoadBalancer loadBalancer, LoadBalancerStats lbStats, IClientConfig clientConfig) {
+        this(loadBalancer, lbStats,
+                clientConfig.get(CommonClientConfigKey.OutlierDetectionInterval, DefaultClientConfigImpl.DEFAULT_OUTLIER_DETECTION_INTERVAL),
+                clientConfig.get(CommonClientConfigKey.OutlierEjectionTime, DefaultClientConfigImpl.DEFAULT_OUTLIER_EJECTION_TIME),
+                clientConfig.get(CommonClientConfigKey.MaxOutlierEjectionPercent, DefaultClientConfigImpl.DEFAULT_MAX_OUTLIER_EJECTION_PERCENT),
+                clientConfig.get(CommonClientConfigKey.OutlierSuccessRateStdevFactor, DefaultClientConfigImpl.DEFAULT_OUTLIER_SUCCESS_RATE_STDEV_FACTOR),
+                clientConfig.get(CommonClientConfigKey.OutlierLatencyFactor, DefaultClientConfigImpl.DEFAULT_OUTLIER_LATENCY_FACTOR),
+                clientConfig.get(CommonClientConfigKey.OutlierMinRequests, DefaultClientConfigImpl.DEFAULT_OUTLIER_MIN_REQUESTS),
+                clientConfig.get(CommonClientConfigKey.OutlierMinServers, DefaultClientConfigImpl.DEFAULT_OUTLIER_MIN_SERVERS));
+    }
+
+    public OutlierDetector(ILoadBalancer loadBalancer, LoadBalancerStats lbStats, int intervalMillis, int ejectionTimeMillis,
+            int maxEjectionPercent, double successRateStdevFactor, double latencyFactor, int minRequests, int minServers) {
+        this.loadBalancer = loadBalancer;
+        this.lbStats = lbStats;
+        this.intervalMillis = intervalMillis;
+        this.ejectionTimeMillis = ejectionTimeMillis;
+        this.maxEjectionPercent = maxEjectionPercent;
+        this.successRateStdevFactor = successRateStdevFactor;
+        this.latencyFactor = latencyFactor;
+        this.minRequests = minRequests;
+        this.minServers = minServers;
+    }
+
+    /**
+     * Start detecting outliers every interval
+     */
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        task = LazyHolder.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    detectOutliers(System.currentTimeMillis());
+                } catch (Exception e) {
+                    logger.error("Error detecting outliers of " + lbStats.getName(), e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        ejected = Collections.emptySet();
+    }
+
+    public boolean isEjected(Server server) {
+        return ejected.contains(server);
+    }
+
+    public Set<Server> getEjectedServers() {
+        return ejected;
+    }
+
+    @Monitor(name = PREFIX + "EjectedCount", type = DataSourceType.GAUGE)
+    public int getEjectedCount() {
+        return ejected.size();
+    }
+
+    @VisibleForTesting
+    synchronized void detectOutliers(long now) {
+        List<Server> servers = loadBalancer.getAllServers();
+        List<Sample> samples = new ArrayList<Sample>(servers.size());
+        Set<Server> current = new HashSet<Server>(servers);
+        for (Iterator<Server> it = states.keySet().iterator(); it.hasNext();) {
+            if (!current.contains(it.next())) {
+                it.remove();
+            }
+        }
+        for (Server server : servers) {
+            ServerStats stats = lbStats.getSingleServerStat(server);
+            ServerState state = states.get(server);
+            if (state == null) {
+                state = new ServerState();
+                states.put(server, state);
+            }
+            long requests = stats.getTotalRequestsCount();
+            long failures = stats.getTotalFailureCount();
+            long responseTime = stats.getTotalResponseTime();
+            long intervalRequests = requests - state.requests;
+            if (intervalRequests >= minRequests) {
+                double successRate = 1 - (double) (failures - state.failures) / intervalRequests;
+                samples.add(new Sample(server, Math.max(0, successRate), (double) (responseTime - state.responseTime) / intervalRequests));
+            }
+            state.requests = requests;
+            state.failures = failures;
+            state.responseTime = responseTime;
+        }
+
+        Set<Server> outliers = findOutliers(samples);
+
+        Set<Server> ejectedNow = new HashSet<Server>();
+        for (Map.Entry<Server, ServerState> entry : states.entrySet()) {
+            ServerState state = entry.getValue();
+            if (state.ejectedUntil > now) {
+                ejectedNow.add(entry.getKey());
+            } else if (state.ejections > 0 && !outliers.contains(entry.getKey())) {
+                // a server that has recovered is ejected for a shorter time the next time
+                state.ejections--;
+            }
+        }
+        int maxEjected = Math.max(1, servers.size() * maxEjectionPercent / 100);
+        for (Server server : outliers) {
+            ServerState state = states.get(server);
+            if (state.ejectedUntil > now) {
+                continue;
+            }
+            if (ejectedNow.size() >= maxEjected) {
+                logger.debug("Not ejecting outlier {} of {}, {} servers are ejected already", server, lbStats.getName(), ejectedNow.size());
+                break;
+            }
+            state.ejections++;
+            state.ejectedUntil = now + (long) ejectionTimeMillis * state.ejections;
+            ejectedNow.add(server);
+            logger.info("Ejecting outlier {} of {} for {} ms", server, lbStats.getName(), (long) ejectionTimeMillis * state.ejections);
+        }
+        ejected = Collections.unmodifiableSet(ejectedNow);
+    }
+
+    private Set<Server> findOutliers(List<Sample> samples) {
+        Set<Server> outliers = new HashSet<Server>();
+        if (samples.size() < 2) {
+            return outliers;
+        }
+        if (samples.size() >= minServers) {
+            double mean = 0;
+            for (Sample sample : samples) {
+                mean += sample.successRate;
+            }
+            mean /= samples.size();
+            double variance = 0;
+            for (Sample sample : samples) {
+                variance += (sample.successRate - mean) * (sample.successRate - mean);
+            }
+            double threshold = mean - successRateStdevFactor * Math.sqrt(variance / samples.size());
+            for (Sample sample : samples) {
+                if (sample.successRate < threshold) {
+                    outliers.add(sample.server);
+                }
+            }
+        }
+        double[] responseTimes = new double[samples.size()];
+        for (int i = 0; i < responseTimes.length; i++) {
+            responseTimes[i] = samples.get(i).responseTime;
+        }
+        Arrays.sort(responseTimes);
+        double median = responseTimes[(responseTimes.length - 1) / 2];
+        if (median > 0) {
+            for (Sample sample : samples) {
+                if (sample.responseTime > latencyFactor * median) {
+                    outliers.add(sample.server);
+                }
+            }
+        }
+        return outliers;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+*
+* Copyright 2016 Netflix, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*/
+package com.netflix.loadbalancer;
+
+/**
+ * A latency aware rule that chooses between two random servers like {@link PowerOfTwoChoicesRule}, using
+ * the cost
+ * <pre>{@code
+ *     peak EWMA of response time * (active requests + 1)
+ * }</pre>
+ * The peak EWMA is kept by {@link ServerStats} and is updated on every request completion recorded by
+ * {@link LoadBalancerContext#noteRequestCompletion(ServerStats, Object, Throwable, long, RetryHandler)}.
+ * It jumps up immediately when a server becomes slow and decays back over the time configured by
+ * {@code niws.loadbalancer.serverStats.peakEwma.decayTimeMillis}, so traffic moves away from a server
+ * as soon as its latency spikes, without waiting for a periodic weight calculation like
+ * {@link WeightedResponseTimeRule}. It does not decay while the server has requests in flight, so a
+ * server that stops responding keeps its cost, which grows with the requests piling up on it.
+ * <p>
+ * A server that has requests in flight but no recorded response time yet is given a high cost, so that
+ * a new or unresponsive server does not attract all requests.
+ */
+public class PeakEwmaRule extends PowerOfTwoChoicesRule {
+
+    /**
+     * Cost of a server which has active requests but no response time recorded yet
+     */
+    static final double PENALTY = 1e6;
+
+    @Override
+    protected double getLoad(Server server, ServerStats stats, long currentTime) {
+        int activeRequests = stats.getActiveRequestsCount(currentTime);
+        double latency = stats.getPeakEwmaResponseTime(currentTime);
+        if (latency == 0 && activeRequests > 0) {
+            return PENALTY + activeRequests;
+        }
+        return latency * (activeRequests + 1);
+    }
+}
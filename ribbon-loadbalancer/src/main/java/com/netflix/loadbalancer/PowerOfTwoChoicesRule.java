@@ -0,0 +1,166 @@
+/*
+*
+* Copyright 2016 Netflix, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*/
+package com.netflix.loadbalancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.config.ChainedDynamicProperty;
+
+/**
+ * A rule that picks two random servers and chooses the one with less load ("power of two choices").
+ * The load of a server is its number of active requests from {@link ServerStats}. Optionally the load is
+ * weighted by the recent average response time of the server, so that a server which is slower than
+ * its peers gets proportionally less traffic.
+ * <p>
+ * Servers that are not alive, or are filtered out by {@link AvailabilityPredicate} because their
+ * circuit breaker is tripped or they have too many active requests, are never chosen. A server that is
+ * warming up after it was added, see {@link SlowStart}, is compared with its load divided by its weight. If no
+ * eligible server is found after a few samples, the rule falls back to round robin among the
+ * servers that pass the {@link AvailabilityPredicate}.
+ * <p>
+ * Compared to {@link BestAvailableRule}, each choice is O(1) instead of O(n), and different clients do not
+ * all send their traffic to the single least loaded server. The property to enable the latency
+ * weighting is
+ * <pre>{@code
+ *
+ * <clientName>.<nameSpace>.P2CLatencyWeighted
+ *
+ * }</pre>
+ */
+public class PowerOfTwoChoicesRule extends PredicateBasedRule {
+
+    private static final int MAX_SAMPLES = 5;
+
+    private static final ChainedDynamicProperty.DynamicBooleanPropertyThatSupportsNull LATENCY_WEIGHTED =
+            new ChainedDynamicProperty.DynamicBooleanPropertyThatSupportsNull("niws.loadbalancer.powerOfTwoChoicesRule.latencyWeighted", false);
+
+    private ChainedDynamicProperty.BooleanProperty latencyWeighted = new ChainedDynamicProperty.BooleanProperty(LATENCY_WEIGHTED);
+
+    private AbstractServerPredicate availabilityPredicate;
+
+    private AbstractServerPredicate predicate;
+
+    private volatile LoadBalancerStats loadBalancerStats;
+
+    public PowerOfTwoChoicesRule() {
+        super();
+        createPredicates(null);
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+        createPredicates(clientConfig);
+        if (clientConfig != null) {
+            latencyWeighted = new ChainedDynamicProperty.BooleanProperty(
+                    clientConfig.getClientName() + "." + clientConfig.getNameSpace() + ".P2CLatencyWeighted", LATENCY_WEIGHTED);
+        }
+    }
+
+    private void createPredicates(IClientConfig clientConfig) {
+        availabilityPredicate = new AvailabilityPredicate(this, clientConfig);
+        predicate = CompositePredicate.withPredicate(availabilityPredicate)
+                .addFallbackPredicate(AbstractServerPredicate.alwaysTrue())
+                .build();
+    }
+
+    @Override
+    public void setLoadBalancer(ILoadBalancer lb) {
+        super.setLoadBalancer(lb);
+        if (lb instanceof AbstractLoadBalancer) {
+            loadBalancerStats = ((AbstractLoadBalancer) lb).getLoadBalancerStats();
+        }
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer lb = getLoadBalancer();
+        LoadBalancerStats stats = loadBalancerStats;
+        if (lb == null || stats == null) {
+            return super.choose(key);
+        }
+        List<Server> servers = lb.getAllServers();
+        int serverCount = servers.size();
+        if (serverCount < 2) {
+            return super.choose(key);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long currentTime = System.currentTimeMillis();
+        for (int i = 0; i < MAX_SAMPLES; i++) {
+            int first = random.nextInt(serverCount);
+            int second = random.nextInt(serverCount - 1);
+            if (second >= first) {
+                second++;
+            }
+            Server server1 = servers.get(first);
+            Server server2 = servers.get(second);
+            boolean eligible1 = isEligible(server1, key);
+            boolean eligible2 = isEligible(server2, key);
+            if (eligible1 && eligible2) {
+                double load1 = getWeightedLoad(server1, stats, currentTime);
+                double load2 = getWeightedLoad(server2, stats, currentTime);
+                return load1 <= load2 ? server1 : server2;
+            } else if (eligible1) {
+                return server1;
+            } else if (eligible2) {
+                return server2;
+            }
+        }
+        return super.choose(key);
+    }
+
+    private boolean isEligible(Server server, Object key) {
+        return server != null && server.isAlive() && server.isReadyToServe()
+                && availabilityPredicate.apply(server, key);
+    }
+
+    /**
+     * Get the load of a server relative to its slow start weight, so that a warming server is chosen
+     * over a warm server only if its load is proportionally lower. For servers with full weight,
+     * this orders the servers like {@link #getLoad(Server, ServerStats, long)}.
+     */
+    private double getWeightedLoad(Server server, LoadBalancerStats stats, long currentTime) {
+        double load = getLoad(server, stats.getSingleServerStat(server), currentTime);
+        return (load + 1) / stats.getSlowStartWeight(server, currentTime);
+    }
+
+    /**
+     * Get the load of a server that is compared between the two sampled servers. The server with
+     * lower load is chosen.
+     *
+     * @param server the sampled server
+     * @param stats the stats of the sampled server
+     * @param currentTime time of the current choice, in milliseconds
+     */
+    protected double getLoad(Server server, ServerStats stats, long currentTime) {
+        int activeRequests = stats.getActiveRequestsCount(currentTime);
+        if (latencyWeighted.get()) {
+            double latency = stats.getResponseTimeAvgRecent();
+            if (latency > 0) {
+                return (activeRequests + 1) * latency;
+            }
+        }
+        return activeRequests;
+    }
+
+    @Override
+    public AbstractServerPredicate getPredicate() {
+        return predicate;
+    }
+}
@@ -17,8 +17,6 @@
  */
 package com.netflix.loadbalancer;
 
-import com.google.common.base.Optional;
-
 /**
  * A rule which delegates the server filtering logic to an instance of {@link AbstractServerPredicate}.
  * After filtering, a server is returned from filtered list in a round robin fashion.
@@ -36,17 +34,15 @@ public abstract class PredicateBasedRule extends ClientConfigEnabledRoundRobinRu
     public abstract AbstractServerPredicate getPredicate();
         
     /**
-     * Get a server by calling {@link AbstractServerPredicate#chooseRandomlyAfterFiltering(java.util.List, Object)}.
-     * The performance for this method is O(n) where n is number of servers to be filtered.
+     * Get a server by calling {@link AbstractServerPredicate#chooseRoundRobin(java.util.List, Object)}.
+     * The performance for this method is O(n) where n is number of servers to be filtered. The servers
+     * are filtered in place, so no objects are created per call unless the predicate itself does so, or
+     * overrides {@link AbstractServerPredicate#getEligibleServers(java.util.List, Object)} alone, in which
+     * case that method filters the servers.
      */
     @Override
     public Server choose(Object key) {
         ILoadBalancer lb = getLoadBalancer();
-        Optional<Server> server = getPredicate().chooseRoundRobinAfterFiltering(lb.getAllServers(), key);
-        if (server.isPresent()) {
-            return server.get();
-        } else {
-            return null;
-        }       
+        return getPredicate().chooseRoundRobin(lb.getAllServers(), key);
     }
 }
@@ -0,0 +1,368 @@
+/*
+*
+* Copyright 2016 Netflix, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*
+*/
+package com.netflix.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock free histogram of response times used by {@link ServerStats} as an alternative to the
+ * synchronized distributions of netflix-statistics.
+ * <p>
+ * Values are recorded in microseconds into log-linear buckets (each power of two is split into 16
+ * sub-buckets), so percentiles are reported within about 3% of the recorded values. Counters are striped
+ * by thread so that threads recording response times for the same server rarely write to the same
+ * counters, and a stripe is only allocated when a thread first uses it.
+ * <p>
+ * Percentiles are computed over rolling time windows: values are recorded in the current window while
+ * the percentiles are reported for the last complete window, the same way as the periodically published
+ * {@link com.netflix.stats.distribution.DataDistribution}. The percentiles of a window are computed once,
+ * when they are first read, so no background thread is needed.
+ * <p>
+ * Count, mean, minimum, maximum and standard deviation are also kept for all recorded values.
+ */
+public class ResponseTimeHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // about 4.7 hours in microseconds
+    private static final long MAX_VALUE = (1L << 34) - 1;
+
+    static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    // per stripe window counters follow the buckets
+    private static final int WINDOW_COUNT = BUCKET_COUNT;
+    private static final int WINDOW_SUM = BUCKET_COUNT + 1;
+    private static final int WINDOW_STRIDE = BUCKET_COUNT + 2;
+
+    // per stripe counters of all recorded values, padded to a cache line
+    private static final int TOTAL_COUNT = 0;
+    private static final int TOTAL_SUM = 1;
+    private static final int TOTAL_SUM_SQUARES = 2;
+    private static final int TOTAL_MIN = 3;
+    private static final int TOTAL_MAX = 4;
+    private static final int TOTAL_STRIDE = 8;
+
+    private static final long RESETTING = Long.MIN_VALUE;
+
+    private final long windowMillis;
+    private final double[] percents;
+    private final int stripes;
+    private final int stripeMask;
+
+    // two windows of stripes: index is window * stripes + stripe
+    private final AtomicReferenceArray<AtomicLongArray> windowStripes;
+    private final AtomicLongArray windowEpochs = new AtomicLongArray(2);
+    private final AtomicLongArray totals;
+
+    private volatile WindowSnapshot lastSnapshot;
+
+    /**
+     * @param windowMillis length of the window of the reported percentiles
+     * @param percents the percentiles to compute, e.g. 50 and 99.5
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    public ResponseTimeHistogram(long windowMillis, double[] percents, int stripes) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("windowMillis must be positive");
+        }
+        this.windowMillis = windowMillis;
+        this.percents = percents.clone();
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        this.stripes = n;
+        this.stripeMask = n - 1;
+        this.windowStripes = new AtomicReferenceArray<AtomicLongArray>(2 * n);
+        this.totals = new AtomicLongArray(n * TOTAL_STRIDE);
+        for (int i = 0; i < n; i++) {
+            totals.set(i * TOTAL_STRIDE + TOTAL_MIN, Long.MAX_VALUE);
+            totals.set(i * TOTAL_STRIDE + TOTAL_MAX, Long.MIN_VALUE);
+        }
+        windowEpochs.set(0, -1);
+        windowEpochs.set(1, -1);
+        lastSnapshot = new WindowSnapshot(-1, 0, 0, new double[percents.length], 0);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKET_COUNT + mantissa - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * The value in the middle of the range of values recorded in the bucket
+     */
+    static double bucketValue(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        long lower = mantissa << shift;
+        long upper = ((mantissa + 1) << shift) - 1;
+        return (lower + upper) / 2d;
+    }
+
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & stripeMask;
+    }
+
+    public void noteValue(double msecs) {
+        noteValue(msecs, System.currentTimeMillis());
+    }
+
+    public void noteValue(double msecs, long currentTime) {
+        long micros = (long) (msecs * 1000);
+        if (micros < 0) {
+            micros = 0;
+        } else if (micros > MAX_VALUE) {
+            micros = MAX_VALUE;
+        }
+        int stripe = stripe();
+
+        AtomicLongArray window = currentWindow(currentTime / windowMillis, stripe);
+        window.incrementAndGet(bucketIndex(micros));
+        window.incrementAndGet(WINDOW_COUNT);
+        window.addAndGet(WINDOW_SUM, micros);
+
+        int base = stripe * TOTAL_STRIDE;
+        totals.incrementAndGet(base + TOTAL_COUNT);
+        totals.addAndGet(base + TOTAL_SUM, micros);
+        for (;;) {
+            long bits = totals.get(base + TOTAL_SUM_SQUARES);
+            double updated = Double.longBitsToDouble(bits) + (double) micros * micros;
+            if (totals.compareAndSet(base + TOTAL_SUM_SQUARES, bits, Double.doubleToRawLongBits(updated))) {
+                break;
+            }
+        }
+        for (;;) {
+            long min = totals.get(base + TOTAL_MIN);
+            if (micros >= min || totals.compareAndSet(base + TOTAL_MIN, min, micros)) {
+                break;
+            }
+        }
+        for (;;) {
+            long max = totals.get(base + TOTAL_MAX);
+            if (micros <= max || totals.compareAndSet(base + TOTAL_MAX, max, micros)) {
+                break;
+            }
+        }
+    }
+
+    private AtomicLongArray currentWindow(long epoch, int stripe) {
+        int window = (int) (epoch & 1);
+        for (;;) {
+            long windowEpoch = windowEpochs.get(window);
+            if (windowEpoch >= epoch) {
+                // a thread with an older time may record into a newer window, which is acceptable
+                break;
+            }
+            if (windowEpoch != RESETTING && windowEpochs.compareAndSet(window, windowEpoch, RESETTING)) {
+                // this window was last used two or more windows ago, reset it for reuse
+                for (int i = 0; i < stripes; i++) {
+                    AtomicLongArray counters = windowStripes.get(window * stripes + i);
+                    if (counters != null) {
+                        for (int j = 0; j < WINDOW_STRIDE; j++) {
+                            counters.set(j, 0);
+                        }
+                    }
+                }
+                windowEpochs.set(window, epoch);
+                break;
+            }
+            // another thread is resetting the window, which only takes a few microseconds
+            Thread.yield();
+        }
+        int index = window * stripes + stripe;
+        AtomicLongArray counters = windowStripes.get(index);
+        if (counters == null) {
+            windowStripes.compareAndSet(index, null, new AtomicLongArray(WINDOW_STRIDE));
+            counters = windowStripes.get(index);
+        }
+        return counters;
+    }
+
+    /**
+     * Get the statistics of the last complete window before the given time. They are computed
+     * on the first call for a window and cached afterwards.
+     */
+    public WindowSnapshot getWindowSnapshot(long currentTime) {
+        long epoch = currentTime / windowMillis - 1;
+        WindowSnapshot snapshot = lastSnapshot;
+        if (snapshot.epoch == epoch) {
+            return snapshot;
+        }
+        snapshot = computeSnapshot(epoch);
+        lastSnapshot = snapshot;
+        return snapshot;
+    }
+
+    private WindowSnapshot computeSnapshot(long epoch) {
+        long[] buckets = new long[BUCKET_COUNT];
+        long count = 0;
+        long sum = 0;
+        int window = (int) (epoch & 1);
+        if (epoch >= 0 && windowEpochs.get(window) == epoch) {
+            for (int i = 0; i < stripes; i++) {
+                AtomicLongArray counters = windowStripes.get(window * stripes + i);
+                if (counters != null) {
+                    for (int j = 0; j < BUCKET_COUNT; j++) {
+                        buckets[j] += counters.get(j);
+                    }
+                    count += counters.get(WINDOW_COUNT);
+                    sum += counters.get(WINDOW_SUM);
+                }
+            }
+        }
+        double[] values = new double[percents.length];
+        long total = 0;
+        for (long c : buckets) {
+            total += c;
+        }
+        if (total > 0) {
+            for (int p = 0; p < percents.length; p++) {
+                long rank = Math.max(1, (long) Math.ceil(percents[p] / 100 * total));
+                long cumulative = 0;
+                for (int j = 0; j < BUCKET_COUNT; j++) {
+                    cumulative += buckets[j];
+                    if (cumulative >= rank) {
+                        values[p] = bucketValue(j) / 1000;
+                        break;
+                    }
+                }
+            }
+        }
+        double mean = count == 0 ? 0 : sum / 1000d / count;
+        return new WindowSnapshot(epoch, (int) Math.min(count, Integer.MAX_VALUE), mean, values,
+                (epoch + 1) * windowMillis);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < stripes; i++) {
+            count += totals.get(i * TOTAL_STRIDE + TOTAL_COUNT);
+        }
+        return count;
+    }
+
+    /**
+     * Mean of all recorded values, in milliseconds
+     */
+    public double getMean() {
+        long count = 0;
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            count += totals.get(i * TOTAL_STRIDE + TOTAL_COUNT);
+            sum += totals.get(i * TOTAL_STRIDE + TOTAL_SUM);
+        }
+        return count == 0 ? 0 : sum / 1000d / count;
+    }
+
+    /**
+     * Minimum of all recorded values, in milliseconds
+     */
+    public double getMinimum() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < stripes; i++) {
+            min = Math.min(min, totals.get(i * TOTAL_STRIDE + TOTAL_MIN));
+        }
+        return min == Long.MAX_VALUE ? 0 : min / 1000d;
+    }
+
+    /**
+     * Maximum of all recorded values, in milliseconds
+     */
+    public double getMaximum() {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < stripes; i++) {
+            max = Math.max(max, totals.get(i * TOTAL_STRIDE + TOTAL_MAX));
+        }
+        return max == Long.MIN_VALUE ? 0 : max / 1000d;
+    }
+
+    /**
+     * Standard deviation of all recorded values, in milliseconds
+     */
+    public double getStdDev() {
+        long count = 0;
+        double sum = 0;
+        double sumSquares = 0;
+        for (int i = 0; i < stripes; i++) {
+            count += totals.get(i * TOTAL_STRIDE + TOTAL_COUNT);
+            sum += totals.get(i * TOTAL_STRIDE + TOTAL_SUM);
+            sumSquares += Double.longBitsToDouble(totals.get(i * TOTAL_STRIDE + TOTAL_SUM_SQUARES));
+        }
+        if (count < 2) {
+            return 0;
+        }
+        double mean = sum / count;
+        double variance = (sumSquares - mean * sum) / (count - 1);
+        return variance <= 0 ? 0 : Math.sqrt(variance) / 1000;
+    }
+
+    /**
+     * Statistics of the values recorded in one window
+     */
+    public static final class WindowSnapshot {
+        private final long epoch;
+        private final int sampleSize;
+        private final double mean;
+        private final double[] percentiles;
+        private final long timestampMillis;
+
+        WindowSnapshot(long epoch, int sampleSize, double mean, double[] percentiles, long timestampMillis) {
+            this.epoch = epoch;
+            this.sampleSize = sampleSize;
+            this.mean = mean;
+            this.percentiles = percentiles;
+            this.timestampMillis = timestampMillis;
+        }
+
+        public int getSampleSize() {
+            return sampleSize;
+        }
+
+        /**
+         * Mean of the values in the window, in milliseconds
+         */
+        public double getMean() {
+            return mean;
+        }
+
+        /**
+         * Value of the percentile at the given index of the percents this histogram was created with,
+         * in milliseconds
+         */
+        public double getPercentile(int index) {
+            return percentiles[index];
+        }
+
+        /**
+         * End of the window, in milliseconds since the epoch
+         */
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+    }
+}
@@ -76,7 +76,8 @@ public class RoundRobinRule extends AbstractLoadBalancerRule {
                 continue;
             }
 
-            if (server.isAlive() && (server.isReadyToServe())) {
+            // a warming server is skipped in proportion to its slow start weight, except on the last try
+            if (server.isAlive() && (server.isReadyToServe()) && (count >= 10 || SlowStart.accept(lb, server))) {
                 return (server);
             }
 
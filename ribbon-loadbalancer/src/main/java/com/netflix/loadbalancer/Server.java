@@ -65,6 +65,9 @@ public class Server {
     private String zone = UNKNOWN_ZONE;
     private volatile boolean readyToServe = true;
 
+    // stats attached by LoadBalancerStats when it does not use its cache, see LoadBalancerStats#getSingleServerStat
+    volatile ServerStats attachedStats;
+
     private MetaInfo simpleMetaInfo = new MetaInfo() {
         @Override
         public String getAppName() {
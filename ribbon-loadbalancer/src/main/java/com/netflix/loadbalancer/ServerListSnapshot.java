@@ -0,0 +1,151 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.loadbalancer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable, versioned view of the "all" and "up" server lists of a {@link BaseLoadBalancer}.
+ * <p>
+ * A snapshot is never modified after it is created. The load balancer publishes a new snapshot
+ * through a single volatile reference whenever the server list or the server status changes, so
+ * that rules can read a consistent pair of lists without locking or copying.
+ */
+public final class ServerListSnapshot {
+
+    private static final Server[] NO_SERVERS = new Server[0];
+
+    static final ServerListSnapshot EMPTY = new ServerListSnapshot(0, NO_SERVERS, NO_SERVERS);
+
+    private final long version;
+    private final Server[] allServers;
+    private final Server[] upServers;
+    private final List<Server> allServerList;
+    private final List<Server> upServerList;
+
+    private ServerListSnapshot(long version, Server[] allServers, Server[] upServers) {
+        this(version, allServers, Collections.unmodifiableList(Arrays.asList(allServers)), upServers);
+    }
+
+    private ServerListSnapshot(long version, Server[] allServers, List<Server> allServerList, Server[] upServers) {
+        this.version = version;
+        this.allServers = allServers;
+        this.upServers = upServers;
+        this.allServerList = allServerList;
+        this.upServerList = allServers == upServers ? allServerList
+                : Collections.unmodifiableList(Arrays.asList(upServers));
+    }
+
+    /**
+     * Create the next version of this snapshot with a new "all" list and "up" list. The
+     * arrays are owned by the snapshot from now on and must not be modified by the caller.
+     */
+    ServerListSnapshot next(Server[] allServers, Server[] upServers) {
+        return new ServerListSnapshot(version + 1, allServers, upServers);
+    }
+
+    /**
+     * Create the next version of this snapshot which keeps the "all" list, including the instance returned
+     * by {@link #getAllServers()}, and replaces the "up" list.
+     */
+    ServerListSnapshot withUpServers(Server[] upServers) {
+        return new ServerListSnapshot(version + 1, allServers, allServerList, upServers);
+    }
+
+    /**
+     * Create the next version of this snapshot where the "up" list no longer contains the given servers.
+     * Returns this snapshot if none of the servers is in the "up" list.
+     */
+    ServerListSnapshot withoutUpServers(Server... servers) {
+        Server[] newUpServers = new Server[upServers.length];
+        int count = 0;
+        for (Server up: upServers) {
+            boolean removed = false;
+            for (Server server: servers) {
+                if (up == server) {
+                    removed = true;
+                    break;
+                }
+            }
+            if (!removed) {
+                newUpServers[count++] = up;
+            }
+        }
+        if (count == upServers.length) {
+            return this;
+        }
+        return withUpServers(Arrays.copyOf(newUpServers, count));
+    }
+
+    /**
+     * Version of this snapshot, which is incremented every time a new snapshot is published.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return unmodifiable list of all known servers, backed by this snapshot. The same instance is returned
+     *         by the following snapshots until the "all" list is replaced.
+     */
+    public List<Server> getAllServers() {
+        return allServerList;
+    }
+
+    /**
+     * @return unmodifiable list of servers that are up, backed by this snapshot
+     */
+    public List<Server> getUpServers() {
+        return upServerList;
+    }
+
+    public int getAllServerCount() {
+        return allServers.length;
+    }
+
+    public int getUpServerCount() {
+        return upServers.length;
+    }
+
+    public Server getAllServer(int index) {
+        return allServers[index];
+    }
+
+    public Server getUpServer(int index) {
+        return upServers[index];
+    }
+
+    /**
+     * The backing arrays of this snapshot. They are not copied, so callers must not modify them.
+     */
+    Server[] allServersArray() {
+        return allServers;
+    }
+
+    Server[] upServersArray() {
+        return upServers;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerListSnapshot [version=" + version + ", allServers=" + allServerList
+                + ", upServers=" + upServerList + "]";
+    }
+}
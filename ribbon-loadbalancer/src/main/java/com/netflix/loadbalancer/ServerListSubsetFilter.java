@@ -15,6 +15,7 @@
  */
 package com.netflix.loadbalancer;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -26,6 +27,7 @@ import com.google.common.collect.Sets;
 import com.netflix.client.IClientConfigAware;
 import com.netflix.client.config.DefaultClientConfigImpl;
 import com.netflix.client.config.IClientConfig;
+import com.netflix.config.DynamicBooleanProperty;
 import com.netflix.config.DynamicFloatProperty;
 import com.netflix.config.DynamicIntProperty;
 
@@ -34,6 +36,9 @@ import com.netflix.config.DynamicIntProperty;
  * This is useful if the server farm is large (e.g., in the hundreds) and making use of every one of them
  * and keeping the connections in http client's connection pool is unnecessary. It also has the capability of eviction 
  * of relatively unhealthy servers by comparing the total network failures and concurrent connections. 
+ * <p>
+ * Optionally the subset is chosen deterministically from the id of the client instance, see 
+ * {@link #getFilteredListOfServers(List)}, so that every server is used by nearly the same number of clients.
  *  
  * @author awang
  *
@@ -50,6 +55,12 @@ public class ServerListSubsetFilter<T extends Server> extends ZoneAffinityServer
             new DynamicIntProperty(DefaultClientConfigImpl.DEFAULT_PROPERTY_NAME_SPACE + ".ServerListSubsetFilter.eliminationFailureThresold", 0);
     private DynamicIntProperty eliminationConnectionCountThreshold = 
             new DynamicIntProperty(DefaultClientConfigImpl.DEFAULT_PROPERTY_NAME_SPACE + ".ServerListSubsetFilter.eliminationConnectionThresold", 0);
+    private DynamicBooleanProperty deterministic = 
+            new DynamicBooleanProperty(DefaultClientConfigImpl.DEFAULT_PROPERTY_NAME_SPACE + ".ServerListSubsetFilter.deterministic", false);
+    private DynamicIntProperty clientId = 
+            new DynamicIntProperty(DefaultClientConfigImpl.DEFAULT_PROPERTY_NAME_SPACE + ".ServerListSubsetFilter.clientId", -1);
+    // distinguishes the subsets of different clients of the same servers
+    private int salt = DefaultClientConfigImpl.DEFAULT_PROPERTY_NAME_SPACE.hashCode();
     
     @Override
     public void initWithNiwsConfig(IClientConfig clientConfig) {
@@ -61,6 +72,11 @@ public class ServerListSubsetFilter<T extends Server> extends ZoneAffinityServer
                 + ".ServerListSubsetFilter.eliminationFailureThresold", 0);
         eliminationConnectionCountThreshold = new DynamicIntProperty(clientConfig.getClientName() + "." + clientConfig.getNameSpace()
                 + ".ServerListSubsetFilter.eliminationConnectionThresold", 0);
+        deterministic = new DynamicBooleanProperty(clientConfig.getClientName() + "." + clientConfig.getNameSpace()
+                + ".ServerListSubsetFilter.deterministic", false);
+        clientId = new DynamicIntProperty(clientConfig.getClientName() + "." + clientConfig.getNameSpace()
+                + ".ServerListSubsetFilter.clientId", -1);
+        salt = clientConfig.getClientName().hashCode();
     }
         
     /**
@@ -81,11 +97,25 @@ public class ServerListSubsetFilter<T extends Server> extends ZoneAffinityServer
      * <p>
      * After the elimination, new servers will be randomly chosen from all servers pool to keep the
      * number of the subset unchanged. 
-     * 
+     * <p>
+     * If {@code <clientName>.<nameSpace>.ServerListSubsetFilter.deterministic} is true and 
+     * {@code <clientName>.<nameSpace>.ServerListSubsetFilter.clientId} is set to the index of this client instance
+     * among the instances of the client application, starting at 0, the subset is instead chosen deterministically:
+     * the clients are grouped in rounds, and within a round the servers are ordered by a hash seeded with the round
+     * and divided into disjoint subsets, one for each client of the round. Every server is then used by nearly the same
+     * number of clients, which bounds the number of connections to each server. Adding or removing a server changes
+     * each subset by at most one server. Unhealthy servers are not eliminated in this mode, as replacing them would
+     * break the balance; the load balancer rule avoids them within the subset.
      */
     @Override
     public List<T> getFilteredListOfServers(List<T> servers) {
         List<T> zoneAffinityFiltered = super.getFilteredListOfServers(servers);
+        int id = clientId.get();
+        if (deterministic.get() && id >= 0) {
+            List<T> subset = deterministicSubset(zoneAffinityFiltered, id, sizeProp.get(), salt);
+            currentSubset = Sets.newHashSet(subset);
+            return subset;
+        }
         Set<T> candidates = Sets.newHashSet(zoneAffinityFiltered);
         Set<T> newSubSet = Sets.newHashSet(currentSubset);
         LoadBalancerStats lbStats = getLoadBalancerStats();
@@ -148,6 +178,83 @@ public class ServerListSubsetFilter<T extends Server> extends ZoneAffinityServer
         return Lists.newArrayList(newSubSet);            
     }
 
+    /**
+     * Choose the subset of a client deterministically, as described in {@link #getFilteredListOfServers(List)}.
+     * The servers are ordered by packing the hash of each server into the high bits of a long and its index into the
+     * low bits, and only the range of the subset is selected, so this takes linear time without boxing.
+     */
+    static <T extends Server> List<T> deterministicSubset(List<T> servers, int clientId, int subsetSize, int salt) {
+        int count = servers.size();
+        if (subsetSize <= 0 || count <= subsetSize) {
+            return new ArrayList<T>(servers);
+        }
+        int subsetCount = count / subsetSize;
+        int round = clientId / subsetCount;
+        int subsetId = clientId % subsetCount;
+        long seed = mix(((long) salt << 32) ^ round);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (mix(seed ^ servers.get(i).getId().hashCode()) & 0xFFFFFFFF00000000L) | i;
+        }
+        int from = subsetId * subsetSize;
+        int to = from + subsetSize - 1;
+        select(keys, 0, count - 1, from);
+        select(keys, from, count - 1, to);
+        List<T> subset = new ArrayList<T>(subsetSize);
+        for (int i = from; i <= to; i++) {
+            subset.add(servers.get((int) (keys[i] & 0xFFFFFFFFL)));
+        }
+        return subset;
+    }
+
+    /**
+     * Partially sort the range so that the element at index k is in its sorted position, with smaller
+     * elements before and larger elements after it
+     */
+    private static void select(long[] a, int left, int right, int k) {
+        while (right > left) {
+            // median of three as pivot, the keys are hashes so this is rarely degenerate
+            int mid = (left + right) >>> 1;
+            long pivot = Math.max(Math.min(a[left], a[mid]), Math.min(Math.max(a[left], a[mid]), a[right]));
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (a[i] < pivot) {
+                    i++;
+                }
+                while (a[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long tmp = a[i];
+                    a[i] = a[j];
+                    a[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads the bits of the input over all bits of the result
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     /**
      * Randomly shuffle the beginning portion of server list (according to the number passed into the method) 
      * and return them.
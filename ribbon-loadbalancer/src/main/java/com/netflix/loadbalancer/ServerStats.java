@@ -23,6 +23,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.netflix.config.DynamicBooleanProperty;
 import com.netflix.config.DynamicIntProperty;
 import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.servo.annotations.DataSourceType;
@@ -46,12 +47,21 @@ public class ServerStats {
     private final DynamicIntProperty maxCircuitTrippedTimeout;
     private static final DynamicIntProperty activeRequestsCountTimeout = 
         DynamicPropertyFactory.getInstance().getIntProperty("niws.loadbalancer.serverStats.activeRequestsCount.effectiveWindowSeconds", 60 * 10);
+    private static final DynamicIntProperty peakEwmaDecayTime =
+        DynamicPropertyFactory.getInstance().getIntProperty("niws.loadbalancer.serverStats.peakEwma.decayTimeMillis", 10 * 1000);
+    private static final DynamicBooleanProperty histogramEnabled =
+        DynamicPropertyFactory.getInstance().getBooleanProperty("niws.loadbalancer.serverStats.histogram.enabled", false);
+    private static final DynamicIntProperty histogramStripes =
+        DynamicPropertyFactory.getInstance().getIntProperty("niws.loadbalancer.serverStats.histogram.stripes",
+                Math.min(4, Runtime.getRuntime().availableProcessors()));
     
     private static final double[] PERCENTS = makePercentValues();
     
     private DataDistribution dataDist = new DataDistribution(1, PERCENTS); // in case
     private DataPublisher publisher = null;
     private final Distribution responseTimeDist = new Distribution();
+    // used instead of dataDist and responseTimeDist when enabled
+    private ResponseTimeHistogram histogram = null;
     
     int bufferSize = DEFAULT_BUFFER_SIZE;
     int publishInterval = DEFAULT_PUBLISH_INTERVAL;
@@ -63,8 +73,15 @@ public class ServerStats {
     private MeasuredRate requestCountInWindow = new MeasuredRate(300000L);
     
     Server server;
+
+    // the LoadBalancerStats that created this instance, if any
+    final LoadBalancerStats lbStats;
     
     AtomicLong totalRequests = new AtomicLong();
+
+    private final AtomicLong totalFailures = new AtomicLong();
+
+    private final AtomicLong totalResponseTime = new AtomicLong();
     
     @VisibleForTesting
     AtomicInteger successiveConnectionFailureCount = new AtomicInteger(0);
@@ -80,6 +97,10 @@ public class ServerStats {
     private AtomicLong totalCircuitBreakerBlackOutPeriod = new AtomicLong(0);
     private volatile long lastAccessedTimestamp;
     private volatile long firstConnectionTimestamp = 0;
+
+    // peak sensitive exponentially weighted moving average of response time, stored as double bits
+    private final AtomicLong peakEwmaResponseTime = new AtomicLong(Double.doubleToRawLongBits(0d));
+    private volatile long peakEwmaTimestamp;
     
     public ServerStats() {
         connectionFailureThreshold = DynamicPropertyFactory.getInstance().getIntProperty(
@@ -89,21 +110,31 @@ public class ServerStats {
 
         maxCircuitTrippedTimeout = DynamicPropertyFactory.getInstance().getIntProperty(
                 "niws.loadbalancer.default.circuitTripMaxTimeoutSeconds", 30);
+        lbStats = null;
     }
     
     public ServerStats(LoadBalancerStats lbStats) {
         this.maxCircuitTrippedTimeout = lbStats.getCircuitTripMaxTimeoutSeconds();
         this.circuitTrippedTimeoutFactor = lbStats.getCircuitTrippedTimeoutFactor();
         this.connectionFailureThreshold = lbStats.getConnectionFailureCountThreshold();
+        this.lbStats = lbStats;
     }
     
     /**
      * Initializes the object, starting data collection and reporting.
+     * <p>
+     * If {@code niws.loadbalancer.serverStats.histogram.enabled} is true, response times are recorded
+     * in a lock free {@link ResponseTimeHistogram} instead of the synchronized distributions, and the
+     * percentiles are computed when read rather than by a publisher thread.
      */
     public void initialize(Server server) {
         serverFailureCounts = new MeasuredRate(failureCountSlidingWindowInterval);
         requestCountInWindow = new MeasuredRate(300000L);
-        if (publisher == null) {
+        if (histogramEnabled.get()) {
+            if (histogram == null) {
+                histogram = new ResponseTimeHistogram(getPublishIntervalMillis(), PERCENTS, histogramStripes.get());
+            }
+        } else if (publisher == null) {
             dataDist = new DataDistribution(getBufferSize(), PERCENTS);
             publisher = new DataPublisher(dataDist, getPublishIntervalMillis());
             publisher.start();
@@ -181,6 +212,14 @@ public class ServerStats {
      */
     public void addToFailureCount(){
         serverFailureCounts.increment();
+        totalFailures.incrementAndGet();
+    }
+    
+    /**
+     * Returns the count of failures since the stats were created
+     */
+    public long getTotalFailureCount() {
+        return totalFailures.get();
     }
     
     /**
@@ -196,8 +235,73 @@ public class ServerStats {
      * @param msecs
      */
     public void noteResponseTime(double msecs){
-        dataDist.noteValue(msecs);
-        responseTimeDist.noteValue(msecs);
+        long now = System.currentTimeMillis();
+        ResponseTimeHistogram histogram = this.histogram;
+        if (histogram != null) {
+            histogram.noteValue(msecs, now);
+        } else {
+            dataDist.noteValue(msecs);
+            responseTimeDist.noteValue(msecs);
+        }
+        notePeakEwmaResponseTime(msecs, now);
+        totalResponseTime.addAndGet((long) msecs);
+    }
+
+    /**
+     * Gets the sum of all response times noted since the stats were created, in milliseconds. Together with
+     * {@link #getTotalRequestsCount()} this gives the average response time over any period.
+     */
+    public long getTotalResponseTime() {
+        return totalResponseTime.get();
+    }
+
+    /**
+     * Update the peak EWMA of response time. A response time higher than the current average
+     * replaces it immediately, while lower response times are blended in with a weight that
+     * decays exponentially with the time since the last update.
+     */
+    @VisibleForTesting
+    void notePeakEwmaResponseTime(double msecs, long currentTime) {
+        for (;;) {
+            long currentBits = peakEwmaResponseTime.get();
+            double current = Double.longBitsToDouble(currentBits);
+            double updated;
+            if (msecs > current) {
+                updated = msecs;
+            } else {
+                double w = decayWeight(currentTime);
+                updated = current * w + msecs * (1 - w);
+            }
+            if (peakEwmaResponseTime.compareAndSet(currentBits, Double.doubleToRawLongBits(updated))) {
+                peakEwmaTimestamp = currentTime;
+                return;
+            }
+        }
+    }
+
+    private double decayWeight(long currentTime) {
+        long elapsed = Math.max(currentTime - peakEwmaTimestamp, 0);
+        return Math.exp(-elapsed / (double) Math.max(peakEwmaDecayTime.get(), 1));
+    }
+
+    /**
+     * Gets the peak sensitive exponentially weighted moving average of response time, in milliseconds,
+     * decayed to the given time. The average decays towards zero while the server is idle, so that a
+     * server which has not been used recently is probed again. It does not decay while requests are
+     * in flight, so that a server which stopped responding does not look faster and faster.
+     */
+    public double getPeakEwmaResponseTime(long currentTime) {
+        double average = Double.longBitsToDouble(peakEwmaResponseTime.get());
+        if (getActiveRequestsCount(currentTime) > 0) {
+            return average;
+        }
+        return average * decayWeight(currentTime);
+    }
+
+    @Monitor(name = "PeakEwmaResponseTimeMillis", type = DataSourceType.GAUGE,
+             description = "Peak sensitive moving average of response time, in milliseconds")
+    public double getPeakEwmaResponseTime() {
+        return getPeakEwmaResponseTime(System.currentTimeMillis());
     }
     
     public void incrementNumRequests(){
@@ -324,6 +428,9 @@ public class ServerStats {
     @Monitor(name = "OverallResponseTimeMillisAvg", type = DataSourceType.INFORMATIONAL,
              description = "Average total time for a request, in milliseconds")
     public double getResponseTimeAvg() {
+        if (histogram != null) {
+            return histogram.getMean();
+        }
         return responseTimeDist.getMean();
     }
 
@@ -333,6 +440,9 @@ public class ServerStats {
     @Monitor(name = "OverallResponseTimeMillisMax", type = DataSourceType.INFORMATIONAL,
              description = "Max total time for a request, in milliseconds")
     public double getResponseTimeMax() {
+        if (histogram != null) {
+            return histogram.getMaximum();
+        }
         return responseTimeDist.getMaximum();
     }
 
@@ -342,6 +452,9 @@ public class ServerStats {
     @Monitor(name = "OverallResponseTimeMillisMin", type = DataSourceType.INFORMATIONAL,
              description = "Min total time for a request, in milliseconds")
     public double getResponseTimeMin() {
+        if (histogram != null) {
+            return histogram.getMinimum();
+        }
         return responseTimeDist.getMinimum();
     }
 
@@ -351,6 +464,9 @@ public class ServerStats {
     @Monitor(name = "OverallResponseTimeMillisStdDev", type = DataSourceType.INFORMATIONAL,
              description = "Standard Deviation in total time to handle a request, in milliseconds")
     public double getResponseTimeStdDev() {
+        if (histogram != null) {
+            return histogram.getStdDev();
+        }
         return responseTimeDist.getStdDev();
     }
 
@@ -364,6 +480,9 @@ public class ServerStats {
     @Monitor(name = "ResponseTimePercentileNumValues", type = DataSourceType.GAUGE,
              description = "The number of data points used to compute the currently reported percentile values")
     public int getResponseTimePercentileNumValues() {
+        if (histogram != null) {
+            return getWindowSnapshot().getSampleSize();
+        }
         return dataDist.getSampleSize();
     }
 
@@ -373,6 +492,9 @@ public class ServerStats {
     @Monitor(name = "ResponseTimePercentileWhen", type = DataSourceType.INFORMATIONAL,
              description = "The time the percentile values were computed")
     public String getResponseTimePercentileTime() {
+        if (histogram != null) {
+            return new Date(getWindowSnapshot().getTimestampMillis()).toString();
+        }
         return dataDist.getTimestamp();
     }
 
@@ -383,6 +505,9 @@ public class ServerStats {
     @Monitor(name = "ResponseTimePercentileWhenMillis", type = DataSourceType.COUNTER,
              description = "The time the percentile values were computed in milliseconds since the epoch")
     public long getResponseTimePercentileTimeMillis() {
+        if (histogram != null) {
+            return getWindowSnapshot().getTimestampMillis();
+        }
         return dataDist.getTimestampMillis();
     }
 
@@ -393,6 +518,9 @@ public class ServerStats {
     @Monitor(name = "ResponseTimeMillisAvg", type = DataSourceType.GAUGE,
              description = "Average total time for a request in the recent time slice, in milliseconds")
     public double getResponseTimeAvgRecent() {
+        if (histogram != null) {
+            return getWindowSnapshot().getMean();
+        }
         return dataDist.getMean();
     }
     
@@ -482,8 +610,15 @@ public class ServerStats {
     }
     
     private double getResponseTimePercentile(Percent p) {
+        if (histogram != null) {
+            return getWindowSnapshot().getPercentile(p.ordinal());
+        }
         return dataDist.getPercentiles()[p.ordinal()];
     }
+
+    private ResponseTimeHistogram.WindowSnapshot getWindowSnapshot() {
+        return histogram.getWindowSnapshot(System.currentTimeMillis());
+    }
     
     public String toString(){
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,128 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.loadbalancer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+
+/**
+ * Gives servers that are added to the server list of a load balancer a reduced weight, which ramps up
+ * linearly from the minimum weight to full weight over the slow start window, so that new instances, for
+ * example after a deployment, are not sent their full share of requests before they are warmed up.
+ * <p>
+ * The servers of the initial server list start with full weight, as there are no warm servers to prefer.
+ * The ramp of a server starts when it is added, or when it becomes ready to serve if its connections are
+ * primed. The weight is honored by {@link RoundRobinRule}, {@link WeightedResponseTimeRule} and
+ * {@link PowerOfTwoChoicesRule}. It is enabled with
+ *
+ * <pre>{@code
+ * <clientName>.<nameSpace>.SlowStartWindow=60000
+ * <clientName>.<nameSpace>.SlowStartMinWeight=0.1
+ *
+ * }</pre>
+ */
+public class SlowStart implements ServerListChangeListener {
+
+    private static final double MIN_WEIGHT = 0.01;
+
+    private final long windowMillis;
+    private final double minWeight;
+
+    // servers that are warming up, and the time they were added
+    private final ConcurrentMap<Server, Long> addedTimes = new ConcurrentHashMap<Server, Long>();
+
+    public SlowStart(long windowMillis, double minWeight) {
+        this.windowMillis = windowMillis;
+        this.minWeight = Math.min(1, Math.max(MIN_WEIGHT, minWeight));
+    }
+
+    /**
+     * @return null if slow start is not enabled for the client
+     */
+    public static SlowStart create(IClientConfig clientConfig) {
+        int window = clientConfig.get(CommonClientConfigKey.SlowStartWindow, DefaultClientConfigImpl.DEFAULT_SLOW_START_WINDOW);
+        if (window <= 0) {
+            return null;
+        }
+        return new SlowStart(window, clientConfig.get(CommonClientConfigKey.SlowStartMinWeight, DefaultClientConfigImpl.DEFAULT_SLOW_START_MIN_WEIGHT));
+    }
+
+    @Override
+    public void serverListChanged(List<Server> oldList, List<Server> newList) {
+        Set<Server> current = new HashSet<Server>(newList);
+        addedTimes.keySet().retainAll(current);
+        if (oldList.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<Server> old = new HashSet<Server>(oldList);
+        for (Server server : newList) {
+            if (!old.contains(server)) {
+                addedTimes.put(server, now);
+            }
+        }
+    }
+
+    /**
+     * Get the weight of a server, from the minimum weight when it is added to 1 when it is warmed up
+     */
+    public double getWeight(Server server, long currentTime) {
+        if (addedTimes.isEmpty()) {
+            return 1;
+        }
+        Long added = addedTimes.get(server);
+        if (added == null) {
+            return 1;
+        }
+        if (!server.isReadyToServe()) {
+            // the ramp starts once the server is ready
+            addedTimes.replace(server, added, currentTime);
+            return minWeight;
+        }
+        long elapsed = currentTime - added;
+        if (elapsed >= windowMillis) {
+            addedTimes.remove(server, added);
+            return 1;
+        }
+        return minWeight + (1 - minWeight) * Math.max(0, elapsed) / windowMillis;
+    }
+
+    /**
+     * Decide if a server that was chosen by a rule is accepted, with the probability of its slow start weight,
+     * so that a warming server is chosen in proportion to its weight
+     */
+    static boolean accept(ILoadBalancer lb, Server server) {
+        if (!(lb instanceof AbstractLoadBalancer)) {
+            return true;
+        }
+        LoadBalancerStats stats = ((AbstractLoadBalancer) lb).getLoadBalancerStats();
+        if (stats == null) {
+            return true;
+        }
+        double weight = stats.getSlowStartWeight(server, System.currentTimeMillis());
+        return weight >= 1 || ThreadLocalRandom.current().nextDouble() < weight;
+    }
+}
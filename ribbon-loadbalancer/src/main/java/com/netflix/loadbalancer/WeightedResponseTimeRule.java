@@ -17,11 +17,10 @@
 */
 package com.netflix.loadbalancer;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -62,6 +61,11 @@ import com.netflix.client.config.IClientConfigKey;
  * <br>
  * else if (random_number between 81 &amp; 100) {send request to D;}
  * <p>
+ * The accumulated weights are published together with the servers they were computed for, and the
+ * interval of the random number is found with a binary search, so a choice is O(log n).
+ * When the server list of a {@link BaseLoadBalancer} changes, the weights are recalculated in the
+ * background; until then servers are chosen from the list the weights were computed for.
+ * <p>
  * When there is not enough statistics gathered for the servers, this rule
  * will fall back to use {@link RoundRobinRule}. 
  * @author stonse
@@ -91,18 +95,15 @@ public class WeightedResponseTimeRule extends RoundRobinRule {
 
     private static final Logger logger = LoggerFactory.getLogger(WeightedResponseTimeRule.class);
     
-    // holds the accumulated weight from index 0 to current index
-    // for example, element at index 2 holds the sum of weight of servers from 0 to 2
-    private volatile List<Double> accumulatedWeights = new ArrayList<Double>();
-    
-
-    private final Random random = new Random();
+    private volatile ServerWeights serverWeights = ServerWeights.EMPTY;
 
     protected Timer serverWeightTimer = null;
 
     protected AtomicBoolean serverWeightAssignmentInProgress = new AtomicBoolean(
             false);
 
+    private final AtomicBoolean serverWeightUpdateScheduled = new AtomicBoolean(false);
+
     String name = "unknown";
 
     public WeightedResponseTimeRule() {
@@ -161,22 +162,19 @@ public class WeightedResponseTimeRule extends RoundRobinRule {
 
         while (server == null) {
             // get hold of the current reference in case it is changed from the other thread
-            List<Double> currentWeights = accumulatedWeights;
+            ServerWeights currentWeights = serverWeights;
             if (Thread.interrupted()) {
                 return null;
             }
-            List<Server> allList = lb.getAllServers();
-
-            int serverCount = allList.size();
-
-            if (serverCount == 0) {
+            if (lb.getAllServers().size() == 0) {
                 return null;
             }
+            if (lb instanceof BaseLoadBalancer
+                    && ((BaseLoadBalancer) lb).getServerListSnapshot().getAllServers() != currentWeights.serverList) {
+                scheduleWeightUpdate();
+            }
 
-            int serverIndex = 0;
-
-            // last one in the list is the sum of all weights
-            double maxTotalWeight = currentWeights.size() == 0 ? 0 : currentWeights.get(currentWeights.size() - 1); 
+            double maxTotalWeight = currentWeights.getTotalWeight();
             // No server has been hit yet and total weight is not initialized
             // fallback to use round robin
             if (maxTotalWeight < 0.001d) {
@@ -186,19 +184,13 @@ public class WeightedResponseTimeRule extends RoundRobinRule {
                 }
             } else {
                 // generate a random weight between 0 (inclusive) to maxTotalWeight (exclusive)
-                double randomWeight = random.nextDouble() * maxTotalWeight;
-                // pick the server index based on the randomIndex
-                int n = 0;
-                for (Double d : currentWeights) {
-                    if (d >= randomWeight) {
-                        serverIndex = n;
-                        break;
-                    } else {
-                        n++;
-                    }
+                double randomWeight = ThreadLocalRandom.current().nextDouble() * maxTotalWeight;
+                server = currentWeights.choose(randomWeight);
+                if (server != null && !SlowStart.accept(lb, server)) {
+                    // choose again, so that a warming server gets its share multiplied by its slow start weight
+                    server = null;
+                    continue;
                 }
-
-                server = allList.get(serverIndex);
             }
 
             if (server == null) {
@@ -217,8 +209,28 @@ public class WeightedResponseTimeRule extends RoundRobinRule {
         return server;
     }
 
+    /**
+     * Recalculate the weights as soon as possible on the timer thread, because the "all" server list has
+     * changed. Changes of the "up" list alone, for example by pings, do not require new weights.
+     */
+    private void scheduleWeightUpdate() {
+        Timer timer = serverWeightTimer;
+        if (timer != null && serverWeightUpdateScheduled.compareAndSet(false, true)) {
+            try {
+                timer.schedule(new DynamicServerWeightTask(), 0);
+            } catch (IllegalStateException e) {
+                // timer is cancelled
+            }
+        }
+    }
+
+    ServerWeights getServerWeights() {
+        return serverWeights;
+    }
+
     class DynamicServerWeightTask extends TimerTask {
         public void run() {
+            serverWeightUpdateScheduled.set(false);
             ServerWeight serverWeight = new ServerWeight();
             try {
                 serverWeight.maintainWeights();
@@ -245,31 +257,32 @@ public class WeightedResponseTimeRule extends RoundRobinRule {
             try {
                 logger.info("Weight adjusting job started");
                 AbstractLoadBalancer nlb = (AbstractLoadBalancer) lb;
+                // the list of the snapshot, so that a concurrent change of the list triggers another update
+                List<Server> serverList = nlb instanceof BaseLoadBalancer
+                        ? ((BaseLoadBalancer) nlb).getServerListSnapshot().getAllServers() : null;
                 LoadBalancerStats stats = nlb.getLoadBalancerStats();
                 if (stats == null) {
-                    // no statistics, nothing to do
+                    // no statistics, nothing to do but to keep choose from asking for updates of this list
+                    serverWeights = serverWeights.forServerList(serverList);
                     return;
                 }
+                Server[] servers = (serverList != null ? serverList : nlb.getAllServers()).toArray(new Server[0]);
+                double[] responseTimes = new double[servers.length];
                 double totalResponseTime = 0;
-                // find maximal 95% response time
-                for (Server server : nlb.getAllServers()) {
+                for (int i = 0; i < servers.length; i++) {
                     // this will automatically load the stats if not in cache
-                    ServerStats ss = stats.getSingleServerStat(server);
-                    totalResponseTime += ss.getResponseTimeAvg();
+                    responseTimes[i] = stats.getSingleServerStat(servers[i]).getResponseTimeAvg();
+                    totalResponseTime += responseTimes[i];
                 }
                 // weight for each server is (sum of responseTime of all servers - responseTime)
                 // so that the longer the response time, the less the weight and the less likely to be chosen
-                Double weightSoFar = 0.0;
-                
-                // create new list and hot swap the reference
-                List<Double> finalWeights = new ArrayList<Double>();
-                for (Server server : nlb.getAllServers()) {
-                    ServerStats ss = stats.getSingleServerStat(server);
-                    double weight = totalResponseTime - ss.getResponseTimeAvg();
-                    weightSoFar += weight;
-                    finalWeights.add(weightSoFar);   
+                double weightSoFar = 0.0;
+                double[] accumulatedWeights = new double[servers.length];
+                for (int i = 0; i < servers.length; i++) {
+                    weightSoFar += totalResponseTime - responseTimes[i];
+                    accumulatedWeights[i] = weightSoFar;
                 }
-                setWeights(finalWeights);
+                serverWeights = new ServerWeights(serverList, servers, accumulatedWeights);
             } catch (Throwable t) {
                 logger.error("Exception while dynamically calculating server weights", t);
             } finally {
@@ -279,8 +292,49 @@ public class WeightedResponseTimeRule extends RoundRobinRule {
         }
     }
 
-    void setWeights(List<Double> weights) {
-        this.accumulatedWeights = weights;
+    /**
+     * Accumulated weights and the servers they were computed for. Element at index i of the accumulated
+     * weights holds the sum of the weights of servers from 0 to i. The server list is the "all" list of the
+     * {@link ServerListSnapshot} the weights were computed from, or null for other load balancers.
+     */
+    static final class ServerWeights {
+
+        static final ServerWeights EMPTY = new ServerWeights(null, new Server[0], new double[0]);
+
+        final List<Server> serverList;
+        private final Server[] servers;
+        private final double[] accumulatedWeights;
+
+        ServerWeights(List<Server> serverList, Server[] servers, double[] accumulatedWeights) {
+            this.serverList = serverList;
+            this.servers = servers;
+            this.accumulatedWeights = accumulatedWeights;
+        }
+
+        ServerWeights forServerList(List<Server> serverList) {
+            return new ServerWeights(serverList, servers, accumulatedWeights);
+        }
+
+        double getTotalWeight() {
+            return accumulatedWeights.length == 0 ? 0 : accumulatedWeights[accumulatedWeights.length - 1];
+        }
+
+        /**
+         * @return the first server whose accumulated weight is not less than the given weight
+         */
+        Server choose(double weight) {
+            int low = 0;
+            int high = accumulatedWeights.length - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (accumulatedWeights[mid] >= weight) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return servers[low];
+        }
     }
     
     @Override
@@ -43,9 +43,13 @@ public class ZoneAffinityPredicate extends AbstractServerPredicate {
 
     @Override
     public boolean apply(PredicateKey input) {
-        Server s = input.getServer();
+        return apply(input.getServer(), input.getLoadBalancerKey());
+    }
+
+    @Override
+    public boolean apply(Server s, Object loadBalancerKey) {
         String az = s.getZone();
-        if (az != null && zone != null && az.toLowerCase().equals(zone.toLowerCase())) {
+        if (az != null && zone != null && az.equalsIgnoreCase(zone)) {
             return true;
         } else {
             return false;
@@ -49,6 +49,8 @@ public class ZoneAvoidancePredicate extends  AbstractServerPredicate {
             .getInstance().getBooleanProperty(
                     "niws.loadbalancer.zoneAvoidanceRule.enabled", true);
 
+    private volatile AvailableZones availableZones;
+
 
     public ZoneAvoidancePredicate(IRule rule, IClientConfig clientConfig) {
         super(rule, clientConfig);
@@ -78,10 +80,15 @@ public class ZoneAvoidancePredicate extends  AbstractServerPredicate {
 
     @Override
     public boolean apply(@Nullable PredicateKey input) {
+        return apply(input.getServer(), input.getLoadBalancerKey());
+    }
+
+    @Override
+    public boolean apply(Server server, Object loadBalancerKey) {
         if (!ENABLED.get()) {
             return true;
         }
-        String serverZone = input.getServer().getZone();
+        String serverZone = server.getZone();
         if (serverZone == null) {
             // there is no zone information from the server, we do not want to filter
             // out this server
@@ -101,13 +108,45 @@ public class ZoneAvoidancePredicate extends  AbstractServerPredicate {
             // The server zone is unknown to the load balancer, do not filter it out 
             return true;
         }
-        logger.debug("Zone snapshots: {}", zoneSnapshot);
-        Set<String> availableZones = ZoneAvoidanceRule.getAvailableZones(zoneSnapshot, triggeringLoad.get(), triggeringBlackoutPercentage.get());
-        logger.debug("Available zones: {}", availableZones);
+        Set<String> availableZones = getAvailableZones(zoneSnapshot);
         if (availableZones != null) {
-            return availableZones.contains(input.getServer().getZone());
+            return availableZones.contains(serverZone);
         } else {
             return false;
         }
-    }    
+    }
+
+    /**
+     * Get the available zones for the snapshots. As the snapshots are cached by {@link LoadBalancerStats},
+     * the zones are computed once per snapshot instead of once for every server that is filtered.
+     */
+    private Set<String> getAvailableZones(Map<String, ZoneSnapshot> zoneSnapshot) {
+        double load = triggeringLoad.get();
+        double blackoutPercentage = triggeringBlackoutPercentage.get();
+        AvailableZones cached = availableZones;
+        if (cached != null && cached.zoneSnapshot == zoneSnapshot
+                && cached.triggeringLoad == load && cached.triggeringBlackoutPercentage == blackoutPercentage) {
+            return cached.zones;
+        }
+        logger.debug("Zone snapshots: {}", zoneSnapshot);
+        Set<String> zones = ZoneAvoidanceRule.getAvailableZones(zoneSnapshot, load, blackoutPercentage);
+        logger.debug("Available zones: {}", zones);
+        availableZones = new AvailableZones(zoneSnapshot, load, blackoutPercentage, zones);
+        return zones;
+    }
+
+    private static final class AvailableZones {
+        final Map<String, ZoneSnapshot> zoneSnapshot;
+        final double triggeringLoad;
+        final double triggeringBlackoutPercentage;
+        final Set<String> zones;
+
+        AvailableZones(Map<String, ZoneSnapshot> zoneSnapshot, double triggeringLoad,
+                double triggeringBlackoutPercentage, Set<String> zones) {
+            this.zoneSnapshot = zoneSnapshot;
+            this.triggeringLoad = triggeringLoad;
+            this.triggeringBlackoutPercentage = triggeringBlackoutPercentage;
+            this.zones = zones;
+        }
+    }
 }
@@ -17,7 +17,6 @@
  */
 package com.netflix.loadbalancer;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
@@ -62,13 +61,11 @@ public class ZoneAvoidanceRule extends PredicateBasedRule {
         compositePredicate = createCompositePredicate(zonePredicate, availabilityPredicate);
     }
 
+    /**
+     * Get the snapshots of all available zones, which are cached by {@link LoadBalancerStats#getZoneSnapshots()}
+     */
     static Map<String, ZoneSnapshot> createSnapshot(LoadBalancerStats lbStats) {
-        Map<String, ZoneSnapshot> map = new HashMap<String, ZoneSnapshot>();
-        for (String zone : lbStats.getAvailableZones()) {
-            ZoneSnapshot snapshot = lbStats.getZoneSnapshot(zone);
-            map.put(zone, snapshot);
-        }
-        return map;
+        return lbStats.getZoneSnapshots();
     }
 
     static String randomChooseZone(Map<String, ZoneSnapshot> snapshot,
@@ -63,7 +63,7 @@ public class ZoneAwareLoadBalancer<T extends Server> extends DynamicServerListLo
     private static final DynamicBooleanProperty ENABLED = DynamicPropertyFactory.getInstance().getBooleanProperty("ZoneAwareNIWSDiscoveryLoadBalancer.enabled", true);
             
     void setUpServerList(List<Server> upServerList) {
-        this.upServerList = upServerList;
+        setUpServers(upServerList);
     }
     
     public ZoneAwareLoadBalancer() {
@@ -155,6 +155,8 @@ public class ZoneAwareLoadBalancer<T extends Server> extends DynamicServerListLo
         	// We need to create rule object for load balancer for each zone
         	IRule rule = cloneRule(this.getRule());
             loadBalancer = new BaseLoadBalancer(this.getName() + "_" + zone, rule, this.getLoadBalancerStats());
+            // the statistics of all zones are pruned by this load balancer
+            loadBalancer.ownsLoadBalancerStats = false;
             BaseLoadBalancer prev = balancers.putIfAbsent(zone, loadBalancer);
             if (prev != null) {
             	loadBalancer = prev;
@@ -0,0 +1,153 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.loadbalancer.reactive;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.ServerStats;
+
+/**
+ * Configuration and budget of hedged requests for a client, see {@link LoadBalancerCommand}. If the first attempt
+ * of a request has not responded within the hedge delay, a second attempt is sent to another server and the first
+ * response of either attempt is used.
+ * <p>
+ * The delay is either fixed, or a percentile of the response time of the server of the first attempt, such that
+ * only the slowest requests are hedged. The percentile falls back to the fixed delay while the server has no
+ * response time data. The number of hedged requests is limited by a {@link RequestBudget} shared by all requests
+ * of the client. Requests that their retry handler would not retry on another server after a read timeout, like
+ * a POST of {@code LoadBalancingHttpClient}, are not hedged. The configuration of a client is
+ * <pre>{@code
+ *
+ * <clientName>.<nameSpace>.EnableHedging=true
+ * <clientName>.<nameSpace>.HedgeDelay=100
+ * <clientName>.<nameSpace>.HedgeDelayPercentile=95
+ * <clientName>.<nameSpace>.MaxHedgePercent=10
+ *
+ * }</pre>
+ */
+public class HedgingPolicy {
+
+    private final int delayMillis;
+    private final Double delayPercentile;
+    private final RequestBudget budget;
+
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong hedgesOverBudget = new AtomicLong();
+
+    /**
+     * @param delayMillis fixed delay of the hedged attempt
+     * @param delayPercentile percentile of the server's response time to use as delay, or null for a fixed delay
+     * @param maxHedgePercent maximal percentage of requests that are hedged
+     */
+    public HedgingPolicy(int delayMillis, Double delayPercentile, double maxHedgePercent) {
+        this.delayMillis = delayMillis;
+        this.delayPercentile = delayPercentile;
+        this.budget = new RequestBudget(maxHedgePercent);
+    }
+
+    /**
+     * Create the policy from the client configuration.
+     *
+     * @return null if hedging is not enabled for the client
+     */
+    public static HedgingPolicy create(IClientConfig clientConfig) {
+        if (!clientConfig.getPropertyAsBoolean(CommonClientConfigKey.EnableHedging, DefaultClientConfigImpl.DEFAULT_ENABLE_HEDGING)) {
+            return null;
+        }
+        return new HedgingPolicy(
+                clientConfig.getPropertyAsInteger(CommonClientConfigKey.HedgeDelay, DefaultClientConfigImpl.DEFAULT_HEDGE_DELAY),
+                clientConfig.get(CommonClientConfigKey.HedgeDelayPercentile),
+                clientConfig.get(CommonClientConfigKey.MaxHedgePercent, DefaultClientConfigImpl.DEFAULT_MAX_HEDGE_PERCENT));
+    }
+
+    /**
+     * Get the time after which the request to a server is hedged
+     */
+    public long getDelayMillis(ServerStats stats) {
+        if (delayPercentile == null || stats == null || stats.getResponseTimePercentileNumValues() == 0) {
+            return delayMillis;
+        }
+        double delay = getResponseTimePercentile(stats, delayPercentile);
+        return delay > 0 ? (long) Math.ceil(delay) : delayMillis;
+    }
+
+    /**
+     * Get the smallest percentile tracked by {@link ServerStats} that is at least the requested one
+     */
+    static double getResponseTimePercentile(ServerStats stats, double percentile) {
+        if (percentile <= 10) {
+            return stats.getResponseTime10thPercentile();
+        } else if (percentile <= 25) {
+            return stats.getResponseTime25thPercentile();
+        } else if (percentile <= 50) {
+            return stats.getResponseTime50thPercentile();
+        } else if (percentile <= 75) {
+            return stats.getResponseTime75thPercentile();
+        } else if (percentile <= 90) {
+            return stats.getResponseTime90thPercentile();
+        } else if (percentile <= 95) {
+            return stats.getResponseTime95thPercentile();
+        } else if (percentile <= 98) {
+            return stats.getResponseTime98thPercentile();
+        } else if (percentile <= 99) {
+            return stats.getResponseTime99thPercentile();
+        }
+        return stats.getResponseTime99point5thPercentile();
+    }
+
+    public RequestBudget getBudget() {
+        return budget;
+    }
+
+    void noteHedge() {
+        hedges.incrementAndGet();
+    }
+
+    void noteHedgeWon() {
+        hedgesWon.incrementAndGet();
+    }
+
+    void noteHedgeOverBudget() {
+        hedgesOverBudget.incrementAndGet();
+    }
+
+    /**
+     * Number of hedged attempts that were sent
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Number of hedged attempts that responded before the first attempt
+     */
+    public long getHedgeWonCount() {
+        return hedgesWon.get();
+    }
+
+    /**
+     * Number of hedged attempts that were not sent because the budget was exhausted
+     */
+    public long getHedgeOverBudgetCount() {
+        return hedgesOverBudget.get();
+    }
+}
@@ -17,11 +17,13 @@
  */
 package com.netflix.loadbalancer.reactive;
 
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,9 +31,13 @@ import org.slf4j.LoggerFactory;
 import rx.Observable;
 import rx.Observable.OnSubscribe;
 import rx.Observer;
+import rx.Scheduler;
 import rx.Subscriber;
+import rx.functions.Action0;
 import rx.functions.Func1;
 import rx.functions.Func2;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.CompositeSubscription;
 
 import com.netflix.client.ClientException;
 import com.netflix.client.RetryHandler;
@@ -51,7 +57,8 @@ import com.netflix.servo.monitor.Stopwatch;
  * <li>Choose a server</li>
  * <li>Invoke the {@link #call(com.netflix.loadbalancer.Server)} method</li>
  * <li>Invoke the {@link ExecutionListener} if any</li>
- * <li>Retry on exception, controlled by {@link com.netflix.client.RetryHandler}</li>
+ * <li>Retry on exception, controlled by {@link com.netflix.client.RetryHandler} and limited by the client's {@link RetryBudget}</li>
+ * <li>Hedge slow requests with a second attempt on another server, controlled by {@link HedgingPolicy}</li>
  * <li>Provide feedback to the {@link com.netflix.loadbalancer.LoadBalancerStats}</li>
  * </ul>
  *
@@ -71,6 +78,8 @@ public class LoadBalancerCommand<T> {
         private ExecutionContextListenerInvoker invoker;
         private URI                 loadBalancerURI;
         private Server              server;
+        private HedgingPolicy       hedgingPolicy;
+        private RetryBudget         retryBudget;
         
         private Builder() {}
     
@@ -132,6 +141,22 @@ public class LoadBalancerCommand<T> {
             return this;
         }
         
+        /**
+         * Hedge requests with the given policy, instead of the policy of the {@link LoadBalancerContext}
+         */
+        public Builder<T> withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        /**
+         * Limit retries with the given budget, instead of the budget of the {@link LoadBalancerContext}
+         */
+        public Builder<T> withRetryBudget(RetryBudget retryBudget) {
+            this.retryBudget = retryBudget;
+            return this;
+        }
+
         public LoadBalancerCommand<T> build() {
             if (loadBalancerContext == null && loadBalancer == null) {
                 throw new IllegalArgumentException("Either LoadBalancer or LoadBalancerContext needs to be set");
@@ -160,6 +185,8 @@ public class LoadBalancerCommand<T> {
     private final RetryHandler retryHandler;
     private volatile ExecutionInfo executionInfo;
     private final Server server;
+    private final HedgingPolicy hedgingPolicy;
+    private final RetryBudget retryBudget;
 
     private final ExecutionContextListenerInvoker<?, T> listenerInvoker;
     
@@ -170,6 +197,8 @@ public class LoadBalancerCommand<T> {
         this.retryHandler        = builder.retryHandler != null ? builder.retryHandler : loadBalancerContext.getRetryHandler();
         this.listenerInvoker     = builder.invoker;
         this.server              = builder.server;
+        this.hedgingPolicy       = builder.hedgingPolicy != null ? builder.hedgingPolicy : loadBalancerContext.getHedgingPolicy();
+        this.retryBudget         = builder.retryBudget != null ? builder.retryBudget : loadBalancerContext.getRetryBudget();
     }
     
     /**
@@ -195,6 +224,8 @@ public class LoadBalancerCommand<T> {
         Server      server;
         int         serverAttemptCount = 0;
         int         attemptCount = 0;
+        // the last error whose retry was denied by the retry budget
+        Throwable   retryDeniedError;
         
         public void setServer(Server server) {
             this.server = server;
@@ -229,7 +260,8 @@ public class LoadBalancerCommand<T> {
 
     }
     
-    private Func2<Integer, Throwable, Boolean> retryPolicy(final int maxRetrys, final boolean same) {
+    private Func2<Integer, Throwable, Boolean> retryPolicy(final int maxRetrys, final boolean same,
+            final ExecutionInfoContext context) {
         return new Func2<Integer, Throwable, Boolean>() {
             @Override
             public Boolean call(Integer tryCount, Throwable e) {
@@ -237,25 +269,295 @@ public class LoadBalancerCommand<T> {
                     return false;
                 }
 
+                if (e == context.retryDeniedError) {
+                    // the budget denied the retry on the same server, which is not charged again on the next server
+                    return false;
+                }
+
                 if (tryCount > maxRetrys) {
                     return false;
                 }
                 
+                Throwable cause = e;
                 if (e.getCause() != null && e instanceof RuntimeException) {
-                    e = e.getCause();
+                    cause = e.getCause();
                 }
                 
-                return retryHandler.isRetriableException(e, same);
+                if (!retryHandler.isRetriableException(cause, same)) {
+                    return false;
+                }
+                
+                if (retryBudget != null && !retryBudget.tryRetry()) {
+                    logger.debug("Retry budget of {} exhausted, not retrying on error {}", loadBalancerContext.getClientName(), cause);
+                    context.retryDeniedError = e;
+                    return false;
+                }
+                return true;
             }
         };
     }
 
+    /**
+     * Execute a single attempt of the operation on a server and record the outcome in the server's stats
+     */
+    private Observable<T> executeOnServer(final Server server, final ServerStats stats, final ServerOperation<T> operation,
+            final ExecutionInfoContext context) {
+        context.incAttemptCount();
+        loadBalancerContext.noteOpenConnection(stats);
+        
+        if (listenerInvoker != null) {
+            try {
+                listenerInvoker.onStartWithServer(context.toExecutionInfo());
+            } catch (AbortExecutionException e) {
+                return Observable.error(e);
+            }
+        }
+        
+        final Stopwatch tracer = loadBalancerContext.getExecuteTracer().start();
+        // set once the outcome of the attempt is recorded, so that it is recorded only once
+        final AtomicBoolean recorded = new AtomicBoolean();
+        
+        return operation.call(server).doOnEach(new Observer<T>() {
+            private T entity;
+            @Override
+            public void onCompleted() {
+                recordStats(tracer, stats, entity, null);
+                if (retryBudget != null) {
+                    retryBudget.onSuccess();
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                recordStats(tracer, stats, null, e);
+                logger.debug("Got error {} when executed on server {}", e, server);
+                if (listenerInvoker != null) {
+                    listenerInvoker.onExceptionWithServer(e, context.toExecutionInfo());
+                }
+            }
+
+            @Override
+            public void onNext(T entity) {
+                this.entity = entity;
+                if (listenerInvoker != null) {
+                    listenerInvoker.onExecutionSuccess(entity, context.toExecutionInfo());
+                }
+            }                            
+            
+            private void recordStats(Stopwatch tracer, ServerStats stats, Object entity, Throwable exception) {
+                if (recorded.compareAndSet(false, true)) {
+                    tracer.stop();
+                    loadBalancerContext.noteRequestCompletion(stats, entity, exception, tracer.getDuration(TimeUnit.MILLISECONDS), retryHandler);
+                }
+            }
+        }).doOnUnsubscribe(new Action0() {
+            @Override
+            public void call() {
+                // the attempt was given up before it completed, e.g. it lost against a hedged attempt
+                if (recorded.compareAndSet(false, true)) {
+                    tracer.stop();
+                    loadBalancerContext.noteRequestCancelled(stats);
+                }
+            }
+        });
+    }
+
+    /**
+     * A hedged request may be processed by both servers, like a request retried after a read timeout
+     */
+    private boolean isHedgeable() {
+        return retryHandler.isRetriableException(new SocketTimeoutException("hedged"), false);
+    }
+
+    private Observable<T> hedge(final Observable<T> primary, final ServerOperation<T> operation, final ExecutionInfoContext context) {
+        return Observable.create(new OnSubscribe<T>() {
+            @Override
+            public void call(Subscriber<? super T> subscriber) {
+                hedgingPolicy.getBudget().onRequest();
+                new HedgedExecution(subscriber, operation, context).start(primary);
+            }
+        });
+    }
+
+    /**
+     * Races the primary execution, including its retries, against a hedged attempt on another server that is
+     * started after the hedge delay. The first attempt to emit wins and the other one is unsubscribed. An error
+     * of the primary execution is emitted only once the hedged attempt has failed too, or was never started.
+     */
+    private class HedgedExecution {
+        private static final int NONE = 0;
+        private static final int PRIMARY = 1;
+        private static final int HEDGE = 2;
+
+        private final Subscriber<? super T> subscriber;
+        private final ServerOperation<T> operation;
+        private final ExecutionInfoContext context;
+        private final CompositeSubscription subscriptions = new CompositeSubscription();
+        private final Scheduler.Worker worker = Schedulers.computation().createWorker();
+
+        // guarded by this
+        private int winner = NONE;
+        private Throwable primaryError;
+        private boolean hedgeRunning;
+        private Leg primaryLeg;
+        private Leg hedgeLeg;
+
+        HedgedExecution(Subscriber<? super T> subscriber, ServerOperation<T> operation, ExecutionInfoContext context) {
+            this.subscriber = subscriber;
+            this.operation = operation;
+            this.context = context;
+        }
+
+        void start(Observable<T> primary) {
+            subscriptions.add(worker);
+            subscriber.add(subscriptions);
+            Leg leg = new Leg(PRIMARY);
+            synchronized (this) {
+                primaryLeg = leg;
+            }
+            subscriptions.add(leg);
+            primary.unsafeSubscribe(leg);
+
+            Server primaryServer = context.getServer();
+            long delay = hedgingPolicy.getDelayMillis(primaryServer == null ? null : loadBalancerContext.getServerStats(primaryServer));
+            worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    startHedge();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void startHedge() {
+            Server hedgeServer;
+            synchronized (this) {
+                if (winner != NONE || primaryError != null) {
+                    return;
+                }
+                hedgeServer = chooseHedgeServer(context.getServer());
+                if (hedgeServer == null) {
+                    return;
+                }
+                if (!hedgingPolicy.getBudget().tryAcquire()) {
+                    hedgingPolicy.noteHedgeOverBudget();
+                    return;
+                }
+                hedgeRunning = true;
+                hedgeLeg = new Leg(HEDGE);
+            }
+            hedgingPolicy.noteHedge();
+            logger.debug("Hedging request on server {} with server {}", context.getServer(), hedgeServer);
+            ExecutionInfoContext hedgeContext = new ExecutionInfoContext();
+            hedgeContext.setServer(hedgeServer);
+            subscriptions.add(hedgeLeg);
+            executeOnServer(hedgeServer, loadBalancerContext.getServerStats(hedgeServer), operation, hedgeContext)
+                    .unsafeSubscribe(hedgeLeg);
+        }
+
+        private Server chooseHedgeServer(Server primaryServer) {
+            for (int i = 0; i < 3; i++) {
+                try {
+                    Server server = loadBalancerContext.getServerFromLoadBalancer(loadBalancerURI, loadBalancerKey);
+                    if (server != null && !server.equals(primaryServer)) {
+                        return server;
+                    }
+                } catch (Exception e) {
+                    logger.debug("Unable to choose a server to hedge the request", e);
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return true if the leg has won the race
+         */
+        private boolean claim(int leg) {
+            Leg loser;
+            synchronized (this) {
+                if (winner != NONE) {
+                    return winner == leg;
+                }
+                winner = leg;
+                loser = leg == PRIMARY ? hedgeLeg : primaryLeg;
+            }
+            worker.unsubscribe();
+            if (loser != null) {
+                loser.unsubscribe();
+            }
+            if (leg == HEDGE) {
+                hedgingPolicy.noteHedgeWon();
+            }
+            return true;
+        }
+
+        private void onError(int leg, Throwable e) {
+            Throwable error = null;
+            synchronized (this) {
+                if (winner == leg) {
+                    error = e;
+                } else if (winner == NONE) {
+                    if (leg == PRIMARY) {
+                        primaryError = e;
+                        if (!hedgeRunning) {
+                            winner = PRIMARY;
+                            error = e;
+                        }
+                    } else {
+                        hedgeRunning = false;
+                        if (primaryError != null) {
+                            winner = PRIMARY;
+                            error = primaryError;
+                        }
+                    }
+                }
+            }
+            if (error != null) {
+                worker.unsubscribe();
+                subscriber.onError(error);
+            }
+        }
+
+        private class Leg extends Subscriber<T> {
+            private final int leg;
+
+            Leg(int leg) {
+                this.leg = leg;
+            }
+
+            @Override
+            public void onNext(T t) {
+                if (claim(leg)) {
+                    subscriber.onNext(t);
+                }
+            }
+
+            @Override
+            public void onCompleted() {
+                if (claim(leg)) {
+                    subscriber.onCompleted();
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                HedgedExecution.this.onError(leg, e);
+            }
+        }
+    }
+
     /**
      * Create an {@link Observable} that once subscribed execute network call asynchronously with a server chosen by load balancer.
      * If there are any errors that are indicated as retriable by the {@link RetryHandler}, they will be consumed internally by the
      * function and will not be observed by the {@link Observer} subscribed to the returned {@link Observable}. If number of retries has
      * exceeds the maximal allowed, a final error will be emitted by the returned {@link Observable}. Otherwise, the first successful
      * result during execution and retries will be emitted.
+     * <p>
+     * If a {@link HedgingPolicy} is configured and no server is pinned with {@link Builder#withServer(Server)}, a
+     * second attempt is made on another server when no response has arrived within the hedge delay, budget
+     * permitting. The first response of either attempt is emitted and the other attempt is unsubscribed.
+     * Only requests that the {@link RetryHandler} would retry on the next server after a read timeout are
+     * hedged, as the first attempt may have been processed by its server.
      */
     public Observable<T> submit(final ServerOperation<T> operation) {
         final ExecutionInfoContext context = new ExecutionInfoContext();
@@ -286,61 +588,23 @@ public class LoadBalancerCommand<T> {
                                 .just(server)
                                 .concatMap(new Func1<Server, Observable<T>>() {
                                     @Override
-                                    public Observable<T> call(final Server server) {
-                                        context.incAttemptCount();
-                                        loadBalancerContext.noteOpenConnection(stats);
-                                        
-                                        if (listenerInvoker != null) {
-                                            try {
-                                                listenerInvoker.onStartWithServer(context.toExecutionInfo());
-                                            } catch (AbortExecutionException e) {
-                                                return Observable.error(e);
-                                            }
-                                        }
-                                        
-                                        final Stopwatch tracer = loadBalancerContext.getExecuteTracer().start();
-                                        
-                                        return operation.call(server).doOnEach(new Observer<T>() {
-                                            private T entity;
-                                            @Override
-                                            public void onCompleted() {
-                                                recordStats(tracer, stats, entity, null);
-                                                // TODO: What to do if onNext or onError are never called?
-                                            }
-
-                                            @Override
-                                            public void onError(Throwable e) {
-                                                recordStats(tracer, stats, null, e);
-                                                logger.debug("Got error {} when executed on server {}", e, server);
-                                                if (listenerInvoker != null) {
-                                                    listenerInvoker.onExceptionWithServer(e, context.toExecutionInfo());
-                                                }
-                                            }
-
-                                            @Override
-                                            public void onNext(T entity) {
-                                                this.entity = entity;
-                                                if (listenerInvoker != null) {
-                                                    listenerInvoker.onExecutionSuccess(entity, context.toExecutionInfo());
-                                                }
-                                            }                            
-                                            
-                                            private void recordStats(Stopwatch tracer, ServerStats stats, Object entity, Throwable exception) {
-                                                tracer.stop();
-                                                loadBalancerContext.noteRequestCompletion(stats, entity, exception, tracer.getDuration(TimeUnit.MILLISECONDS), retryHandler);
-                                            }
-                                        });
+                                    public Observable<T> call(Server server) {
+                                        return executeOnServer(server, stats, operation, context);
                                     }
                                 });
                         
                         if (maxRetrysSame > 0) 
-                            o = o.retry(retryPolicy(maxRetrysSame, true));
+                            o = o.retry(retryPolicy(maxRetrysSame, true, context));
                         return o;
                     }
                 });
             
         if (maxRetrysNext > 0 && server == null) 
-            o = o.retry(retryPolicy(maxRetrysNext, false));
+            o = o.retry(retryPolicy(maxRetrysNext, false, context));
+
+        if (hedgingPolicy != null && server == null && isHedgeable()) {
+            o = hedge(o, operation, context);
+        }
         
         return o.onErrorResumeNext(new Func1<Throwable, Observable<T>>() {
             @Override
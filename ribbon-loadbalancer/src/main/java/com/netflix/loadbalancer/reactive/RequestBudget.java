@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.loadbalancer.reactive;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A budget for additional requests, like hedged requests, that is proportional to the number of requests.
+ * Every request deposits {@code percent / 100} of a token, and every additional request takes a whole token,
+ * so that additional requests are at most {@code percent} percent of all requests. The balance is limited, so
+ * that unused budget of a quiet period cannot be spent all at once on a burst of additional requests.
+ * Unless given an initial balance, the budget starts empty.
+ */
+public class RequestBudget {
+
+    public static final int DEFAULT_MAX_BALANCE = 10;
+
+    // the balance is kept in thousandths of a token
+    private static final long TOKEN = 1000;
+
+    private final double percent;
+    private final long deposit;
+    private final long maxBalance;
+    private final AtomicLong balance = new AtomicLong();
+
+    public RequestBudget(double percent) {
+        this(percent, DEFAULT_MAX_BALANCE);
+    }
+
+    /**
+     * @param percent maximal percentage of additional requests
+     * @param maxBalance maximal number of tokens that can be saved up
+     */
+    public RequestBudget(double percent, int maxBalance) {
+        this(percent, maxBalance, 0);
+    }
+
+    /**
+     * @param percent maximal percentage of additional requests
+     * @param maxBalance maximal number of tokens that can be saved up
+     * @param initialBalance number of tokens available before any request is made
+     */
+    public RequestBudget(double percent, int maxBalance, int initialBalance) {
+        if (percent < 0) {
+            throw new IllegalArgumentException("percent must not be negative");
+        }
+        this.percent = percent;
+        this.deposit = Math.round(percent / 100 * TOKEN);
+        this.maxBalance = maxBalance * TOKEN;
+        this.balance.set(Math.min(initialBalance, maxBalance) * TOKEN);
+    }
+
+    /**
+     * Deposit the share of a request into the budget
+     */
+    public void onRequest() {
+        while (true) {
+            long current = balance.get();
+            if (current >= maxBalance) {
+                return;
+            }
+            if (balance.compareAndSet(current, Math.min(maxBalance, current + deposit))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take a token for an additional request.
+     *
+     * @return false if the budget is exhausted, in which case the additional request should not be made
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Number of available tokens
+     */
+    public double getBalance() {
+        return (double) balance.get() / TOKEN;
+    }
+
+    public double getPercent() {
+        return percent;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.loadbalancer.reactive;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.annotations.Monitor;
+
+/**
+ * A client wide limit on retries, shared by all requests of the client. Every successful attempt earns
+ * {@code percent / 100} of a retry, and every retry, on the same or on the next server, spends one.
+ * When the requests of a client keep failing the budget runs out, so that retries stop multiplying
+ * the load on the servers that are already failing, while requests themselves are still made.
+ * <p>
+ * The number of retries that can be saved up is limited, so that the retries are a ratio of the recent
+ * successful requests rather than of all requests since the client was created. A new client starts with
+ * a full budget.
+ * <p>
+ * The budget is enabled with the following configuration:
+ *
+ * <pre>{@code
+ * <clientName>.<nameSpace>.EnableRetryBudget=true
+ * <clientName>.<nameSpace>.RetryBudgetPercent=20
+ * <clientName>.<nameSpace>.RetryBudgetMaxRetries=10
+ *
+ * }</pre>
+ */
+public class RetryBudget {
+
+    private static final String PREFIX = "RetryBudget_";
+
+    private final RequestBudget budget;
+
+    private final AtomicLong retriesGranted = new AtomicLong();
+    private final AtomicLong retriesDenied = new AtomicLong();
+
+    /**
+     * @param percent maximal ratio of retries to successful attempts, in percent
+     * @param maxRetries maximal number of retries that can be saved up
+     */
+    public RetryBudget(double percent, int maxRetries) {
+        this.budget = new RequestBudget(percent, maxRetries, maxRetries);
+    }
+
+    /**
+     * Create the budget from the client configuration.
+     *
+     * @return null if retries are not limited for the client
+     */
+    public static RetryBudget create(IClientConfig clientConfig) {
+        if (!clientConfig.getPropertyAsBoolean(CommonClientConfigKey.EnableRetryBudget, DefaultClientConfigImpl.DEFAULT_ENABLE_RETRY_BUDGET)) {
+            return null;
+        }
+        return new RetryBudget(
+                clientConfig.get(CommonClientConfigKey.RetryBudgetPercent, DefaultClientConfigImpl.DEFAULT_RETRY_BUDGET_PERCENT),
+                clientConfig.getPropertyAsInteger(CommonClientConfigKey.RetryBudgetMaxRetries, DefaultClientConfigImpl.DEFAULT_RETRY_BUDGET_MAX_RETRIES));
+    }
+
+    /**
+     * Deposit the share of a successful attempt into the budget
+     */
+    public void onSuccess() {
+        budget.onRequest();
+    }
+
+    /**
+     * Take a retry from the budget.
+     *
+     * @return false if the budget is exhausted, in which case the request should not be retried
+     */
+    public boolean tryRetry() {
+        if (budget.tryAcquire()) {
+            retriesGranted.incrementAndGet();
+            return true;
+        }
+        retriesDenied.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Number of retries that can currently be made
+     */
+    @Monitor(name = PREFIX + "Balance", type = DataSourceType.GAUGE)
+    public double getBalance() {
+        return budget.getBalance();
+    }
+
+    @Monitor(name = PREFIX + "RetriesGranted", type = DataSourceType.COUNTER)
+    public long getRetriesGranted() {
+        return retriesGranted.get();
+    }
+
+    @Monitor(name = PREFIX + "RetriesDenied", type = DataSourceType.COUNTER)
+    public long getRetriesDenied() {
+        return retriesDenied.get();
+    }
+}
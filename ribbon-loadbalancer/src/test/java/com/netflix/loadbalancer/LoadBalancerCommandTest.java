@@ -1,8 +1,11 @@
 package com.netflix.loadbalancer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
@@ -10,10 +13,14 @@ import org.junit.Test;
 import rx.Observable;
 import rx.Observable.OnSubscribe;
 import rx.Subscriber;
+import rx.functions.Func1;
 
 import com.google.common.collect.Lists;
+import com.netflix.client.RequestSpecificRetryHandler;
 import com.netflix.client.RetryHandler;
+import com.netflix.loadbalancer.reactive.HedgingPolicy;
 import com.netflix.loadbalancer.reactive.LoadBalancerCommand;
+import com.netflix.loadbalancer.reactive.RetryBudget;
 import com.netflix.loadbalancer.reactive.ServerOperation;
 
 public class LoadBalancerCommandTest {
@@ -124,4 +131,201 @@ public class LoadBalancerCommandTest {
         assertEquals("3", result); // server2 is picked first
         assertEquals(1, loadBalancer.getLoadBalancerStats().getSingleServerStat(server3).getTotalRequestsCount());
     }
+
+    @Test
+    public void testRetryBudget() {
+        BaseLoadBalancer loadBalancer = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(list);
+        RetryHandler handler = new RetryHandler() {
+            @Override
+            public boolean isRetriableException(Throwable e, boolean sameServer) {
+                return (e instanceof IllegalArgumentException);
+            }
+            @Override
+            public boolean isCircuitTrippingException(Throwable e) {
+                return false;
+            }
+            @Override
+            public int getMaxRetriesOnSameServer() {
+                return 3;
+            }
+            @Override
+            public int getMaxRetriesOnNextServer() {
+                return 0;
+            }
+        };
+        // allows a single retry, which is not earned back by failing requests
+        RetryBudget retryBudget = new RetryBudget(50, 1);
+        LoadBalancerCommand<String> command = LoadBalancerCommand.<String>builder()
+                .withLoadBalancer(loadBalancer)
+                .withRetryHandler(handler)
+                .withRetryBudget(retryBudget)
+                .withServer(server1)
+                .build();
+
+        ServerOperation<String> operation = new ServerOperation<String>() {
+            @Override
+            public Observable<String> call(final Server server) {
+                return Observable.error(new IllegalArgumentException());
+            }
+        };
+
+        try {
+            command.submit(operation).toBlocking().single();
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) { // NOPMD
+        }
+        assertEquals(2, loadBalancer.getLoadBalancerStats().getSingleServerStat(server1).getTotalRequestsCount());
+        assertEquals(1, retryBudget.getRetriesGranted());
+        assertEquals(1, retryBudget.getRetriesDenied());
+
+        // successful requests earn retries again
+        command.submit(new ServerOperation<String>() {
+            @Override
+            public Observable<String> call(Server server) {
+                return Observable.just(server.getHost());
+            }
+        }).toBlocking().single();
+        assertEquals(0.5, retryBudget.getBalance(), 0.001);
+    }
+
+    @Test
+    public void testRetryBudgetDeniesSameServerRetryOnce() {
+        BaseLoadBalancer loadBalancer = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(list);
+        RetryHandler handler = new RetryHandler() {
+            @Override
+            public boolean isRetriableException(Throwable e, boolean sameServer) {
+                return (e instanceof IllegalArgumentException);
+            }
+            @Override
+            public boolean isCircuitTrippingException(Throwable e) {
+                return false;
+            }
+            @Override
+            public int getMaxRetriesOnSameServer() {
+                return 2;
+            }
+            @Override
+            public int getMaxRetriesOnNextServer() {
+                return 2;
+            }
+        };
+        RetryBudget retryBudget = new RetryBudget(50, 1);
+        LoadBalancerCommand<String> command = LoadBalancerCommand.<String>builder()
+                .withLoadBalancer(loadBalancer)
+                .withRetryHandler(handler)
+                .withRetryBudget(retryBudget)
+                .build();
+        final AtomicInteger attempts = new AtomicInteger();
+        ServerOperation<String> operation = new ServerOperation<String>() {
+            @Override
+            public Observable<String> call(final Server server) {
+                attempts.incrementAndGet();
+                return Observable.error(new IllegalArgumentException());
+            }
+        };
+
+        try {
+            command.submit(operation).toBlocking().single();
+            fail("Exception expected");
+        } catch (IllegalArgumentException e) { // NOPMD
+        }
+        // the second retry on the same server is denied, and the request is not retried on the next server
+        assertEquals(2, attempts.get());
+        assertEquals(1, retryBudget.getRetriesGranted());
+        assertEquals(1, retryBudget.getRetriesDenied());
+    }
+
+    @Test
+    public void testHedgeOnSlowServer() {
+        BaseLoadBalancer loadBalancer = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(list);
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(50, null, 100);
+        LoadBalancerCommand<String> command = LoadBalancerCommand.<String>builder()
+                .withLoadBalancer(loadBalancer)
+                .withHedgingPolicy(hedgingPolicy)
+                .withRetryHandler(new RequestSpecificRetryHandler(true, true))
+                .build();
+
+        String result = command.submit(slowFirstAttempt()).toBlocking().single();
+        assertEquals("3", result); // server2 is picked first and is slow
+        assertEquals(1, hedgingPolicy.getHedgeCount());
+        assertEquals(1, hedgingPolicy.getHedgeWonCount());
+        LoadBalancerStats stats = loadBalancer.getLoadBalancerStats();
+        assertEquals(0, stats.getSingleServerStat(server2).getActiveRequestsCount());
+        assertEquals(0, stats.getSingleServerStat(server3).getActiveRequestsCount());
+        assertEquals(1, stats.getSingleServerStat(server3).getTotalRequestsCount());
+    }
+
+    @Test
+    public void testNoHedgeOverBudget() {
+        BaseLoadBalancer loadBalancer = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(list);
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(50, null, 0);
+        LoadBalancerCommand<String> command = LoadBalancerCommand.<String>builder()
+                .withLoadBalancer(loadBalancer)
+                .withHedgingPolicy(hedgingPolicy)
+                .withRetryHandler(new RequestSpecificRetryHandler(true, true))
+                .build();
+
+        String result = command.submit(slowFirstAttempt()).toBlocking().single();
+        assertEquals("2", result);
+        assertEquals(0, hedgingPolicy.getHedgeCount());
+        assertEquals(1, hedgingPolicy.getHedgeOverBudgetCount());
+        assertEquals(0, loadBalancer.getLoadBalancerStats().getSingleServerStat(server2).getActiveRequestsCount());
+    }
+
+    @Test
+    public void testNoHedgeOfNonRetriableRequest() {
+        BaseLoadBalancer loadBalancer = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(list);
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(50, null, 100);
+        hedgingPolicy.getBudget().onRequest();
+        // like a POST, which is only retried on connection errors
+        LoadBalancerCommand<String> command = LoadBalancerCommand.<String>builder()
+                .withLoadBalancer(loadBalancer)
+                .withHedgingPolicy(hedgingPolicy)
+                .withRetryHandler(new RequestSpecificRetryHandler(true, false))
+                .build();
+
+        String result = command.submit(slowFirstAttempt()).toBlocking().single();
+        assertEquals("2", result);
+        assertEquals(0, hedgingPolicy.getHedgeCount());
+        assertEquals(0, hedgingPolicy.getHedgeOverBudgetCount());
+    }
+
+    @Test
+    public void testHedgeBudgetIsDepositedOnSubscription() {
+        BaseLoadBalancer loadBalancer = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(list);
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(50, null, 10);
+        LoadBalancerCommand<String> command = LoadBalancerCommand.<String>builder()
+                .withLoadBalancer(loadBalancer)
+                .withHedgingPolicy(hedgingPolicy)
+                .withRetryHandler(new RequestSpecificRetryHandler(true, true))
+                .build();
+
+        Observable<String> request = command.submit(new ServerOperation<String>() {
+            @Override
+            public Observable<String> call(Server server) {
+                return Observable.just(server.getHost());
+            }
+        });
+        assertEquals(0, hedgingPolicy.getBudget().getBalance(), 0.0001);
+        request.toBlocking().single();
+        assertEquals(0.1, hedgingPolicy.getBudget().getBalance(), 0.0001);
+    }
+
+    private static ServerOperation<String> slowFirstAttempt() {
+        return new ServerOperation<String>() {
+            AtomicInteger count = new AtomicInteger();
+            @Override
+            public Observable<String> call(final Server server) {
+                if (count.incrementAndGet() > 1) {
+                    return Observable.just(server.getHost());
+                }
+                return Observable.timer(300, TimeUnit.MILLISECONDS).map(new Func1<Long, String>() {
+                    @Override
+                    public String call(Long tick) {
+                        return server.getHost();
+                    }
+                });
+            }
+        };
+    }
 }
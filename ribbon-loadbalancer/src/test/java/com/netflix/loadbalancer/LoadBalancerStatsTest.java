@@ -0,0 +1,112 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.netflix.config.ConfigurationManager;
+
+public class LoadBalancerStatsTest {
+
+    @BeforeClass
+    public static void init() {
+        ConfigurationManager.getConfigInstance().setProperty("niws.loadbalancer.attached.serverStats.attachToServer", "true");
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        ConfigurationManager.getConfigInstance().clearProperty("niws.loadbalancer.attached.serverStats.attachToServer");
+    }
+
+    @Test
+    public void testStatsAttachedToServer() {
+        LoadBalancerStats lbStats = new LoadBalancerStats("attached");
+        Server server = new Server("server1", 80);
+        ServerStats stats = lbStats.getSingleServerStat(server);
+        assertSame(stats, server.attachedStats);
+        assertSame(stats, lbStats.getSingleServerStat(server));
+        assertSame(stats, lbStats.getServerStats().get(server));
+
+        // an equal server instance shares the stats
+        Server sameServer = new Server("server1", 80);
+        assertSame(stats, lbStats.getSingleServerStat(sameServer));
+
+        // stats of another LoadBalancerStats are not used
+        LoadBalancerStats other = new LoadBalancerStats("attached");
+        ServerStats otherStats = other.getSingleServerStat(server);
+        assertNotSame(stats, otherStats);
+        assertSame(stats, lbStats.getSingleServerStat(server));
+    }
+
+    @Test
+    public void testRetainServers() {
+        LoadBalancerStats lbStats = new LoadBalancerStats("attached");
+        Server server1 = new Server("server1", 80);
+        Server server2 = new Server("server2", 80);
+        lbStats.updateServerList(Arrays.asList(server1, server2));
+        lbStats.incrementNumRequests(server1);
+        lbStats.incrementNumRequests(server2);
+
+        lbStats.retainServers(Collections.singletonList(server1));
+        assertEquals(1, lbStats.getServerStats().size());
+        assertNull(server2.attachedStats);
+        assertEquals(1, lbStats.getSingleServerStat(server1).getTotalRequestsCount());
+        // a removed server starts over if it is used again
+        assertEquals(0, lbStats.getSingleServerStat(server2).getTotalRequestsCount());
+    }
+
+    @Test
+    public void testBaseLoadBalancerRetainsServers() {
+        BaseLoadBalancer lb = new BaseLoadBalancer("attached", new RoundRobinRule(), new LoadBalancerStats("attached"));
+        Server server1 = new Server("server1", 80);
+        Server server2 = new Server("server2", 80);
+        lb.setServersList(Arrays.asList(server1, server2));
+        LoadBalancerStats lbStats = lb.getLoadBalancerStats();
+        lbStats.incrementNumRequests(server1);
+        lbStats.incrementNumRequests(server2);
+
+        lb.setServersList(Collections.singletonList(server1));
+        assertEquals(1, lbStats.getServerStats().size());
+        assertNull(server2.attachedStats);
+    }
+
+    @Test
+    public void testZoneAwareLoadBalancerRetainsServersOfAllZones() {
+        ZoneAwareLoadBalancer<Server> lb = new ZoneAwareLoadBalancer<Server>();
+        lb.setLoadBalancerStats(new LoadBalancerStats("attached"));
+        Server server1 = new Server("server1", 80);
+        server1.setZone("zone1");
+        Server server2 = new Server("server2", 80);
+        server2.setZone("zone2");
+        Server server3 = new Server("server3", 80);
+        server3.setZone("zone2");
+        lb.setServersList(Arrays.asList(server1, server2, server3));
+        LoadBalancerStats lbStats = lb.getLoadBalancerStats();
+        lbStats.incrementActiveRequestsCount(server1);
+        lbStats.incrementActiveRequestsCount(server2);
+
+        // each zone keeps the statistics of the servers of the other zones
+        lb.setServersList(Arrays.asList(server1, server2));
+        assertEquals(2, lbStats.getServerStats().size());
+        assertEquals(1, lbStats.getSingleServerStat(server1).getActiveRequestsCount());
+        assertEquals(1, lbStats.getSingleServerStat(server2).getActiveRequestsCount());
+        assertNotNull(server1.attachedStats);
+        assertNull(server3.attachedStats);
+        lb.shutdown();
+    }
+
+    @Test
+    public void testCachedByDefault() {
+        LoadBalancerStats lbStats = new LoadBalancerStats("cached");
+        Server server = new Server("server1", 80);
+        assertSame(lbStats.getSingleServerStat(server), lbStats.getSingleServerStat(server));
+        assertNull(server.attachedStats);
+        lbStats.retainServers(Collections.<Server>emptyList());
+        assertEquals(1, lbStats.getServerStats().size());
+    }
+}
@@ -0,0 +1,101 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class OutlierDetectorTest {
+
+    private static List<Server> servers() {
+        List<Server> servers = Lists.newArrayList();
+        for (int i = 0; i < 5; i++) {
+            servers.add(new Server("server" + i, 80));
+        }
+        return servers;
+    }
+
+    private static void noteRequests(LoadBalancerStats stats, Server server, int requests, int failures, int responseTime) {
+        ServerStats serverStats = stats.getSingleServerStat(server);
+        for (int i = 0; i < requests; i++) {
+            serverStats.incrementNumRequests();
+            serverStats.noteResponseTime(responseTime);
+            if (i < failures) {
+                serverStats.addToFailureCount();
+            }
+        }
+    }
+
+    @Test
+    public void testEjectFailingServer() {
+        List<Server> servers = servers();
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(servers);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        OutlierDetector detector = new OutlierDetector(lb, stats, 10000, 1000, 20, 1.9, 3.0, 10, 5);
+        stats.setOutlierDetector(detector);
+
+        for (Server server : servers) {
+            noteRequests(stats, server, 20, server == servers.get(0) ? 10 : 0, 10);
+        }
+        detector.detectOutliers(0);
+        assertTrue(detector.isEjected(servers.get(0)));
+        assertEquals(1, detector.getEjectedCount());
+        AvailabilityPredicate predicate = new AvailabilityPredicate(stats, null);
+        assertFalse(predicate.apply(servers.get(0), null));
+        assertTrue(predicate.apply(servers.get(1), null));
+
+        // still ejected in the next interval, without any requests
+        detector.detectOutliers(500);
+        assertTrue(detector.isEjected(servers.get(0)));
+
+        // released after the ejection time, and ejected for twice as long if it is still an outlier
+        for (Server server : servers) {
+            noteRequests(stats, server, 20, server == servers.get(0) ? 10 : 0, 10);
+        }
+        detector.detectOutliers(1000);
+        assertTrue(detector.isEjected(servers.get(0)));
+        detector.detectOutliers(2500);
+        assertTrue(detector.isEjected(servers.get(0)));
+        detector.detectOutliers(3000);
+        assertFalse(detector.isEjected(servers.get(0)));
+        assertTrue(predicate.apply(servers.get(0), null));
+    }
+
+    @Test
+    public void testEjectSlowServer() {
+        List<Server> servers = servers();
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(servers);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        OutlierDetector detector = new OutlierDetector(lb, stats, 10000, 1000, 20, 1.9, 3.0, 10, 5);
+
+        for (Server server : servers) {
+            noteRequests(stats, server, 20, 0, server == servers.get(1) ? 100 : 10);
+        }
+        detector.detectOutliers(0);
+        assertEquals(1, detector.getEjectedCount());
+        assertTrue(detector.isEjected(servers.get(1)));
+    }
+
+    @Test
+    public void testMaxEjectionPercent() {
+        List<Server> servers = servers();
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().buildFixedServerListLoadBalancer(servers);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        OutlierDetector detector = new OutlierDetector(lb, stats, 10000, 1000, 20, 1.9, 3.0, 10, 5);
+
+        // two slow servers, but at most 20% of 5 servers can be ejected
+        for (Server server : servers) {
+            noteRequests(stats, server, 20, 0, server == servers.get(1) || server == servers.get(2) ? 100 : 10);
+        }
+        detector.detectOutliers(0);
+        assertEquals(1, detector.getEjectedCount());
+
+        // servers without enough requests in the interval are not compared
+        noteRequests(stats, servers.get(1), 5, 5, 100);
+        detector.detectOutliers(2000);
+        assertEquals(0, detector.getEjectedCount());
+    }
+}
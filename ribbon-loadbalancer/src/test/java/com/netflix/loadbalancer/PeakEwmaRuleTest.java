@@ -0,0 +1,60 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class PeakEwmaRuleTest {
+
+    @Test
+    public void testAvoidsSlowServer() {
+        List<Server> servers = Lists.newArrayList(new Server("slow", 80), new Server("fast", 80));
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().withRule(new PeakEwmaRule())
+                .buildFixedServerListLoadBalancer(servers);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        stats.getSingleServerStat(servers.get(0)).noteResponseTime(500);
+        stats.getSingleServerStat(servers.get(1)).noteResponseTime(20);
+        // the fast server is preferred even with a few more requests in flight
+        for (int i = 0; i < 3; i++) {
+            stats.incrementActiveRequestsCount(servers.get(1));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(servers.get(1), lb.chooseServer());
+        }
+    }
+
+    @Test
+    public void testAvoidsStalledServer() {
+        List<Server> servers = Lists.newArrayList(new Server("stalled", 80), new Server("healthy", 80));
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().withRule(new PeakEwmaRule())
+                .buildFixedServerListLoadBalancer(servers);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        long now = System.currentTimeMillis();
+        // the stalled server answered quickly a minute ago, and has not answered its requests since
+        stats.getSingleServerStat(servers.get(0)).notePeakEwmaResponseTime(20, now - 60000);
+        for (int i = 0; i < 5; i++) {
+            stats.incrementActiveRequestsCount(servers.get(0));
+        }
+        stats.getSingleServerStat(servers.get(1)).notePeakEwmaResponseTime(50, now);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(servers.get(1), lb.chooseServer());
+        }
+    }
+
+    @Test
+    public void testPenalizesServerWithoutLatencyButActiveRequests() {
+        List<Server> servers = Lists.newArrayList(new Server("new", 80), new Server("known", 80));
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().withRule(new PeakEwmaRule())
+                .buildFixedServerListLoadBalancer(servers);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        stats.incrementActiveRequestsCount(servers.get(0));
+        stats.getSingleServerStat(servers.get(1)).noteResponseTime(200);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(servers.get(1), lb.chooseServer());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class PowerOfTwoChoicesRuleTest {
+
+    private BaseLoadBalancer createLoadBalancer(List<Server> servers) {
+        return LoadBalancerBuilder.newBuilder().withRule(new PowerOfTwoChoicesRule())
+                .buildFixedServerListLoadBalancer(servers);
+    }
+
+    @Test
+    public void testChoosesLessLoadedServer() {
+        List<Server> servers = Lists.newArrayList(new Server("busy", 80), new Server("idle", 80));
+        BaseLoadBalancer lb = createLoadBalancer(servers);
+        ServerStats stats = lb.getLoadBalancerStats().getSingleServerStat(servers.get(0));
+        for (int i = 0; i < 5; i++) {
+            stats.incrementActiveRequestsCount();
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(servers.get(1), lb.chooseServer());
+        }
+    }
+
+    @Test
+    public void testSkipsCircuitTrippedServer() {
+        List<Server> servers = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            servers.add(new Server(String.valueOf(i), 80));
+        }
+        BaseLoadBalancer lb = createLoadBalancer(servers);
+        ServerStats stats = lb.getLoadBalancerStats().getSingleServerStat(servers.get(0));
+        for (int i = 0; i < 3; i++) {
+            stats.incrementSuccessiveConnectionFailureCount();
+        }
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(servers.get(0), lb.chooseServer());
+        }
+    }
+
+    @Test
+    public void testSpreadsLoadAmongEqualServers() {
+        List<Server> servers = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            servers.add(new Server(String.valueOf(i), 80));
+        }
+        BaseLoadBalancer lb = createLoadBalancer(servers);
+        Map<Server, Integer> counts = new HashMap<Server, Integer>();
+        for (int i = 0; i < 1000; i++) {
+            Server server = lb.chooseServer();
+            Integer count = counts.get(server);
+            counts.put(server, count == null ? 1 : count + 1);
+        }
+        assertEquals(10, counts.size());
+    }
+}
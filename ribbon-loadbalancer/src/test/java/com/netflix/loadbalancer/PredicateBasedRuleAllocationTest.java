@@ -0,0 +1,133 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.netflix.config.ConfigurationManager;
+
+public class PredicateBasedRuleAllocationTest {
+
+    private static final int ITERATIONS = 100000;
+
+    private com.sun.management.ThreadMXBean threadMXBean;
+
+    private BaseLoadBalancer lb;
+
+    private List<Server> servers;
+
+    static class EvenPortRule extends PredicateBasedRule {
+        private final AbstractServerPredicate predicate = CompositePredicate.withPredicates(
+                AbstractServerPredicate.ofServerPredicate(new Predicate<Server>() {
+                    @Override
+                    public boolean apply(Server input) {
+                        return input.getPort() % 2 == 0;
+                    }
+                }))
+                .addFallbackPredicate(AbstractServerPredicate.alwaysTrue())
+                .build();
+
+        @Override
+        public AbstractServerPredicate getPredicate() {
+            return predicate;
+        }
+    }
+
+    @Before
+    public void setup() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        servers = new ArrayList<Server>();
+        for (int i = 0; i < 300; i++) {
+            Server server = new Server("server" + i, 8000 + i);
+            server.setZone("zone" + (i % 3));
+            servers.add(server);
+        }
+        lb = new BaseLoadBalancer();
+        lb.setRule(new EvenPortRule());
+        lb.setServersList(servers);
+    }
+
+    private long chooseAndMeasure() {
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            lb.chooseServer(null);
+        }
+        return threadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private void assertChooseServerDoesNotAllocate() {
+        // warm up so that the selection path is compiled
+        for (int i = 0; i < 5; i++) {
+            chooseAndMeasure();
+        }
+        long allocated = chooseAndMeasure();
+        // allow a few bytes for the measurement itself, but nothing proportional to the iterations
+        assertTrue("Allocated " + allocated + " bytes for " + ITERATIONS + " choices", allocated < 1024);
+    }
+
+    @Test
+    public void testChooseServerDoesNotAllocate() {
+        assertChooseServerDoesNotAllocate();
+    }
+
+    @Test
+    public void testZoneAvoidanceRuleChooseServerDoesNotAllocate() {
+        Map<String, List<Server>> zoneServers = new HashMap<String, List<Server>>();
+        for (Server server : servers) {
+            List<Server> list = zoneServers.get(server.getZone());
+            if (list == null) {
+                list = new ArrayList<Server>();
+                zoneServers.put(server.getZone(), list);
+            }
+            list.add(server);
+        }
+        // the availability predicate reads the stats of each server, which are only a field read when attached,
+        // and the zone snapshots are not refreshed during the measurement
+        ConfigurationManager.getConfigInstance().setProperty("niws.loadbalancer.allocation.serverStats.attachToServer", "true");
+        ConfigurationManager.getConfigInstance().setProperty("niws.loadbalancer.allocation.zoneSnapshotRefreshIntervalMillis", "3600000");
+        try {
+            lb.setLoadBalancerStats(new LoadBalancerStats("allocation"));
+            lb.getLoadBalancerStats().updateZoneServerMapping(zoneServers);
+            lb.setRule(new ZoneAvoidanceRule());
+            assertChooseServerDoesNotAllocate();
+        } finally {
+            ConfigurationManager.getConfigInstance().clearProperty("niws.loadbalancer.allocation.serverStats.attachToServer");
+            ConfigurationManager.getConfigInstance().clearProperty("niws.loadbalancer.allocation.zoneSnapshotRefreshIntervalMillis");
+        }
+    }
+
+    @Test
+    public void testChoosesOnlyEligibleServersInRoundRobin() {
+        Server first = lb.chooseServer(null);
+        assertEquals(0, first.getPort() % 2);
+        for (int i = 0; i < 149; i++) {
+            Server server = lb.chooseServer(null);
+            assertEquals(0, server.getPort() % 2);
+            assertNotSame(first, server);
+        }
+        assertSame(first, lb.chooseServer(null));
+    }
+
+    @Test
+    public void testFallbackWhenNoServerIsEligible() {
+        List<Server> servers = new ArrayList<Server>();
+        servers.add(new Server("odd", 8001));
+        lb.setServersList(servers);
+        assertEquals(8001, lb.chooseServer(null).getPort());
+    }
+}
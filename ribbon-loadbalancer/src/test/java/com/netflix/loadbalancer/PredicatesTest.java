@@ -200,4 +200,33 @@ public class PredicatesTest {
         assertEquals(6, filtered.size());
     }
 
+    @Test
+    public void testRuleHonorsOverriddenGetEligibleServers() {
+        final Server chosen = new Server("chosen:80");
+        final AbstractServerPredicate predicate = new AbstractServerPredicate() {
+            @Override
+            public boolean apply(PredicateKey input) {
+                return true;
+            }
+
+            @Override
+            public List<Server> getEligibleServers(List<Server> servers, Object loadBalancerKey) {
+                return Lists.newArrayList(chosen);
+            }
+        };
+        PredicateBasedRule rule = new PredicateBasedRule() {
+            @Override
+            public AbstractServerPredicate getPredicate() {
+                return predicate;
+            }
+        };
+        BaseLoadBalancer lb = new BaseLoadBalancer();
+        lb.setRule(rule);
+        lb.addServers(Lists.newArrayList(new Server("other:80"), chosen, new Server("another:80")));
+        for (int i = 0; i < 6; i++) {
+            assertSame(chosen, rule.choose(null));
+        }
+        assertSame(chosen, predicate.chooseRandomly(lb.getAllServers(), null));
+    }
+
 }
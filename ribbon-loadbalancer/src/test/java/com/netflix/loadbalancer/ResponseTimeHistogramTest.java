@@ -0,0 +1,92 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class ResponseTimeHistogramTest {
+
+    private static final double[] PERCENTS = {50, 90, 99};
+
+    @Test
+    public void testBucketBoundaries() {
+        int last = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = ResponseTimeHistogram.bucketIndex(value);
+            assertTrue(index == last || index == last + 1);
+            last = index;
+            // the middle of the bucket is within the precision of the histogram
+            assertEquals(value, ResponseTimeHistogram.bucketValue(index), Math.max(1, value * 0.04));
+        }
+        assertEquals(ResponseTimeHistogram.BUCKET_COUNT - 1, ResponseTimeHistogram.bucketIndex((1L << 34) - 1));
+    }
+
+    @Test
+    public void testPercentilesOfLastWindow() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram(1000, PERCENTS, 4);
+        long start = 10000;
+        for (int i = 1; i <= 1000; i++) {
+            histogram.noteValue(i, start + i % 1000);
+        }
+        // current window is not reported yet
+        assertEquals(0, histogram.getWindowSnapshot(start + 500).getSampleSize());
+
+        ResponseTimeHistogram.WindowSnapshot snapshot = histogram.getWindowSnapshot(start + 1000);
+        assertEquals(1000, snapshot.getSampleSize());
+        assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertEquals(500, snapshot.getPercentile(0), 500 * 0.04);
+        assertEquals(900, snapshot.getPercentile(1), 900 * 0.04);
+        assertEquals(990, snapshot.getPercentile(2), 990 * 0.04);
+        assertEquals(start + 1000, snapshot.getTimestampMillis());
+        assertSame(snapshot, histogram.getWindowSnapshot(start + 1999));
+
+        // the window is reset when it is reused
+        histogram.noteValue(5, start + 2000);
+        assertEquals(0, histogram.getWindowSnapshot(start + 2000).getSampleSize());
+        assertEquals(1, histogram.getWindowSnapshot(start + 3000).getSampleSize());
+        assertEquals(0, histogram.getWindowSnapshot(start + 5000).getSampleSize());
+
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1, histogram.getMinimum(), 0.001);
+        assertEquals(1000, histogram.getMaximum(), 0.001);
+        assertEquals((500500 + 5) / 1001d, histogram.getMean(), 0.001);
+        assertTrue(histogram.getStdDev() > 280 && histogram.getStdDev() < 300);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final ResponseTimeHistogram histogram = new ResponseTimeHistogram(60000, PERCENTS, 4);
+        final long now = 60000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.noteValue(10, now);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, histogram.getCount());
+        ResponseTimeHistogram.WindowSnapshot snapshot = histogram.getWindowSnapshot(now + 60000);
+        assertEquals(80000, snapshot.getSampleSize());
+        assertEquals(10, snapshot.getPercentile(1), 0.4);
+    }
+}
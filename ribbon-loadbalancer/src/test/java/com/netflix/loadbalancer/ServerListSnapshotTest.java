@@ -0,0 +1,60 @@
+package com.netflix.loadbalancer;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServerListSnapshotTest {
+
+    private final Server server1 = new Server("server1", 80);
+    private final Server server2 = new Server("server2", 80);
+    private final Server server3 = new Server("server3", 80);
+
+    private BaseLoadBalancer lb;
+
+    @Before
+    public void setup() {
+        lb = new BaseLoadBalancer();
+        lb.setServersList(asList(server1, server2, server3));
+    }
+
+    @Test
+    public void testReadsDoNotCopy() {
+        ServerListSnapshot snapshot = lb.getServerListSnapshot();
+        assertSame(snapshot.getAllServers(), lb.getAllServers());
+        assertSame(snapshot.getUpServers(), lb.getReachableServers());
+        assertEquals(asList(server1, server2, server3), lb.getReachableServers());
+        assertEquals(3, lb.getServerCount(true));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() {
+        lb.getAllServers().remove(0);
+    }
+
+    @Test
+    public void testMarkServerDownPublishesNewSnapshot() {
+        ServerListSnapshot before = lb.getServerListSnapshot();
+        lb.markServerDown(server2);
+        ServerListSnapshot after = lb.getServerListSnapshot();
+
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(asList(server1, server3), after.getUpServers());
+        assertEquals(asList(server1, server2, server3), after.getAllServers());
+        // previously obtained snapshot is unaffected
+        assertEquals(asList(server1, server2, server3), before.getUpServers());
+
+        lb.markServerDown(server3.getId());
+        assertEquals(asList(server1), lb.getReachableServers());
+        assertEquals(1, lb.getServerCount(true));
+    }
+
+    @Test
+    public void testSetServersListReplacesSnapshot() {
+        lb.setServersList(asList(server3));
+        assertEquals(asList(server3), lb.getAllServers());
+        assertEquals(asList(server3), lb.getReachableServers());
+    }
+}
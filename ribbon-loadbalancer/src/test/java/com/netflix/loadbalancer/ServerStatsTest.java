@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import com.netflix.config.ConfigurationManager;
 import com.netflix.servo.monitor.Monitors;
 
 public class ServerStatsTest {
@@ -31,4 +32,52 @@ public class ServerStatsTest {
         // https://github.com/Netflix/ribbon/issues/191
         Monitors.registerObject(new ServerStats());
     }
+
+    @Test
+    public void testPeakEwmaResponseTime() {
+        ServerStats stats = new ServerStats();
+        long now = 1000000L;
+        stats.notePeakEwmaResponseTime(10, now);
+        assertEquals(10, stats.getPeakEwmaResponseTime(now), 0.0001);
+
+        // a peak is taken immediately
+        stats.notePeakEwmaResponseTime(100, now + 10);
+        assertEquals(100, stats.getPeakEwmaResponseTime(now + 10), 0.0001);
+
+        // lower values are blended in
+        stats.notePeakEwmaResponseTime(10, now + 1000);
+        double blended = stats.getPeakEwmaResponseTime(now + 1000);
+        assertTrue(blended > 10 && blended < 100);
+
+        // and the average decays while idle
+        assertTrue(stats.getPeakEwmaResponseTime(now + 60000) < blended / 10);
+    }
+
+    @Test
+    public void testHistogramMode() {
+        ConfigurationManager.getConfigInstance().setProperty("niws.loadbalancer.serverStats.histogram.enabled", "true");
+        try {
+            ServerStats stats = new ServerStats();
+            stats.setPublishInterval(100);
+            stats.initialize(new Server("histogram", 80));
+            for (int i = 1; i <= 100; i++) {
+                stats.noteResponseTime(i);
+            }
+            assertEquals(50.5, stats.getResponseTimeAvg(), 0.001);
+            assertEquals(1, stats.getResponseTimeMin(), 0.001);
+            assertEquals(100, stats.getResponseTimeMax(), 0.001);
+            // percentiles are published for the previous window
+            long deadline = System.currentTimeMillis() + 1000;
+            while (stats.getResponseTimePercentileNumValues() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            if (stats.getResponseTimePercentileNumValues() == 100) {
+                assertEquals(99, stats.getResponseTime99thPercentile(), 99 * 0.04);
+                assertEquals(50.5, stats.getResponseTimeAvgRecent(), 0.001);
+            }
+            stats.close();
+        } finally {
+            ConfigurationManager.getConfigInstance().clearProperty("niws.loadbalancer.serverStats.histogram.enabled");
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class SlowStartTest {
+
+    @Test
+    public void testWeightRampsUp() {
+        Server warm = new Server("warm", 80);
+        Server added = new Server("added", 80);
+        SlowStart slowStart = new SlowStart(100000, 0.1);
+        // the initial servers are not warming up
+        slowStart.serverListChanged(Collections.<Server>emptyList(), Lists.newArrayList(warm));
+        assertEquals(1, slowStart.getWeight(warm, System.currentTimeMillis()), 0.0001);
+
+        long before = System.currentTimeMillis();
+        slowStart.serverListChanged(Lists.newArrayList(warm), Lists.newArrayList(warm, added));
+        assertEquals(1, slowStart.getWeight(warm, before), 0.0001);
+        assertEquals(0.1, slowStart.getWeight(added, before), 0.02);
+        assertEquals(0.55, slowStart.getWeight(added, before + 50000), 0.02);
+        assertEquals(1, slowStart.getWeight(added, before + 100000), 0.0001);
+        assertEquals(1, slowStart.getWeight(added, before), 0.0001);
+    }
+
+    @Test
+    public void testRoundRobinHonorsWeight() {
+        List<Server> servers = Lists.newArrayList(new Server("a", 80), new Server("b", 80));
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().withRule(new RoundRobinRule())
+                .buildFixedServerListLoadBalancer(servers);
+        SlowStart slowStart = new SlowStart(60000, 0.1);
+        lb.getLoadBalancerStats().setSlowStart(slowStart);
+        lb.addServerListChangeListener(slowStart);
+        Server added = new Server("c", 80);
+        lb.addServer(added);
+
+        int chosen = 0;
+        for (int i = 0; i < 3000; i++) {
+            if (added.equals(lb.chooseServer())) {
+                chosen++;
+            }
+        }
+        // about 5%, instead of a third of the requests
+        assertTrue("chosen " + chosen, chosen > 0 && chosen < 400);
+    }
+
+    @Test
+    public void testWeightedResponseTimeHonorsWeight() {
+        List<Server> servers = Lists.newArrayList(new Server("a", 80), new Server("b", 80));
+        WeightedResponseTimeRule rule = new WeightedResponseTimeRule();
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().withRule(rule)
+                .buildFixedServerListLoadBalancer(servers);
+        SlowStart slowStart = new SlowStart(60000, 0.1);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        stats.setSlowStart(slowStart);
+        lb.addServerListChangeListener(slowStart);
+        Server added = new Server("c", 80);
+        lb.addServer(added);
+        for (Server server : lb.getAllServers()) {
+            stats.noteResponseTime(server, 10);
+        }
+        rule.new ServerWeight().maintainWeights();
+
+        int chosen = 0;
+        for (int i = 0; i < 3000; i++) {
+            if (added.equals(lb.chooseServer())) {
+                chosen++;
+            }
+        }
+        // about 5%, instead of a third of the requests
+        assertTrue("chosen " + chosen, chosen > 0 && chosen < 400);
+    }
+
+    @Test
+    public void testPowerOfTwoChoicesHonorsWeight() {
+        List<Server> servers = Lists.newArrayList(new Server("a", 80));
+        BaseLoadBalancer lb = LoadBalancerBuilder.newBuilder().withRule(new PowerOfTwoChoicesRule())
+                .buildFixedServerListLoadBalancer(servers);
+        SlowStart slowStart = new SlowStart(60000, 0.1);
+        LoadBalancerStats stats = lb.getLoadBalancerStats();
+        stats.setSlowStart(slowStart);
+        lb.addServerListChangeListener(slowStart);
+        Server added = new Server("b", 80);
+        lb.addServer(added);
+
+        // the warming server is preferred only when the warm server is much more loaded
+        for (int i = 0; i < 5; i++) {
+            stats.incrementActiveRequestsCount(servers.get(0));
+        }
+        assertEquals(servers.get(0), lb.chooseServer());
+        for (int i = 0; i < 10; i++) {
+            stats.incrementActiveRequestsCount(servers.get(0));
+        }
+        assertEquals(added, lb.chooseServer());
+    }
+}
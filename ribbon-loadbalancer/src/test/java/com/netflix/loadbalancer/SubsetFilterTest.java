@@ -20,12 +20,16 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.configuration.Configuration;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.netflix.client.ClientFactory;
 import com.netflix.client.config.DefaultClientConfigImpl;
 import com.netflix.config.ConfigurationManager;
@@ -54,6 +58,10 @@ public class SubsetFilterTest {
         config.setProperty("SubsetFilerTest.ribbon.ServerListSubsetFilter.eliminationFailureThresold", 2);
         config.setProperty("SubsetFilerTest.ribbon.ServerListSubsetFilter.eliminationConnectionThresold", 2);
         config.setProperty("SubsetFilerTest.ribbon.ServerListSubsetFilter.size", "5");
+
+        config.setProperty("DeterministicSubsetTest.ribbon.ServerListSubsetFilter.deterministic", "true");
+        config.setProperty("DeterministicSubsetTest.ribbon.ServerListSubsetFilter.clientId", "3");
+        config.setProperty("DeterministicSubsetTest.ribbon.ServerListSubsetFilter.size", "5");
     }
 
     List<Server> getServersAndStats(LoadBalancerStats lbStats, Object[][] stats) {
@@ -219,6 +227,71 @@ public class SubsetFilterTest {
         assertEquals(5, lastFiltered.size());
 
     }
+
+    List<Server> getServers(int count) {
+        List<Server> list = Lists.newArrayList();
+        for (int i = 0; i < count; i++) {
+            list.add(new Server("server" + i, 80));
+        }
+        return list;
+    }
+
+    @Test
+    public void testDeterministicSubsetBalance() {
+        List<Server> servers = getServers(100);
+        Map<Server, Integer> clientCounts = Maps.newHashMap();
+        // 10 subsets per round, so each server is in the subset of exactly one client per round
+        for (int clientId = 0; clientId < 100; clientId++) {
+            List<Server> subset = ServerListSubsetFilter.deterministicSubset(servers, clientId, 10, 0);
+            assertEquals(10, subset.size());
+            assertEquals(10, Sets.newHashSet(subset).size());
+            for (Server server : subset) {
+                Integer count = clientCounts.get(server);
+                clientCounts.put(server, count == null ? 1 : count + 1);
+            }
+        }
+        assertEquals(100, clientCounts.size());
+        for (int count : clientCounts.values()) {
+            assertEquals(10, count);
+        }
+    }
+
+    @Test
+    public void testDeterministicSubsetChurn() {
+        List<Server> servers = getServers(105);
+        List<Server> shuffled = Lists.newArrayList(servers);
+        Collections.shuffle(shuffled);
+        List<Server> removed = Lists.newArrayList(servers);
+        removed.remove(42);
+        for (int clientId = 0; clientId < 50; clientId++) {
+            Set<Server> subset = Sets.newHashSet(ServerListSubsetFilter.deterministicSubset(servers, clientId, 10, 0));
+            // independent of the order of the server list
+            assertEquals(subset, Sets.newHashSet(ServerListSubsetFilter.deterministicSubset(shuffled, clientId, 10, 0)));
+            // removing a server changes a subset by at most one server
+            Set<Server> after = Sets.newHashSet(ServerListSubsetFilter.deterministicSubset(removed, clientId, 10, 0));
+            assertTrue(Sets.intersection(subset, after).size() >= 9);
+        }
+    }
+
+    @Test
+    public void testDeterministicFiltering() {
+        ServerListSubsetFilter<Server> filter = new ServerListSubsetFilter<Server>();
+        filter.initWithNiwsConfig(DefaultClientConfigImpl.getClientConfigWithDefaultValues("DeterministicSubsetTest"));
+        LoadBalancerStats stats = new LoadBalancerStats("DeterministicSubsetTest");
+        filter.setLoadBalancerStats(stats);
+        Object[][] serverStats = new Object[20][];
+        for (int i = 0; i < serverStats.length; i++) {
+            serverStats[i] = new Object[] {"server" + i, 0, 0};
+        }
+        List<Server> list = getServersAndStats(stats, serverStats);
+        List<Server> filtered = filter.getFilteredListOfServers(list);
+        assertEquals(5, filtered.size());
+
+        // unhealthy servers are not eliminated, the subset stays the same
+        DummyServerStats stats1 = (DummyServerStats) stats.getSingleServerStat(filtered.get(0));
+        stats1.setConnectionFailureCount(3);
+        assertEquals(Sets.newHashSet(filtered), Sets.newHashSet(filter.getFilteredListOfServers(list)));
+    }
     
 }
 
@@ -0,0 +1,89 @@
+package com.netflix.loadbalancer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class WeightedResponseTimeRuleTest {
+
+    @Test
+    public void testChooseByAccumulatedWeight() {
+        Server a = new Server("a", 80);
+        Server b = new Server("b", 80);
+        Server c = new Server("c", 80);
+        Server d = new Server("d", 80);
+        WeightedResponseTimeRule.ServerWeights weights = new WeightedResponseTimeRule.ServerWeights(null,
+                new Server[] {a, b, c, d}, new double[] {10, 40, 40, 100});
+        assertEquals(100, weights.getTotalWeight(), 0);
+        assertSame(a, weights.choose(0));
+        assertSame(a, weights.choose(10));
+        assertSame(b, weights.choose(10.5));
+        assertSame(b, weights.choose(40));
+        // c has zero weight and is never chosen
+        assertSame(d, weights.choose(40.5));
+        assertSame(d, weights.choose(99.9));
+    }
+
+    @Test
+    public void testWeightsFollowServerListChanges() throws Exception {
+        WeightedResponseTimeRule rule = new WeightedResponseTimeRule();
+        BaseLoadBalancer lb = new BaseLoadBalancer();
+        lb.setRule(rule);
+        List<Server> servers = Arrays.asList(new Server("a", 80), new Server("b", 80), new Server("c", 80));
+        lb.setServersList(servers);
+        for (int i = 0; i < servers.size(); i++) {
+            lb.getLoadBalancerStats().noteResponseTime(servers.get(i), 10 * (i + 1));
+        }
+        rule.new ServerWeight().maintainWeights();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(servers.contains(rule.choose(lb, null)));
+        }
+
+        List<Server> newServers = Arrays.asList(new Server("d", 80), new Server("e", 80));
+        lb.setServersList(newServers);
+        for (Server server : newServers) {
+            lb.getLoadBalancerStats().noteResponseTime(server, 10);
+        }
+        Set<Server> chosen = new HashSet<Server>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!newServers.containsAll(chosen) || chosen.isEmpty()) {
+            assertTrue("weights are not recalculated", System.currentTimeMillis() < deadline);
+            chosen.clear();
+            for (int i = 0; i < 100; i++) {
+                chosen.add(rule.choose(lb, null));
+            }
+            Thread.sleep(10);
+        }
+        rule.shutdown();
+    }
+
+    @Test
+    public void testUpServerChangesKeepWeights() throws Exception {
+        WeightedResponseTimeRule rule = new WeightedResponseTimeRule();
+        BaseLoadBalancer lb = new BaseLoadBalancer();
+        lb.setRule(rule);
+        List<Server> servers = Arrays.asList(new Server("a", 80), new Server("b", 80), new Server("c", 80));
+        lb.setServersList(servers);
+        for (int i = 0; i < servers.size(); i++) {
+            lb.getLoadBalancerStats().noteResponseTime(servers.get(i), 10 * (i + 1));
+        }
+        // let the initial run of the timer pass
+        Thread.sleep(100);
+        rule.new ServerWeight().maintainWeights();
+        WeightedResponseTimeRule.ServerWeights weights = rule.getServerWeights();
+
+        lb.markServerDown(servers.get(0));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(servers.contains(rule.choose(lb, null)));
+        }
+        Thread.sleep(100);
+        // the "all" list has not changed, so no update was scheduled
+        assertSame(weights, rule.getServerWeights());
+        rule.shutdown();
+    }
+}
@@ -20,6 +20,7 @@ package com.netflix.loadbalancer;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -32,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.netflix.client.ClientFactory;
@@ -39,6 +41,12 @@ import com.netflix.config.ConfigurationManager;
 
 public class ZoneAwareLoadBalancerTest {
 
+    @BeforeClass
+    public static void init() {
+        // these tests check that every change of the stats is reflected in the next choice
+        ConfigurationManager.getConfigInstance().setProperty("niws.loadbalancer.default.zoneSnapshotRefreshIntervalMillis", 0);
+    }
+
     private Server createServer(String host, String zone) {
         return createServer(host, 7001, zone);    
     }
@@ -353,4 +361,34 @@ public class ZoneAwareLoadBalancerTest {
         assertEquals(expected, result);
     }
 
+    @Test
+    public void testZoneSnapshotsCached() {
+        ConfigurationManager.getConfigInstance().setProperty("niws.loadbalancer.cachedZones.zoneSnapshotRefreshIntervalMillis", 60000);
+        LoadBalancerStats lbStats = new LoadBalancerStats("cachedZones");
+        Map<String, List<Server>> zoneMap = new HashMap<String, List<Server>>();
+        zoneMap.put("us-east-1a", Arrays.asList(createServer(1, "a"), createServer(2, "a")));
+        zoneMap.put("us-east-1b", Arrays.asList(createServer(1, "b")));
+        lbStats.updateZoneServerMapping(zoneMap);
+
+        Map<String, ZoneSnapshot> snapshots = lbStats.getZoneSnapshots();
+        assertEquals(2, snapshots.size());
+        assertEquals(2, snapshots.get("us-east-1a").getInstanceCount());
+        assertEquals(0, snapshots.get("us-east-1a").getActiveRequestsCount());
+
+        // stats changes are picked up when the snapshots are refreshed
+        lbStats.incrementActiveRequestsCount(createServer(1, "a"));
+        assertSame(snapshots, lbStats.getZoneSnapshots());
+        assertEquals(1, lbStats.getZoneSnapshot("us-east-1a").getActiveRequestsCount());
+
+        // a new zone mapping is picked up immediately
+        zoneMap.put("us-east-1c", Arrays.asList(createServer(1, "c")));
+        lbStats.updateZoneServerMapping(zoneMap);
+        snapshots = lbStats.getZoneSnapshots();
+        assertEquals(3, snapshots.size());
+        assertEquals(1, snapshots.get("us-east-1a").getActiveRequestsCount());
+
+        ConfigurationManager.getConfigInstance().setProperty("niws.loadbalancer.cachedZones.zoneSnapshotRefreshIntervalMillis", 0);
+        lbStats.incrementActiveRequestsCount(createServer(1, "b"));
+        assertEquals(1, lbStats.getZoneSnapshots().get("us-east-1b").getActiveRequestsCount());
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.ribbon.transport.netty;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.annotations.Monitor;
+
+/**
+ * A limit on the number of concurrent requests that adapts to the measured round trip times, with additive
+ * increase and multiplicative decrease (AIMD).
+ * <p>
+ * A response is considered a sign of congestion if it was an error indicating that the server is overloaded,
+ * or if its round trip time exceeds the baseline round trip time of the server, the time the server takes
+ * when it is not loaded, by more than the tolerance. On congestion the limit is multiplied by the backoff
+ * ratio. Otherwise, if the limit was actually used, it is increased by {@code 1 / limit}, which adds about
+ * one request per round trip of all concurrent requests.
+ * <p>
+ * Requests over the limit are rejected immediately, instead of queueing for a connection, so that the latency
+ * of the requests that are made stays bounded when the servers are overloaded.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final String PREFIX = "ConcurrencyLimit_";
+
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // guarded by this for updates
+    private volatile double limit;
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param initialLimit limit before any response has been received
+     * @param minLimit lowest limit, which is kept so that the limit can recover
+     * @param maxLimit highest limit, for example the size of the connection pool
+     * @param rttTolerance ratio of the round trip time to the baseline above which a response indicates congestion
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double rttTolerance) {
+        this(initialLimit, minLimit, maxLimit, rttTolerance, DEFAULT_BACKOFF_RATIO);
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double rttTolerance, double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limits " + minLimit + " - " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Acquire a permit for a request, which must be released with {@link #release()} once the request
+     * is done.
+     *
+     * @return false if the limit is reached, in which case the request should be rejected
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Adapt the limit to a response, before the permit of the request is released.
+     *
+     * @param rttMillis round trip time of the request
+     * @param baselineRttMillis round trip time of the server when it is not loaded, or 0 if it is not known yet
+     * @param overloaded whether the request failed with an error that indicates that the server is overloaded
+     */
+    public void onResponse(long rttMillis, double baselineRttMillis, boolean overloaded) {
+        boolean congested = overloaded || (baselineRttMillis > 0 && rttMillis > baselineRttMillis * rttTolerance);
+        int current = inFlight.get();
+        synchronized (this) {
+            double value = limit;
+            if (congested) {
+                value = Math.max(minLimit, value * backoffRatio);
+            } else if (current * 2 >= value) {
+                // only grow a limit that is used, otherwise it would grow without bound while the load is low
+                value = Math.min(maxLimit, value + 1 / value);
+            }
+            limit = value;
+        }
+    }
+
+    @Monitor(name = PREFIX + "Limit", type = DataSourceType.GAUGE)
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Monitor(name = PREFIX + "InFlight", type = DataSourceType.GAUGE)
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Monitor(name = PREFIX + "Rejected", type = DataSourceType.COUNTER)
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+}
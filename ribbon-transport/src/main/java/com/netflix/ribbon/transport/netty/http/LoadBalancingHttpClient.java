@@ -43,14 +43,20 @@ import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLEngine;
 
 import rx.Observable;
+import rx.Observer;
+import rx.functions.Action0;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.functions.Func2;
 
@@ -72,11 +78,17 @@ import com.netflix.loadbalancer.reactive.ExecutionContext;
 import com.netflix.loadbalancer.reactive.ExecutionListener;
 import com.netflix.loadbalancer.reactive.LoadBalancerCommand;
 import com.netflix.loadbalancer.reactive.ServerOperation;
+import com.netflix.ribbon.transport.netty.AdaptiveConcurrencyLimiter;
 import com.netflix.ribbon.transport.netty.LoadBalancingRxClientWithPoolOptions;
+import com.netflix.servo.monitor.Monitors;
 
 /**
  * A Netty HttpClient that can connect to different servers. Internally it caches the RxNetty's HttpClient, with each created with 
  * a connection pool governed by {@link CompositePoolLimitDeterminationStrategy} that has a global limit and per server limit. 
+ * <p>
+ * If EnableConcurrencyLimit is set, the concurrent requests of the client are also limited by an {@link AdaptiveConcurrencyLimiter},
+ * and optionally the concurrent requests to each server if ConcurrencyLimitPerServer is set. Requests over the limit fail
+ * immediately with a {@link ClientException} of type {@link ClientException.ErrorType#CONCURRENCY_LIMIT_EXCEEDED}.
  *   
  * @author awang
  */
@@ -91,6 +103,10 @@ public class LoadBalancingHttpClient<I, O> extends LoadBalancingRxClientWithPool
     private final LoadBalancerCommand<HttpClientResponse<O>> defaultCommandBuilder;
     private final Func2<HttpClientResponse<O>, Integer, Observable<HttpClientResponse<O>>> responseToErrorPolicy;
     private final Func1<Integer, Integer> backoffStrategy;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final ConcurrentMap<Server, AdaptiveConcurrencyLimiter> serverConcurrencyLimiters;
+    private final int initialConcurrencyLimit;
+    private final double concurrencyLimitRttTolerance;
     
     public static class Builder<I, O> {
         ILoadBalancer lb;
@@ -228,6 +244,21 @@ public class LoadBalancingHttpClient<I, O> extends LoadBalancingRxClientWithPool
                 .build();
         this.responseToErrorPolicy = builder.responseToErrorPolicy;
         this.backoffStrategy = builder.backoffStrategy;
+        
+        initialConcurrencyLimit = builder.config.get(CommonClientConfigKey.InitialConcurrencyLimit, DefaultClientConfigImpl.DEFAULT_INITIAL_CONCURRENCY_LIMIT);
+        concurrencyLimitRttTolerance = builder.config.get(CommonClientConfigKey.ConcurrencyLimitRttTolerance, DefaultClientConfigImpl.DEFAULT_CONCURRENCY_LIMIT_RTT_TOLERANCE);
+        if (builder.config.get(CommonClientConfigKey.EnableConcurrencyLimit, DefaultClientConfigImpl.DEFAULT_ENABLE_CONCURRENCY_LIMIT)) {
+            int maxLimit = getMaxConcurrentRequests();
+            concurrencyLimiter = new AdaptiveConcurrencyLimiter(initialConcurrencyLimit, 1, 
+                    maxLimit > 0 ? maxLimit : Integer.MAX_VALUE, concurrencyLimitRttTolerance);
+            Monitors.registerObject("ConcurrencyLimiter_" + lbContext.getClientName(), concurrencyLimiter);
+            serverConcurrencyLimiters = builder.config.get(CommonClientConfigKey.ConcurrencyLimitPerServer, DefaultClientConfigImpl.DEFAULT_CONCURRENCY_LIMIT_PER_SERVER)
+                    ? new ConcurrentHashMap<Server, AdaptiveConcurrencyLimiter>()
+                    : null;
+        } else {
+            concurrencyLimiter = null;
+            serverConcurrencyLimiters = null;
+        }
     }
 
     private RetryHandler getRequestRetryHandler(HttpClientRequest<?> request, IClientConfig requestConfig) {
@@ -307,6 +338,11 @@ public class LoadBalancingHttpClient<I, O> extends LoadBalancingRxClientWithPool
             
             @Override
             public Observable<HttpClientResponse<O>> call(Server server) {
+                AdaptiveConcurrencyLimiter serverLimiter = getServerConcurrencyLimiter(server);
+                if (serverLimiter != null && !serverLimiter.tryAcquire()) {
+                    return Observable.error(new ClientException(ClientException.ErrorType.CONCURRENCY_LIMIT_EXCEEDED, 
+                            "Concurrency limit of " + serverLimiter.getLimit() + " reached for server " + server));
+                }
                 HttpClient<I,O> rxClient = getOrCreateRxClient(server);
                 setHostHeader(request, server.getHost());
                 
@@ -318,7 +354,7 @@ public class LoadBalancingHttpClient<I, O> extends LoadBalancingRxClientWithPool
                     o = rxClient.submit(request);
                 }
                 
-                return o.concatMap(new Func1<HttpClientResponse<O>, Observable<HttpClientResponse<O>>>() {
+                o = o.concatMap(new Func1<HttpClientResponse<O>, Observable<HttpClientResponse<O>>>() {
                     @Override
                     public Observable<HttpClientResponse<O>> call(HttpClientResponse<O> t1) {
                         if (t1.getStatus().code()/100 == 4 || t1.getStatus().code()/100 == 5)
@@ -327,10 +363,104 @@ public class LoadBalancingHttpClient<I, O> extends LoadBalancingRxClientWithPool
                             return Observable.just(t1);
                     }
                 });
+                if (concurrencyLimiter != null) {
+                    o = adaptConcurrencyLimits(o, server, serverLimiter);
+                }
+                return o;
             }
         };
     }
     
+    private AdaptiveConcurrencyLimiter getServerConcurrencyLimiter(Server server) {
+        if (serverConcurrencyLimiters == null) {
+            return null;
+        }
+        AdaptiveConcurrencyLimiter limiter = serverConcurrencyLimiters.get(server);
+        if (limiter == null) {
+            int maxConnections = getProperty(IClientConfigKey.Keys.MaxConnectionsPerHost, null, DefaultClientConfigImpl.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+            limiter = new AdaptiveConcurrencyLimiter(Math.min(initialConcurrencyLimit, maxConnections), 1, 
+                    maxConnections, concurrencyLimitRttTolerance);
+            AdaptiveConcurrencyLimiter old = serverConcurrencyLimiters.putIfAbsent(server, limiter);
+            if (old != null) {
+                limiter = old;
+            }
+        }
+        return limiter;
+    }
+    
+    /**
+     * Feed the round trip time of an attempt on a server to the concurrency limits, and release the permit of the
+     * server when the attempt is done. The baseline round trip time is the 10th percentile response time of the server.
+     */
+    private Observable<HttpClientResponse<O>> adaptConcurrencyLimits(Observable<HttpClientResponse<O>> o, final Server server, 
+            final AdaptiveConcurrencyLimiter serverLimiter) {
+        final long start = System.currentTimeMillis();
+        final AtomicBoolean responded = new AtomicBoolean();
+        final AtomicBoolean released = new AtomicBoolean();
+        final Action0 release = new Action0() {
+            @Override
+            public void call() {
+                if (serverLimiter != null && released.compareAndSet(false, true)) {
+                    serverLimiter.release();
+                }
+            }
+        };
+        return o.doOnEach(new Observer<HttpClientResponse<O>>() {
+            @Override
+            public void onCompleted() {
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                onResponse(defaultRetryHandler.isCircuitTrippingException(e));
+            }
+
+            @Override
+            public void onNext(HttpClientResponse<O> response) {
+                onResponse(false);
+            }
+            
+            private void onResponse(boolean overloaded) {
+                if (!responded.compareAndSet(false, true)) {
+                    return;
+                }
+                long rtt = System.currentTimeMillis() - start;
+                ServerStats stats = lbContext.getServerStats(server);
+                double baseline = stats != null && stats.getResponseTimePercentileNumValues() > 0 
+                        ? stats.getResponseTime10thPercentile() : 0;
+                concurrencyLimiter.onResponse(rtt, baseline, overloaded);
+                if (serverLimiter != null) {
+                    serverLimiter.onResponse(rtt, baseline, overloaded);
+                }
+            }
+        }).doOnTerminate(release).doOnUnsubscribe(release);
+    }
+    
+    /**
+     * Take a permit of the client concurrency limit for the duration of the request, including its retries
+     */
+    private Observable<HttpClientResponse<O>> limitConcurrency(final Observable<HttpClientResponse<O>> o) {
+        return Observable.defer(new Func0<Observable<HttpClientResponse<O>>>() {
+            @Override
+            public Observable<HttpClientResponse<O>> call() {
+                if (!concurrencyLimiter.tryAcquire()) {
+                    return Observable.error(new ClientException(ClientException.ErrorType.CONCURRENCY_LIMIT_EXCEEDED, 
+                            "Concurrency limit of " + concurrencyLimiter.getLimit() + " reached for client " + lbContext.getClientName()));
+                }
+                final AtomicBoolean released = new AtomicBoolean();
+                Action0 release = new Action0() {
+                    @Override
+                    public void call() {
+                        if (released.compareAndSet(false, true)) {
+                            concurrencyLimiter.release();
+                        }
+                    }
+                };
+                return o.doOnTerminate(release).doOnUnsubscribe(release);
+            }
+        });
+    }
+    
     /** 
      * Construct an RxClient.ClientConfig from an IClientConfig
      * 
@@ -424,6 +554,9 @@ public class LoadBalancingHttpClient<I, O> extends LoadBalancingRxClientWithPool
             
             result = command.submit(requestToOperation(request, getRxClientConfig(config, rxClientConfig)));
         }
+        if (concurrencyLimiter != null) {
+            result = limitConcurrency(result);
+        }
         return result;
     }
 
@@ -524,6 +657,19 @@ public class LoadBalancingHttpClient<I, O> extends LoadBalancingRxClientWithPool
         return clientBuilder.build();
     }
     
+    @Override
+    protected HttpClient<I, O> removeClient(Server server) {
+        if (serverConcurrencyLimiters != null) {
+            serverConcurrencyLimiters.remove(server);
+        }
+        return super.removeClient(server);
+    }
+    
+    @VisibleForTesting
+    AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+    
     @VisibleForTesting
     HttpClientListener getListener() {
         return (HttpClientListener) listener;
@@ -73,7 +73,8 @@ public class NettyHttpLoadBalancerErrorHandler extends DefaultLoadBalancerRetryH
     public boolean isRetriableException(Throwable e, boolean sameServer) {
         if (e instanceof ClientException) {
             ClientException ce = (ClientException) e;
-            if (ce.getErrorType() == ClientException.ErrorType.SERVER_THROTTLED) {
+            if (ce.getErrorType() == ClientException.ErrorType.SERVER_THROTTLED
+                    || ce.getErrorType() == ClientException.ErrorType.CONCURRENCY_LIMIT_EXCEEDED) {
                 return !sameServer && retryEnabled;
             }
         }
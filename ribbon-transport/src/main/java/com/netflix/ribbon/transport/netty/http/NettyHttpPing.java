@@ -0,0 +1,326 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.ribbon.transport.netty.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelOption;
+import io.reactivex.netty.RxNetty;
+import io.reactivex.netty.protocol.http.client.HttpClient;
+import io.reactivex.netty.protocol.http.client.HttpClientRequest;
+import io.reactivex.netty.protocol.http.client.HttpClientResponse;
+
+import java.io.Closeable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.functions.Func2;
+
+import com.netflix.client.IClientConfigAware;
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.client.config.IClientConfigKey;
+import com.netflix.loadbalancer.IPing;
+import com.netflix.loadbalancer.IPingStrategy;
+import com.netflix.loadbalancer.Server;
+import com.netflix.servo.annotations.DataSourceType;
+import com.netflix.servo.annotations.Monitor;
+import com.netflix.servo.monitor.Monitors;
+
+/**
+ * A ping that checks servers with an HTTP GET request sent by RxNetty, which is also an {@link IPingStrategy}
+ * that pings all servers concurrently.
+ * <p>
+ * A server is alive if it responds with status 200 and, when expected content is configured, with a body
+ * equal to the expected content. All pings of a cycle are sent without blocking a thread per server,
+ * with at most {@code maxConcurrentPings} pings in flight. A ping which has not completed within
+ * {@code pingTimeoutMillis} marks the server as dead. Each server keeps its RxNetty client with a
+ * connection pool, so connections are reused between cycles, and clients of servers that are no longer
+ * pinged are shut down at the end of a cycle.
+ * <p>
+ * To use it, pass it as the ping of the load balancer, which then also uses it as its ping strategy and
+ * closes it when the load balancer is shut down:
+ * <pre>{@code
+ * NettyHttpPing ping = new NettyHttpPing("myclient", "/healthcheck");
+ * BaseLoadBalancer lb = new BaseLoadBalancer("myclient", rule, new LoadBalancerStats("myclient"), ping);
+ * }</pre>
+ * The {@link IPing} passed to {@link #pingServers(IPing, Server[])} is not used, all servers are pinged
+ * over HTTP by this instance.
+ * <p>
+ * It can also be selected with the NFLoadBalancerPingClassName property of a client, in which case it is
+ * configured by {@link #initWithNiwsConfig(IClientConfig)} from the properties {@link #PING_PATH_CONFIG_KEY},
+ * {@link #PING_EXPECTED_CONTENT_CONFIG_KEY}, {@link #MAX_CONCURRENT_PINGS_CONFIG_KEY} and
+ * {@link #PING_TIMEOUT_CONFIG_KEY}.
+ */
+public class NettyHttpPing implements IPing, IPingStrategy, IClientConfigAware, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyHttpPing.class);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final IClientConfigKey<String> PING_PATH_CONFIG_KEY = new CommonClientConfigKey<String>("NettyHttpPingPath") {};
+
+    public static final IClientConfigKey<String> PING_EXPECTED_CONTENT_CONFIG_KEY = new CommonClientConfigKey<String>("NettyHttpPingExpectedContent") {};
+
+    public static final IClientConfigKey<Integer> MAX_CONCURRENT_PINGS_CONFIG_KEY = new CommonClientConfigKey<Integer>("NettyHttpPingMaxConcurrentPings") {};
+
+    public static final IClientConfigKey<Integer> PING_TIMEOUT_CONFIG_KEY = new CommonClientConfigKey<Integer>("NettyHttpPingTimeout") {};
+
+    public static final String DEFAULT_PING_PATH = "/";
+
+    public static final int DEFAULT_MAX_CONCURRENT_PINGS = 100;
+
+    public static final int DEFAULT_PING_TIMEOUT_MILLIS = 2000;
+
+    // set once, by the constructor or by initWithNiwsConfig before the ping is used
+    private String name;
+    private String pingPath;
+    private String expectedContent;
+    private int maxConcurrentPings;
+    private int pingTimeoutMillis;
+
+    private final ConcurrentMap<Server, HttpClient<ByteBuf, ByteBuf>> clients =
+            new ConcurrentHashMap<Server, HttpClient<ByteBuf, ByteBuf>>();
+
+    @Monitor(name = "PingCycleDurationMillis", type = DataSourceType.GAUGE,
+            description = "Duration of the last cycle pinging all servers")
+    private final AtomicLong lastCycleDurationMillis = new AtomicLong();
+
+    @Monitor(name = "PingCycles", type = DataSourceType.COUNTER)
+    private final AtomicLong pingCycles = new AtomicLong();
+
+    @Monitor(name = "Pings", type = DataSourceType.COUNTER)
+    private final AtomicLong pings = new AtomicLong();
+
+    @Monitor(name = "PingFailures", type = DataSourceType.COUNTER,
+            description = "Pings that failed with an error or an unexpected response")
+    private final AtomicLong pingFailures = new AtomicLong();
+
+    @Monitor(name = "PingTimeouts", type = DataSourceType.COUNTER)
+    private final AtomicLong pingTimeouts = new AtomicLong();
+
+    /**
+     * Create a ping to be configured by {@link #initWithNiwsConfig(IClientConfig)}
+     */
+    public NettyHttpPing() {
+    }
+
+    public NettyHttpPing(String name, String pingPath) {
+        this(name, pingPath, null, DEFAULT_MAX_CONCURRENT_PINGS, DEFAULT_PING_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param name name of the client, used for the registered monitors
+     * @param pingPath path of the ping request, e.g. "/healthcheck"
+     * @param expectedContent content the response body must be equal to, or null to only check the status
+     * @param maxConcurrentPings maximal number of pings in flight during a cycle
+     * @param pingTimeoutMillis time after which a server that has not responded is considered dead
+     */
+    public NettyHttpPing(String name, String pingPath, String expectedContent, int maxConcurrentPings,
+            int pingTimeoutMillis) {
+        init(name, pingPath, expectedContent, maxConcurrentPings, pingTimeoutMillis);
+    }
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+        init(clientConfig.getClientName(),
+                clientConfig.get(PING_PATH_CONFIG_KEY, DEFAULT_PING_PATH),
+                clientConfig.get(PING_EXPECTED_CONTENT_CONFIG_KEY, null),
+                clientConfig.get(MAX_CONCURRENT_PINGS_CONFIG_KEY, DEFAULT_MAX_CONCURRENT_PINGS),
+                clientConfig.get(PING_TIMEOUT_CONFIG_KEY, DEFAULT_PING_TIMEOUT_MILLIS));
+    }
+
+    private void init(String name, String pingPath, String expectedContent, int maxConcurrentPings,
+            int pingTimeoutMillis) {
+        if (maxConcurrentPings < 1) {
+            throw new IllegalArgumentException("maxConcurrentPings must be positive");
+        }
+        this.name = name;
+        this.pingPath = pingPath.startsWith("/") ? pingPath : "/" + pingPath;
+        this.expectedContent = expectedContent;
+        this.maxConcurrentPings = maxConcurrentPings;
+        this.pingTimeoutMillis = pingTimeoutMillis;
+        Monitors.registerObject("NettyHttpPing_" + name, this);
+    }
+
+    @Override
+    public boolean isAlive(Server server) {
+        return ping(server).toBlocking().single();
+    }
+
+    @Override
+    public boolean[] pingServers(IPing ping, final Server[] servers) {
+        long start = System.currentTimeMillis();
+        final boolean[] results = new boolean[servers.length];
+        Observable.range(0, servers.length)
+                .flatMap(new Func1<Integer, Observable<Boolean>>() {
+                    @Override
+                    public Observable<Boolean> call(final Integer index) {
+                        return ping(servers[index]).doOnNext(new Action1<Boolean>() {
+                            @Override
+                            public void call(Boolean alive) {
+                                results[index] = alive;
+                            }
+                        });
+                    }
+                }, maxConcurrentPings)
+                .toBlocking()
+                .lastOrDefault(null);
+        removeClientsExcept(servers);
+        long duration = System.currentTimeMillis() - start;
+        lastCycleDurationMillis.set(duration);
+        pingCycles.incrementAndGet();
+        logger.debug("Pinged {} servers of {} in {} ms", servers.length, name, duration);
+        return results;
+    }
+
+    private Observable<Boolean> ping(final Server server) {
+        pings.incrementAndGet();
+        return getClient(server).submit(HttpClientRequest.<ByteBuf>createGet(pingPath))
+                .flatMap(new Func1<HttpClientResponse<ByteBuf>, Observable<Boolean>>() {
+                    @Override
+                    public Observable<Boolean> call(HttpClientResponse<ByteBuf> response) {
+                        final boolean ok = response.getStatus().code() == 200;
+                        if (expectedContent == null) {
+                            // the content must still be consumed for the connection to be reused
+                            return response.getContent().ignoreElements().map(new Func1<ByteBuf, Boolean>() {
+                                @Override
+                                public Boolean call(ByteBuf buf) {
+                                    return ok;
+                                }
+                            }).defaultIfEmpty(ok);
+                        }
+                        return response.getContent().map(new Func1<ByteBuf, String>() {
+                            @Override
+                            public String call(ByteBuf buf) {
+                                return buf.toString(UTF_8);
+                            }
+                        }).reduce("", new Func2<String, String, String>() {
+                            @Override
+                            public String call(String content, String chunk) {
+                                return content + chunk;
+                            }
+                        }).map(new Func1<String, Boolean>() {
+                            @Override
+                            public Boolean call(String content) {
+                                return ok && expectedContent.equals(content);
+                            }
+                        });
+                    }
+                })
+                .take(1)
+                .timeout(pingTimeoutMillis, TimeUnit.MILLISECONDS)
+                .doOnNext(new Action1<Boolean>() {
+                    @Override
+                    public void call(Boolean alive) {
+                        if (!alive) {
+                            pingFailures.incrementAndGet();
+                        }
+                    }
+                })
+                .onErrorReturn(new Func1<Throwable, Boolean>() {
+                    @Override
+                    public Boolean call(Throwable e) {
+                        if (e instanceof TimeoutException) {
+                            pingTimeouts.incrementAndGet();
+                        } else {
+                            pingFailures.incrementAndGet();
+                        }
+                        logger.debug("Ping of server {} failed", server, e);
+                        return false;
+                    }
+                });
+    }
+
+    private HttpClient<ByteBuf, ByteBuf> getClient(Server server) {
+        HttpClient<ByteBuf, ByteBuf> client = clients.get(server);
+        if (client == null) {
+            HttpClient<ByteBuf, ByteBuf> created = RxNetty.<ByteBuf, ByteBuf>newHttpClientBuilder(server.getHost(), server.getPort())
+                    .channelOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, pingTimeoutMillis)
+                    .build();
+            client = clients.putIfAbsent(server, created);
+            if (client == null) {
+                client = created;
+            } else {
+                created.shutdown();
+            }
+        }
+        return client;
+    }
+
+    private void removeClientsExcept(Server[] servers) {
+        Set<Server> pinged = new HashSet<Server>(Arrays.asList(servers));
+        for (Map.Entry<Server, HttpClient<ByteBuf, ByteBuf>> entry : clients.entrySet()) {
+            if (!pinged.contains(entry.getKey()) && clients.remove(entry.getKey(), entry.getValue())) {
+                entry.getValue().shutdown();
+            }
+        }
+    }
+
+    /**
+     * Duration of the last cycle of {@link #pingServers(IPing, Server[])}, in milliseconds
+     */
+    public long getLastCycleDurationMillis() {
+        return lastCycleDurationMillis.get();
+    }
+
+    public long getPingTimeoutCount() {
+        return pingTimeouts.get();
+    }
+
+    public long getPingFailureCount() {
+        return pingFailures.get();
+    }
+
+    public long getPingCycleCount() {
+        return pingCycles.get();
+    }
+
+    int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Shut down the clients of all servers
+     */
+    public void shutdown() {
+        removeClientsExcept(new Server[0]);
+        Monitors.unregisterObject("NettyHttpPing_" + name, this);
+    }
+
+    /**
+     * Same as {@link #shutdown()}, called by the load balancer that uses this ping as its ping strategy
+     */
+    @Override
+    public void close() {
+        shutdown();
+    }
+}
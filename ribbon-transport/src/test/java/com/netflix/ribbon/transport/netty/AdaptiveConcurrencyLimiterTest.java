@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.netflix.ribbon.transport.netty;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void testRejectOverLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 2.0);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejectedCount());
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    public void testAdaptToRoundTripTime() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 12, 2.0);
+        // responses well above the baseline decrease the limit down to the minimum
+        for (int i = 0; i < 50; i++) {
+            limiter.onResponse(100, 10, false);
+        }
+        assertEquals(2, limiter.getLimit());
+
+        // fast responses increase a limit that is used, up to the maximum
+        for (int i = 0; i < 200; i++) {
+            while (limiter.tryAcquire()) {
+            }
+            limiter.onResponse(15, 10, false);
+        }
+        assertEquals(12, limiter.getLimit());
+
+        // errors that indicate an overloaded server decrease the limit regardless of the round trip time
+        limiter.onResponse(1, 10, true);
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void testUnusedLimitDoesNotGrow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 2.0);
+        for (int i = 0; i < 100; i++) {
+            limiter.onResponse(10, 10, false);
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.transport.netty.http;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.reactivex.netty.protocol.http.client.HttpClientRequest;
+import io.reactivex.netty.protocol.http.client.HttpClientResponse;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+
+import com.google.common.collect.Lists;
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.MockWebServer;
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.DummyPing;
+import com.netflix.loadbalancer.Server;
+import com.netflix.ribbon.transport.netty.RibbonTransport;
+
+public class ConcurrencyLimitTest {
+
+    /**
+     * Chooses the given servers in order, then the last one
+     */
+    static class SequenceRule extends AbstractLoadBalancerRule {
+        private final Iterator<Server> servers;
+        private Server last;
+
+        SequenceRule(Server... servers) {
+            this.servers = Lists.newArrayList(servers).iterator();
+        }
+
+        @Override
+        public synchronized Server choose(Object key) {
+            if (servers.hasNext()) {
+                last = servers.next();
+            }
+            return last;
+        }
+
+        @Override
+        public void initWithNiwsConfig(IClientConfig clientConfig) {
+        }
+    }
+
+    @Test
+    public void testRejectedPostIsRetriedOnNextServer() throws Exception {
+        // throttles the first request, and never responds to the others
+        MockWebServer busyServer = new MockWebServer();
+        busyServer.enqueue(new MockResponse().setResponseCode(503));
+        busyServer.play();
+        MockWebServer goodServer = new MockWebServer();
+        goodServer.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        goodServer.enqueue(new MockResponse().setResponseCode(200).setBody("ok"));
+        goodServer.play();
+        Server busy = new Server("localhost:" + busyServer.getPort());
+        Server good = new Server("localhost:" + goodServer.getPort());
+
+        // two requests per server and three for the client, until the busy server throttles
+        IClientConfig config = DefaultClientConfigImpl.getClientConfigWithDefaultValues()
+                .set(CommonClientConfigKey.EnableConcurrencyLimit, true)
+                .set(CommonClientConfigKey.ConcurrencyLimitPerServer, true)
+                .set(CommonClientConfigKey.InitialConcurrencyLimit, 3)
+                .set(CommonClientConfigKey.MaxConnectionsPerHost, 2);
+        BaseLoadBalancer lb = new BaseLoadBalancer(new DummyPing(), new SequenceRule(busy, good, busy, busy, good));
+        lb.setServersList(Lists.newArrayList(busy, good));
+        LoadBalancingHttpClient<ByteBuf, ByteBuf> client = RibbonTransport.newHttpClient(lb, config);
+        Subscription pending = null;
+        try {
+            // lowers the limit of the busy server to one request
+            TestSubscriber<HttpClientResponse<ByteBuf>> subscriber = new TestSubscriber<HttpClientResponse<ByteBuf>>();
+            client.submit(HttpClientRequest.createPost("/throttled").withContent("content")).subscribe(subscriber);
+            subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+            subscriber.assertNoErrors();
+            assertEquals("/throttled", busyServer.takeRequest().getPath());
+            assertEquals("/throttled", goodServer.takeRequest().getPath());
+
+            pending = client.submit(HttpClientRequest.createGet("/pending"))
+                    .subscribe(new TestSubscriber<HttpClientResponse<ByteBuf>>());
+            assertEquals("/pending", busyServer.takeRequest().getPath());
+
+            // rejected by the limit of the busy server, which it never reached, so a POST may go elsewhere
+            subscriber = new TestSubscriber<HttpClientResponse<ByteBuf>>();
+            client.submit(HttpClientRequest.createPost("/rejected").withContent("content")).subscribe(subscriber);
+            subscriber.awaitTerminalEvent(5, TimeUnit.SECONDS);
+            subscriber.assertNoErrors();
+            assertEquals(200, subscriber.getOnNextEvents().get(0).getStatus().code());
+            assertEquals("/rejected", goodServer.takeRequest().getPath());
+            assertEquals(2, busyServer.getRequestCount());
+        } finally {
+            if (pending != null) {
+                pending.unsubscribe();
+            }
+            goodServer.shutdown();
+            busyServer.shutdown();
+        }
+    }
+}
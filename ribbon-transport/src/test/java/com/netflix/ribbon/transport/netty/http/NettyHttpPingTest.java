@@ -0,0 +1,102 @@
+package com.netflix.ribbon.transport.netty.http;
+
+import static org.junit.Assert.*;
+
+import java.net.ServerSocket;
+
+import org.junit.Test;
+
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.MockWebServer;
+import com.netflix.client.config.CommonClientConfigKey;
+import com.netflix.client.config.DefaultClientConfigImpl;
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.BaseLoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+public class NettyHttpPingTest {
+
+    @Test
+    public void testPingServers() throws Exception {
+        MockWebServer healthy = new MockWebServer();
+        healthy.enqueue(new MockResponse().setBody("true"));
+        healthy.enqueue(new MockResponse().setBody("true"));
+        healthy.play();
+        MockWebServer unhealthy = new MockWebServer();
+        unhealthy.enqueue(new MockResponse().setBody("false"));
+        unhealthy.play();
+        MockWebServer failing = new MockWebServer();
+        failing.enqueue(new MockResponse().setResponseCode(500).setBody("true"));
+        failing.play();
+        // accept connections but never respond
+        ServerSocket hanging1 = new ServerSocket(0);
+        ServerSocket hanging2 = new ServerSocket(0);
+
+        NettyHttpPing ping = new NettyHttpPing("NettyHttpPingTest", "/healthcheck", "true", 4, 2000);
+        try {
+            Server[] servers = {
+                    new Server("localhost", healthy.getPort()),
+                    new Server("localhost", unhealthy.getPort()),
+                    new Server("localhost", failing.getPort()),
+                    new Server("localhost", hanging1.getLocalPort()),
+                    new Server("localhost", hanging2.getLocalPort())};
+            boolean[] results = ping.pingServers(null, servers);
+            assertTrue(results[0]);
+            assertFalse(results[1]);
+            assertFalse(results[2]);
+            assertFalse(results[3]);
+            assertFalse(results[4]);
+            assertEquals(2, ping.getPingTimeoutCount());
+            assertEquals(2, ping.getPingFailureCount());
+            // the hanging servers are pinged concurrently
+            assertTrue(ping.getLastCycleDurationMillis() < 3500);
+            assertEquals("/healthcheck", healthy.takeRequest().getPath());
+
+            assertTrue(ping.isAlive(servers[0]));
+            // on the same connection
+            assertEquals(1, healthy.takeRequest().getSequenceNumber());
+        } finally {
+            ping.shutdown();
+            healthy.shutdown();
+            unhealthy.shutdown();
+            failing.shutdown();
+            hanging1.close();
+            hanging2.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSelectedByClientConfig() throws Exception {
+        MockWebServer healthy = new MockWebServer();
+        for (int i = 0; i < 10; i++) {
+            healthy.enqueue(new MockResponse().setBody("true"));
+        }
+        healthy.play();
+        IClientConfig config = DefaultClientConfigImpl.getClientConfigWithDefaultValues("NettyHttpPingConfigTest");
+        config.set(CommonClientConfigKey.NFLoadBalancerPingClassName, NettyHttpPing.class.getName());
+        config.set(NettyHttpPing.PING_PATH_CONFIG_KEY, "/healthcheck");
+        config.set(NettyHttpPing.PING_EXPECTED_CONTENT_CONFIG_KEY, "true");
+        BaseLoadBalancer lb = new BaseLoadBalancer(config);
+        NettyHttpPing ping = (NettyHttpPing) lb.getPing();
+        try {
+            assertSame(ping, lb.getPingStrategy());
+            lb.addServer(new Server("localhost", healthy.getPort()));
+            // forceQuickPing does nothing while the ping timer of the load balancer is pinging
+            while (ping.getPingCycleCount() == 0 || ping.getClientCount() == 0) {
+                lb.forceQuickPing();
+                Thread.sleep(10);
+            }
+            assertEquals("/healthcheck", healthy.takeRequest().getPath());
+            while (lb.isPingInProgress()) {
+                Thread.sleep(10);
+            }
+
+            // the load balancer shuts down the clients of its ping strategy
+            lb.shutdown();
+            assertEquals(0, ping.getClientCount());
+        } finally {
+            lb.shutdown();
+            healthy.shutdown();
+        }
+    }
+}
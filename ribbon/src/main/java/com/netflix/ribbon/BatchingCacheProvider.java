@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * A {@link CacheProvider} that collects the lookups of concurrent requests and fetches them from the cache
+ * with one bulk get, for caches where a round trip costs much more than a key. A batch is opened by the first
+ * lookup and fetched when the batch window has passed or it holds the maximum number of keys, whichever comes
+ * first. The values are then delivered to the {@link Observable} of each lookup; a key missing from the result
+ * of the bulk get is a cache miss, and a failed bulk get fails all lookups of the batch.
+ * <p>
+ * Lookups that are unsubscribed before their batch is fetched are removed from the batch. The request
+ * properties are not passed to the bulk get, as the lookups of a batch may come from different requests.
+ * <p>
+ * {@link #shutdown()} stops the batch window timer; lookups made after it fail with an
+ * {@link IllegalStateException}.
+ *
+ * @param <T> type of the cached values
+ */
+public abstract class BatchingCacheProvider<T> implements CacheProvider<T> {
+
+    private final long batchWindowMillis;
+    private final int maxBatchSize;
+    private final Scheduler.Worker worker;
+
+    private final Object lock = new Object();
+    // the batch collecting lookups, guarded by lock
+    private Batch current;
+
+    private class Batch {
+        final Map<String, List<Subscriber<? super T>>> lookups = new LinkedHashMap<String, List<Subscriber<? super T>>>();
+        Subscription timer;
+    }
+
+    protected BatchingCacheProvider(long batchWindowMillis, int maxBatchSize) {
+        this(batchWindowMillis, maxBatchSize, Schedulers.computation());
+    }
+
+    protected BatchingCacheProvider(long batchWindowMillis, int maxBatchSize, Scheduler scheduler) {
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.worker = scheduler.createWorker();
+    }
+
+    /**
+     * Get the values of the keys from the cache
+     *
+     * @return The values that are cached, which may be emitted as one or more maps. Keys that are not
+     *      in any of the maps are cache misses.
+     */
+    protected abstract Observable<Map<String, T>> getBulk(Collection<String> keys);
+
+    /**
+     * @return the error that a lookup of a key that is not in the cache fails with
+     */
+    protected Throwable createMissException(String key) {
+        return new NoSuchElementException("No value cached for key " + key);
+    }
+
+    @Override
+    public Observable<T> get(final String key, Map<String, Object> requestProperties) {
+        return Observable.create(new OnSubscribe<T>() {
+            @Override
+            public void call(Subscriber<? super T> subscriber) {
+                addLookup(key, subscriber);
+            }
+        });
+    }
+
+    private void addLookup(final String key, final Subscriber<? super T> subscriber) {
+        Batch full = null;
+        final Batch batch;
+        synchronized (lock) {
+            if (worker.isUnsubscribed()) {
+                batch = null;
+            } else {
+                batch = openBatch();
+                List<Subscriber<? super T>> subscribers = batch.lookups.get(key);
+                if (subscribers == null) {
+                    subscribers = new ArrayList<Subscriber<? super T>>(1);
+                    batch.lookups.put(key, subscribers);
+                }
+                subscribers.add(subscriber);
+                if (batch.lookups.size() >= maxBatchSize) {
+                    current = null;
+                    full = batch;
+                }
+            }
+        }
+        if (batch == null) {
+            subscriber.onError(new IllegalStateException("The cache provider is shut down"));
+            return;
+        }
+        subscriber.add(Subscriptions.create(new Action0() {
+            @Override
+            public void call() {
+                removeLookup(batch, key, subscriber);
+            }
+        }));
+        if (full != null) {
+            full.timer.unsubscribe();
+            fetch(full);
+        }
+    }
+
+    // called with lock held
+    private Batch openBatch() {
+        if (current == null) {
+            final Batch opened = new Batch();
+            opened.timer = worker.schedule(new Action0() {
+                @Override
+                public void call() {
+                    flush(opened);
+                }
+            }, batchWindowMillis, TimeUnit.MILLISECONDS);
+            current = opened;
+        }
+        return current;
+    }
+
+    private void removeLookup(Batch batch, String key, Subscriber<? super T> subscriber) {
+        synchronized (lock) {
+            // the lookups of a batch that is being fetched are no longer changed
+            if (batch != current) {
+                return;
+            }
+            List<Subscriber<? super T>> subscribers = batch.lookups.get(key);
+            if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                batch.lookups.remove(key);
+            }
+        }
+    }
+
+    private void flush(Batch batch) {
+        synchronized (lock) {
+            if (batch != current) {
+                // already fetched because it was full
+                return;
+            }
+            current = null;
+        }
+        fetch(batch);
+    }
+
+    /**
+     * Fetch the batch that is open, if any, and stop the batch window timer
+     */
+    public void shutdown() {
+        Batch open;
+        synchronized (lock) {
+            open = current;
+            current = null;
+            worker.unsubscribe();
+        }
+        if (open != null) {
+            open.timer.unsubscribe();
+            fetch(open);
+        }
+    }
+
+    private void fetch(final Batch batch) {
+        if (batch.lookups.isEmpty()) {
+            return;
+        }
+        Observable<Map<String, T>> result;
+        try {
+            result = getBulk(batch.lookups.keySet());
+        } catch (RuntimeException e) {
+            result = Observable.error(e);
+        }
+        result.subscribe(new Subscriber<Map<String, T>>() {
+            private final Map<String, T> values = new HashMap<String, T>();
+
+            @Override
+            public void onNext(Map<String, T> map) {
+                values.putAll(map);
+            }
+
+            @Override
+            public void onCompleted() {
+                for (Map.Entry<String, List<Subscriber<? super T>>> entry : batch.lookups.entrySet()) {
+                    T value = values.get(entry.getKey());
+                    for (Subscriber<? super T> subscriber : entry.getValue()) {
+                        if (subscriber.isUnsubscribed()) {
+                            continue;
+                        }
+                        if (value == null) {
+                            subscriber.onError(createMissException(entry.getKey()));
+                        } else {
+                            subscriber.onNext(value);
+                            subscriber.onCompleted();
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                for (List<Subscriber<? super T>> subscribers : batch.lookups.values()) {
+                    for (Subscriber<? super T> subscriber : subscribers) {
+                        subscriber.onError(e);
+                    }
+                }
+            }
+        });
+    }
+}
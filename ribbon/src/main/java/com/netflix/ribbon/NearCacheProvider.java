@@ -0,0 +1,532 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Weigher;
+
+/**
+ * An in-process cache, which can be used alone, with values added by {@link #put(String, Object)}, or in front of
+ * a remote {@link CacheProvider} to save its round trips for the most frequently used keys.
+ * <p>
+ * The size of the cache is bounded by the total weight of the entries, as measured in bytes by a {@link Weigher}.
+ * Entries are evicted with the W-TinyLFU policy: a new entry is first added to a small LRU window, and when it is
+ * evicted from the window, it is only admitted to the main space if its key has been looked up more often recently
+ * than the key of the entry it would evict, as estimated by a {@link FrequencySketch}. The main space is a
+ * segmented LRU, where entries that are hit again are protected from eviction. This keeps popular entries cached
+ * when a burst of keys that are looked up only once passes through.
+ * <p>
+ * Each entry expires after its time to live. If a stale while revalidate period is set, an expired entry is still
+ * returned during that period while it is reloaded from the remote provider in the background. Concurrent lookups
+ * of a key that is not cached share one load from the remote provider, which is not canceled when one of them
+ * is unsubscribed.
+ * <p>
+ * Cached values are shared by all requests, so they should be immutable. A {@link ByteBuf} value is retained while
+ * it is cached, and each lookup receives a duplicate with its own reader index, which is retained while it is
+ * emitted and released afterwards, like the content of a response. A lookup of a key that is not cached, without
+ * a remote provider, fails with a {@link NoSuchElementException}.
+ *
+ * @param <T> type of the cached values
+ */
+public class NearCacheProvider<T> implements CacheProvider<T> {
+
+    /**
+     * Estimates the bytes taken by an entry of strings, byte arrays or {@link ByteBuf}s. Other values are
+     * counted as a fixed number of bytes, so a weigher that knows the values should be used for them.
+     */
+    public static class SizeEstimatingWeigher implements Weigher<String, Object> {
+        private static final int ENTRY_OVERHEAD = 96;
+        private static final int OBJECT_SIZE = 64;
+
+        @Override
+        public int weigh(String key, Object value) {
+            int size = ENTRY_OVERHEAD + 2 * key.length();
+            if (value instanceof CharSequence) {
+                size += 2 * ((CharSequence) value).length();
+            } else if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            } else if (value instanceof ByteBuf) {
+                size += ((ByteBuf) value).capacity();
+            } else {
+                size += OBJECT_SIZE;
+            }
+            return size;
+        }
+    }
+
+    public static class Builder<T> {
+        private CacheProvider<T> remoteCacheProvider;
+        private long maximumWeight = -1;
+        private Weigher<String, ? super T> weigher;
+        private long timeToLiveNanos = -1;
+        private long staleWhileRevalidateNanos;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * Look up the keys that are not cached in the remote cache provider, and cache the values found
+         */
+        public Builder<T> withRemoteCacheProvider(CacheProvider<T> remoteCacheProvider) {
+            this.remoteCacheProvider = remoteCacheProvider;
+            return this;
+        }
+
+        /**
+         * @param maximumWeight the maximum total weight of the entries, in bytes
+         * @param weigher the weight of each entry, in bytes
+         */
+        public Builder<T> withMaximumWeight(long maximumWeight, Weigher<String, ? super T> weigher) {
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Time to live of the entries that do not have their own
+         */
+        public Builder<T> withTimeToLive(long duration, TimeUnit unit) {
+            this.timeToLiveNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Period after an entry expires during which it is still returned while it is reloaded from the
+         * remote cache provider
+         */
+        public Builder<T> withStaleWhileRevalidate(long duration, TimeUnit unit) {
+            this.staleWhileRevalidateNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public Builder<T> withTicker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        public NearCacheProvider<T> build() {
+            if (maximumWeight <= 0 || weigher == null) {
+                throw new IllegalArgumentException("Maximum weight and weigher are not defined");
+            }
+            if (timeToLiveNanos <= 0) {
+                throw new IllegalArgumentException("Time to live is not defined");
+            }
+            return new NearCacheProvider<T>(this);
+        }
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<T>();
+    }
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Node<T> {
+        final String key;
+        final T value;
+        final int weight;
+        final long expiresAt;
+        int queue;
+        Node<T> prev;
+        Node<T> next;
+
+        Node(String key, T value, int weight, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Access ordered list of the entries, with the least recently used first
+     */
+    private static final class AccessQueue<T> {
+        final Node<T> head = new Node<T>(null, null, 0, 0);
+        long weight;
+
+        AccessQueue() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        Node<T> first() {
+            return head.next == head ? null : head.next;
+        }
+
+        void add(Node<T> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<T> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToEnd(Node<T> node) {
+            remove(node);
+            add(node);
+        }
+    }
+
+    private final CacheProvider<T> remoteCacheProvider;
+    private final Weigher<String, ? super T> weigher;
+    private final long timeToLiveNanos;
+    private final long staleWhileRevalidateNanos;
+    private final Ticker ticker;
+    private final long maxWindowWeight;
+    private final long maxMainWeight;
+    private final long maxProtectedWeight;
+
+    private final ConcurrentMap<String, Load> loads = new ConcurrentHashMap<String, Load>();
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private final Map<String, Node<T>> data = new HashMap<String, Node<T>>();
+    private final AccessQueue<T> window = new AccessQueue<T>();
+    private final AccessQueue<T> probation = new AccessQueue<T>();
+    private final AccessQueue<T> protectedQueue = new AccessQueue<T>();
+    private final FrequencySketch sketch = new FrequencySketch(64);
+
+    private NearCacheProvider(Builder<T> builder) {
+        this.remoteCacheProvider = builder.remoteCacheProvider;
+        this.weigher = builder.weigher;
+        this.timeToLiveNanos = builder.timeToLiveNanos;
+        this.staleWhileRevalidateNanos = builder.staleWhileRevalidateNanos;
+        this.ticker = builder.ticker;
+        this.maxWindowWeight = Math.max(1, builder.maximumWeight / 100);
+        this.maxMainWeight = builder.maximumWeight - maxWindowWeight;
+        this.maxProtectedWeight = maxMainWeight * 80 / 100;
+    }
+
+    @Override
+    public Observable<T> get(final String key, final Map<String, Object> requestProperties) {
+        return Observable.create(new OnSubscribe<T>() {
+            @Override
+            public void call(Subscriber<? super T> subscriber) {
+                while (true) {
+                    T value = null;
+                    boolean stale = false;
+                    long now = ticker.read();
+                    synchronized (lock) {
+                        sketch.increment(key);
+                        Node<T> node = data.get(key);
+                        if (node != null) {
+                            if (now - node.expiresAt < 0) {
+                                value = share(node.value);
+                            } else if (remoteCacheProvider != null && now - node.expiresAt < staleWhileRevalidateNanos) {
+                                value = share(node.value);
+                                stale = true;
+                            } else {
+                                remove(node);
+                            }
+                            if (value != null) {
+                                onAccess(node);
+                            }
+                        }
+                    }
+                    if (value != null) {
+                        if (stale) {
+                            // the stale entry is returned until it is no longer valid, whatever the reload results in
+                            joinLoad(key, requestProperties, new Subscriber<T>() {
+                                @Override
+                                public void onCompleted() {
+                                }
+
+                                @Override
+                                public void onError(Throwable e) {
+                                }
+
+                                @Override
+                                public void onNext(T t) {
+                                }
+                            });
+                        }
+                        emit(subscriber, value);
+                        subscriber.onCompleted();
+                        return;
+                    } else if (remoteCacheProvider == null) {
+                        subscriber.onError(new NoSuchElementException("No value cached for key " + key));
+                        return;
+                    } else if (joinLoad(key, requestProperties, subscriber)) {
+                        return;
+                    }
+                    // the load completed just now, so the value may be cached
+                }
+            }
+        });
+    }
+
+    /**
+     * Cache the value with the time to live of the cache
+     */
+    public void put(String key, T value) {
+        put(key, value, timeToLiveNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cache the value with its own time to live. The value may not be cached if the cache is full and the key
+     * is used less often than the keys of the entries it would evict. A {@link ByteBuf} value is retained by
+     * the cache, so the caller still owns its reference.
+     */
+    public void put(String key, T value, long timeToLive, TimeUnit unit) {
+        int weight = weigher.weigh(key, value);
+        long expiresAt = ticker.read() + unit.toNanos(timeToLive);
+        synchronized (lock) {
+            Node<T> node = data.get(key);
+            if (node != null) {
+                remove(node);
+            }
+            if (weight > maxMainWeight) {
+                return;
+            }
+            retain(value);
+            if (data.size() >= sketch.capacity()) {
+                sketch.ensureCapacity(2 * sketch.capacity());
+            }
+            node = new Node<T>(key, value, weight, expiresAt);
+            node.queue = WINDOW;
+            data.put(key, node);
+            window.add(node);
+            while (window.weight > maxWindowWeight) {
+                Node<T> candidate = window.first();
+                window.remove(candidate);
+                admit(candidate);
+            }
+        }
+    }
+
+    public void invalidate(String key) {
+        synchronized (lock) {
+            Node<T> node = data.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        }
+    }
+
+    public long getWeight() {
+        synchronized (lock) {
+            return window.weight + probation.weight + protectedQueue.weight;
+        }
+    }
+
+    public int getSize() {
+        synchronized (lock) {
+            return data.size();
+        }
+    }
+
+    /**
+     * Join the load of the key from the remote cache provider, starting one if there is none
+     *
+     * @return false if the load completed just now, before it could be joined
+     */
+    private boolean joinLoad(String key, Map<String, Object> requestProperties, Subscriber<? super T> subscriber) {
+        Load load = loads.get(key);
+        if (load == null) {
+            Load created = new Load(key);
+            load = loads.putIfAbsent(key, created);
+            if (load == null) {
+                // joined before it is started, as the remote cache provider may complete it synchronously
+                created.join(subscriber);
+                remoteCacheProvider.get(key, requestProperties).subscribe(created);
+                return true;
+            }
+        }
+        return load.join(subscriber);
+    }
+
+    /**
+     * A load of a key from the remote cache provider, shared by the lookups that join it before it completes
+     */
+    private final class Load extends Subscriber<T> {
+        private final String key;
+        // guarded by this
+        private final List<Subscriber<? super T>> subscribers = new ArrayList<Subscriber<? super T>>(1);
+        private T value;
+        private boolean done;
+
+        Load(String key) {
+            this.key = key;
+        }
+
+        synchronized boolean join(Subscriber<? super T> subscriber) {
+            if (done) {
+                return false;
+            }
+            if (value != null) {
+                emit(subscriber, share(value));
+            }
+            subscribers.add(subscriber);
+            return true;
+        }
+
+        @Override
+        public synchronized void onNext(T t) {
+            retain(t);
+            release(value);
+            value = t;
+            for (Subscriber<? super T> subscriber : subscribers) {
+                emit(subscriber, share(t));
+            }
+        }
+
+        @Override
+        public synchronized void onCompleted() {
+            done = true;
+            // cached before the load is removed, so that a lookup always finds one of them
+            if (value != null) {
+                put(key, value);
+            }
+            loads.remove(key, this);
+            for (Subscriber<? super T> subscriber : subscribers) {
+                subscriber.onCompleted();
+            }
+            release(value);
+            value = null;
+        }
+
+        @Override
+        public synchronized void onError(Throwable e) {
+            done = true;
+            loads.remove(key, this);
+            for (Subscriber<? super T> subscriber : subscribers) {
+                subscriber.onError(e);
+            }
+            release(value);
+            value = null;
+        }
+    }
+
+    /**
+     * Emit a shared value, and release it once it has been emitted
+     */
+    private static <T> void emit(Subscriber<? super T> subscriber, T shared) {
+        try {
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onNext(shared);
+            }
+        } finally {
+            release(shared);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T share(T value) {
+        if (value instanceof ByteBuf) {
+            return (T) ((ByteBuf) value).duplicate().retain();
+        }
+        return value;
+    }
+
+    private static void retain(Object value) {
+        if (value instanceof ByteBuf) {
+            ((ByteBuf) value).retain();
+        }
+    }
+
+    private static void release(Object value) {
+        if (value instanceof ByteBuf) {
+            ((ByteBuf) value).release();
+        }
+    }
+
+    /**
+     * Move a candidate evicted from the window into the main space, if it is used more often than the
+     * entries it would evict from the main space
+     */
+    private void admit(Node<T> candidate) {
+        long now = ticker.read();
+        while (probation.weight + protectedQueue.weight + candidate.weight > maxMainWeight) {
+            Node<T> victim = probation.first();
+            if (victim == null) {
+                victim = protectedQueue.first();
+            }
+            boolean expired = now - victim.expiresAt >= staleWhileRevalidateNanos;
+            if (expired || sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                remove(victim);
+            } else {
+                data.remove(candidate.key);
+                release(candidate.value);
+                return;
+            }
+        }
+        candidate.queue = PROBATION;
+        probation.add(candidate);
+    }
+
+    private void onAccess(Node<T> node) {
+        switch (node.queue) {
+        case WINDOW:
+            window.moveToEnd(node);
+            break;
+        case PROBATION:
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedQueue.add(node);
+            while (protectedQueue.weight > maxProtectedWeight) {
+                Node<T> demoted = protectedQueue.first();
+                protectedQueue.remove(demoted);
+                demoted.queue = PROBATION;
+                probation.add(demoted);
+            }
+            break;
+        default:
+            protectedQueue.moveToEnd(node);
+        }
+    }
+
+    private void remove(Node<T> node) {
+        data.remove(node.key);
+        release(node.value);
+        switch (node.queue) {
+        case WINDOW:
+            window.remove(node);
+            break;
+        case PROBATION:
+            probation.remove(node);
+            break;
+        default:
+            protectedQueue.remove(node);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.codec;
+
+import io.netty.buffer.ByteBuf;
+import rx.Observable;
+
+/**
+ * Decodes the content of a response, as received from the transport, into typed objects.
+ * <p>
+ * The buffers of the content are released by the transport after they are emitted, so a decoder must retain
+ * a buffer it keeps beyond the call of {@code onNext}, and release it when it is done.
+ *
+ * @param <T> type of the decoded objects
+ */
+public interface ContentDecoder<T> {
+
+    Observable<T> decode(Observable<ByteBuf> content);
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+
+import rx.Observable;
+import rx.exceptions.Exceptions;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+import com.netflix.serialization.Deserializer;
+import com.netflix.serialization.TypeDef;
+
+/**
+ * A {@link ContentDecoder} that deserializes the whole content into a single object with a {@link Deserializer}.
+ * The buffers of the content are retained and combined into a composite buffer as they arrive, without
+ * copying, and the deserializer reads them through a {@link ByteBufInputStream} once the content is complete.
+ *
+ * @param <T> type of the deserialized object
+ */
+public class DeserializingContentDecoder<T> implements ContentDecoder<T> {
+
+    private final Deserializer<T> deserializer;
+    private final TypeDef<T> type;
+
+    public DeserializingContentDecoder(Deserializer<T> deserializer, TypeDef<T> type) {
+        this.deserializer = deserializer;
+        this.type = type;
+    }
+
+    @Override
+    public Observable<T> decode(final Observable<ByteBuf> content) {
+        return Observable.using(new Func0<CompositeByteBuf>() {
+            @Override
+            public CompositeByteBuf call() {
+                return Unpooled.compositeBuffer(Integer.MAX_VALUE);
+            }
+        }, new Func1<CompositeByteBuf, Observable<T>>() {
+            @Override
+            public Observable<T> call(final CompositeByteBuf aggregate) {
+                return content.doOnNext(new Action1<ByteBuf>() {
+                    @Override
+                    public void call(ByteBuf buf) {
+                        append(aggregate, buf);
+                    }
+                }).count().map(new Func1<Integer, T>() {
+                    @Override
+                    public T call(Integer chunks) {
+                        return deserialize(deserializer, type, aggregate);
+                    }
+                });
+            }
+        }, new Action1<CompositeByteBuf>() {
+            @Override
+            public void call(CompositeByteBuf aggregate) {
+                aggregate.release();
+            }
+        });
+    }
+
+    /**
+     * Add a retained buffer to a composite buffer, without copying
+     */
+    static void append(CompositeByteBuf aggregate, ByteBuf buf) {
+        int length = buf.readableBytes();
+        if (length > 0) {
+            aggregate.addComponent(buf.retain());
+            aggregate.writerIndex(aggregate.writerIndex() + length);
+        }
+    }
+
+    static <T> T deserialize(Deserializer<T> deserializer, TypeDef<T> type, ByteBuf buf) {
+        try {
+            return deserializer.deserialize(new ByteBufInputStream(buf), type);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
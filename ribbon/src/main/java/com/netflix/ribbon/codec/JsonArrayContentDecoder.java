@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import rx.Observable;
+import rx.exceptions.Exceptions;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+import com.netflix.serialization.Deserializer;
+import com.netflix.serialization.TypeDef;
+
+/**
+ * A {@link ContentDecoder} for content that is a JSON array, which emits each element of the array as soon
+ * as it has been received, instead of waiting for the whole content.
+ * <p>
+ * The content is scanned as the buffers arrive to find the boundaries of the elements, keeping track of
+ * nesting and strings. The bytes of an element are retained without copying, also when an element spans
+ * several buffers, and each complete element is deserialized with a {@link Deserializer} for the element type.
+ *
+ * @param <T> type of the elements of the array
+ */
+public class JsonArrayContentDecoder<T> implements ContentDecoder<T> {
+
+    private final Deserializer<T> deserializer;
+    private final TypeDef<T> elementType;
+
+    public JsonArrayContentDecoder(Deserializer<T> deserializer, TypeDef<T> elementType) {
+        this.deserializer = deserializer;
+        this.elementType = elementType;
+    }
+
+    @Override
+    public Observable<T> decode(final Observable<ByteBuf> content) {
+        return Observable.using(new Func0<Splitter>() {
+            @Override
+            public Splitter call() {
+                return new Splitter();
+            }
+        }, new Func1<Splitter, Observable<T>>() {
+            @Override
+            public Observable<T> call(final Splitter splitter) {
+                return content.flatMapIterable(new Func1<ByteBuf, Iterable<T>>() {
+                    @Override
+                    public Iterable<T> call(ByteBuf buf) {
+                        return splitter.split(buf);
+                    }
+                }).concatWith(Observable.defer(new Func0<Observable<T>>() {
+                    @Override
+                    public Observable<T> call() {
+                        if (!splitter.isComplete()) {
+                            return Observable.error(new IOException("Content ended before the end of the JSON array"));
+                        }
+                        return Observable.empty();
+                    }
+                }));
+            }
+        }, new Action1<Splitter>() {
+            @Override
+            public void call(Splitter splitter) {
+                splitter.release();
+            }
+        });
+    }
+
+    private enum State {
+        BEFORE_ARRAY, ARRAY_START, BEFORE_ELEMENT, IN_ELEMENT, AFTER_ARRAY
+    }
+
+    /**
+     * Finds the elements in the buffers of one response
+     */
+    private class Splitter {
+        private State state = State.BEFORE_ARRAY;
+        // nesting of objects and arrays within the current element
+        private int depth;
+        private boolean inString;
+        private boolean escaped;
+        // the beginning of the current element received in previous buffers
+        private CompositeByteBuf pending;
+
+        List<T> split(ByteBuf buf) {
+            List<T> elements = null;
+            int start = buf.readerIndex();
+            int end = buf.writerIndex();
+            for (int i = start; i < end; i++) {
+                byte b = buf.getByte(i);
+                switch (state) {
+                    case BEFORE_ARRAY:
+                        if (b == '[') {
+                            state = State.ARRAY_START;
+                        } else if (!isWhitespace(b)) {
+                            throw Exceptions.propagate(new IOException("Content is not a JSON array"));
+                        }
+                        break;
+                    case ARRAY_START:
+                    case BEFORE_ELEMENT:
+                        if (b == ']' && state == State.ARRAY_START) {
+                            state = State.AFTER_ARRAY;
+                        } else if (b == ',' || b == ']') {
+                            // "[,", ",," or ",]"
+                            throw Exceptions.propagate(new IOException("Missing element in the JSON array"));
+                        } else if (!isWhitespace(b)) {
+                            state = State.IN_ELEMENT;
+                            start = i;
+                            i--; // scan the first byte of the element again
+                        }
+                        break;
+                    case IN_ELEMENT:
+                        if (inString) {
+                            if (escaped) {
+                                escaped = false;
+                            } else if (b == '\\') {
+                                escaped = true;
+                            } else if (b == '"') {
+                                inString = false;
+                            }
+                        } else if (b == '"') {
+                            inString = true;
+                        } else if (b == '{' || b == '[') {
+                            depth++;
+                        } else if (depth > 0 && (b == '}' || b == ']')) {
+                            depth--;
+                        } else if (depth == 0 && (b == ',' || b == ']')) {
+                            if (elements == null) {
+                                elements = new ArrayList<T>();
+                            }
+                            elements.add(completeElement(buf, start, i));
+                            state = b == ']' ? State.AFTER_ARRAY : State.BEFORE_ELEMENT;
+                        }
+                        break;
+                    case AFTER_ARRAY:
+                        if (!isWhitespace(b)) {
+                            throw Exceptions.propagate(new IOException("Unexpected content after the JSON array"));
+                        }
+                        break;
+                }
+            }
+            if (state == State.IN_ELEMENT && start < end) {
+                if (pending == null) {
+                    pending = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+                }
+                DeserializingContentDecoder.append(pending, buf.slice(start, end - start));
+            }
+            return elements == null ? Collections.<T>emptyList() : elements;
+        }
+
+        private T completeElement(ByteBuf buf, int start, int end) {
+            if (pending == null) {
+                return DeserializingContentDecoder.deserialize(deserializer, elementType, buf.slice(start, end - start));
+            }
+            CompositeByteBuf element = pending;
+            pending = null;
+            try {
+                DeserializingContentDecoder.append(element, buf.slice(start, end - start));
+                return DeserializingContentDecoder.deserialize(deserializer, elementType, element);
+            } finally {
+                element.release();
+            }
+        }
+
+        boolean isComplete() {
+            return state == State.AFTER_ARRAY;
+        }
+
+        void release() {
+            if (pending != null) {
+                pending.release();
+                pending = null;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
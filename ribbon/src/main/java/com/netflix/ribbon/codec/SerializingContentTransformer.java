@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.reactivex.netty.channel.ContentTransformer;
+
+import java.io.IOException;
+
+import rx.exceptions.Exceptions;
+
+import com.netflix.serialization.Serializer;
+import com.netflix.serialization.TypeDef;
+
+/**
+ * A {@link ContentTransformer} that serializes objects with a {@link Serializer} straight into a direct buffer
+ * of the channel's allocator, which is pooled by default, through a {@link ByteBufOutputStream}.
+ * <p>
+ * To use it for the content of a proxy method, annotated with
+ * {@link com.netflix.ribbon.proxy.annotation.ContentTransformerClass}, create a subclass with a default
+ * constructor:
+ * <pre>{@code
+ * public class MovieTransformer extends SerializingContentTransformer<Movie> {
+ *     public MovieTransformer() {
+ *         super(JacksonCodec.<Movie>getInstance(), TypeDef.fromClass(Movie.class));
+ *     }
+ * }
+ * }</pre>
+ *
+ * @param <T> type of the serialized objects
+ */
+public class SerializingContentTransformer<T> implements ContentTransformer<T> {
+
+    private final Serializer<T> serializer;
+    private final TypeDef<?> type;
+
+    public SerializingContentTransformer(Serializer<T> serializer, TypeDef<?> type) {
+        this.serializer = serializer;
+        this.type = type;
+    }
+
+    @Override
+    public ByteBuf call(T toTransform, ByteBufAllocator byteBufAllocator) {
+        ByteBuf buf = byteBufAllocator.directBuffer();
+        try {
+            serializer.serialize(new ByteBufOutputStream(buf), toTransform, type);
+            return buf;
+        } catch (IOException e) {
+            buf.release();
+            throw Exceptions.propagate(e);
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+}
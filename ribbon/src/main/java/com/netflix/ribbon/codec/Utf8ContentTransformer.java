@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.reactivex.netty.channel.ContentTransformer;
+
+/**
+ * A {@link ContentTransformer} that encodes strings as UTF-8 directly into a direct buffer of the channel's
+ * allocator, which is pooled by default, sized to the exact length of the encoded string. Unlike
+ * {@link io.reactivex.netty.channel.StringTransformer}, no intermediate {@code byte[]} is created.
+ */
+public class Utf8ContentTransformer implements ContentTransformer<String> {
+
+    public static final Utf8ContentTransformer INSTANCE = new Utf8ContentTransformer();
+
+    @Override
+    public ByteBuf call(String toTransform, ByteBufAllocator byteBufAllocator) {
+        ByteBuf buf = byteBufAllocator.directBuffer(utf8Length(toTransform));
+        writeUtf8(buf, toTransform);
+        return buf;
+    }
+
+    static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // 4 bytes for the pair
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    static void writeUtf8(ByteBuf buf, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buf.writeByte(c);
+            } else if (c < 0x800) {
+                buf.writeByte(0xc0 | (c >> 6));
+                buf.writeByte(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf.writeByte(0xf0 | (codePoint >> 18));
+                buf.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                buf.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                buf.writeByte(0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, encoded as '?' like String.getBytes()
+                buf.writeByte('?');
+            } else {
+                buf.writeByte(0xe0 | (c >> 12));
+                buf.writeByte(0x80 | ((c >> 6) & 0x3f));
+                buf.writeByte(0x80 | (c & 0x3f));
+            }
+        }
+    }
+}
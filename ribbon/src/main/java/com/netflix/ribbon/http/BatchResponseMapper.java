@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.http;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Splits the response of a batch request into the results of the individual requests collapsed into it,
+ * see {@link HttpRequestCollapser}.
+ *
+ * @param <B> type of the batch response
+ * @param <T> type of the results of the individual requests
+ */
+public interface BatchResponseMapper<B, T> {
+
+    /**
+     * @param batchResponse a response of the batch request. A {@link io.netty.buffer.ByteBuf} response is
+     *      released after this call returns.
+     * @param keys keys of the individual requests in the batch
+     * @return results of the individual requests by their keys. An individual request whose key is not in the
+     *      results of any response fails with {@link java.util.NoSuchElementException}.
+     */
+    Map<String, T> mapResponse(B batchResponse, Collection<String> keys);
+}
@@ -21,12 +21,15 @@ import com.netflix.ribbon.RequestWithMetaData;
 import com.netflix.ribbon.RibbonRequest;
 import com.netflix.ribbon.hystrix.CacheObservableCommand;
 import com.netflix.ribbon.hystrix.HystrixObservableCommandChain;
+import com.netflix.ribbon.template.ParsedTemplate;
 import com.netflix.ribbon.template.TemplateParser;
 import com.netflix.ribbon.template.TemplateParsingException;
 import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpMethod;
 import io.reactivex.netty.protocol.http.client.HttpClient;
 import io.reactivex.netty.protocol.http.client.HttpClientRequest;
 import rx.Observable;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.subjects.ReplaySubject;
 
@@ -80,14 +83,21 @@ class HttpRequest<T> implements RibbonRequest<T> {
         requestProperties = new HashMap<String, Object>(requestBuilder.requestProperties());
         if (requestBuilder.cacheProvider() != null) {
             CacheProvider<T> provider = requestBuilder.cacheProvider().getProvider();
-            String key = TemplateParser.toData(this.requestProperties, requestBuilder.cacheProvider().getKeyTemplate());
+            ParsedTemplate keyTemplate = requestBuilder.cacheProvider().getKeyTemplate();
+            String key;
+            if (hystrixCacheKey != null && keyTemplate == requestBuilder.template().hystrixCacheKeyTemplate()) {
+                // both keys are built from the same template
+                key = hystrixCacheKey;
+            } else {
+                key = TemplateParser.toData(this.requestProperties, keyTemplate);
+            }
             cacheProvider = new CacheProviderWithKey<T>(provider, key);
         } else {
             cacheProvider = null;
         }
         template = requestBuilder.template();
-        if (!ByteBuf.class.isAssignableFrom(template.getClassType())) {
-            throw new IllegalArgumentException("Return type other than ByteBuf is not currently supported as serialization functionality is still work in progress");
+        if (!ByteBuf.class.isAssignableFrom(template.getClassType()) && template.contentDecoder() == null) {
+            throw new IllegalArgumentException("Return type other than ByteBuf requires a content decoder on the template or a deserializer on the resource group");
         }
     }
 
@@ -98,13 +108,22 @@ class HttpRequest<T> implements RibbonRequest<T> {
                     requestProperties, template.cacheHystrixProperties()));
         }
         commands.add(new HttpResourceObservableCommand<T>(client, httpRequest, hystrixCacheKey, requestProperties, template.fallbackHandler(),
-                template.responseValidator(), template.getClassType(), template.hystrixProperties()));
+                template.responseValidator(), template.getClassType(), template.contentDecoder(), template.hystrixProperties()));
 
         return new HystrixObservableCommandChain<T>(commands);
     }
 
     @Override
     public Observable<T> toObservable() {
+        RequestCoalescer<T> coalescer = template.requestCoalescer();
+        if (coalescer != null && hystrixCacheKey != null && HttpMethod.GET.equals(template.method())) {
+            return coalescer.coalesce(hystrixCacheKey, new Func0<Observable<T>>() {
+                @Override
+                public Observable<T> call() {
+                    return createHystrixCommandChain().toObservable();
+                }
+            });
+        }
         return createHystrixCommandChain().toObservable();
     }
 
@@ -100,7 +100,7 @@ public class HttpRequestBuilder<T> extends RequestBuilder<T> {
     HttpClientRequest<ByteBuf> createClientRequest() {
         String uri;
         try {
-            uri = TemplateParser.toData(vars, parsedUriTemplate.getTemplate(), parsedUriTemplate.getParsed());
+            uri = TemplateParser.toData(vars, parsedUriTemplate);
         } catch (TemplateParsingException e) {
             throw new HystrixBadRequestException("Problem parsing the URI template", e);
         }
@@ -0,0 +1,324 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.http;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subjects.ReplaySubject;
+
+import com.netflix.hystrix.HystrixInvokableInfo;
+import com.netflix.ribbon.BatchingCacheProvider;
+import com.netflix.ribbon.RequestTemplate.RequestBuilder;
+import com.netflix.ribbon.RequestWithMetaData;
+import com.netflix.ribbon.RibbonRequest;
+import com.netflix.ribbon.RibbonResponse;
+
+/**
+ * Collapses the individual requests made within a time window into one request of a batch template, comparable
+ * to Hystrix's HystrixCollapser. Each individual request is identified by a key, the value of its key request
+ * property. A batch is opened by the first request and executed when the batch window has passed or it holds the
+ * maximum number of keys, whichever comes first. The keys of the batch, joined by the separator, are the value
+ * of the batch request property of the batch request, for example <code>/movies?ids={ids}</code>. The response is
+ * then split into the results of the individual requests by the {@link BatchResponseMapper}.
+ * <p>
+ * Individual requests with the same key share a result. A failed batch request fails all individual requests of
+ * the batch. Request properties other than the key are not passed to the batch request, as a batch holds the
+ * requests of different callers. For the same reason the metadata of an individual request holds no Hystrix
+ * information; the batch request is executed by a command of the batch template.
+ * <p>
+ * {@link #shutdown()} stops the batch window timer once the collapser is no longer used.
+ *
+ * @param <B> type of the batch response
+ * @param <T> type of the results of the individual requests
+ */
+public class HttpRequestCollapser<B, T> {
+
+    public static final long DEFAULT_BATCH_WINDOW_MILLIS = 10;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final String DEFAULT_SEPARATOR = ",";
+
+    public static class Builder<B, T> {
+        private final HttpRequestTemplate<B> batchTemplate;
+        private String keyProperty;
+        private String batchProperty;
+        private String separator = DEFAULT_SEPARATOR;
+        private long batchWindowMillis = DEFAULT_BATCH_WINDOW_MILLIS;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private BatchResponseMapper<B, T> responseMapper;
+        private Scheduler scheduler = Schedulers.computation();
+
+        private Builder(HttpRequestTemplate<B> batchTemplate) {
+            this.batchTemplate = batchTemplate;
+        }
+
+        public static <B, T> Builder<B, T> newBuilder(HttpRequestTemplate<B> batchTemplate) {
+            return new Builder<B, T>(batchTemplate);
+        }
+
+        /**
+         * Request property whose value is the key of an individual request
+         */
+        public Builder<B, T> withKeyProperty(String keyProperty) {
+            this.keyProperty = keyProperty;
+            return this;
+        }
+
+        /**
+         * Request property of the batch template whose value is the joined keys of a batch. Defaults to the
+         * key property.
+         */
+        public Builder<B, T> withBatchProperty(String batchProperty) {
+            this.batchProperty = batchProperty;
+            return this;
+        }
+
+        public Builder<B, T> withSeparator(String separator) {
+            this.separator = separator;
+            return this;
+        }
+
+        public Builder<B, T> withBatchWindow(long duration, TimeUnit unit) {
+            this.batchWindowMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder<B, T> withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder<B, T> withResponseMapper(BatchResponseMapper<B, T> responseMapper) {
+            this.responseMapper = responseMapper;
+            return this;
+        }
+
+        /**
+         * Scheduler of the batch windows, the computation scheduler by default
+         */
+        public Builder<B, T> withScheduler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public HttpRequestCollapser<B, T> build() {
+            if (batchTemplate == null) {
+                throw new IllegalArgumentException("Batch template is not defined");
+            }
+            if (keyProperty == null) {
+                throw new IllegalArgumentException("Key property is not defined");
+            }
+            if (responseMapper == null) {
+                throw new IllegalArgumentException("Response mapper is not defined");
+            }
+            if (batchWindowMillis < 0 || maxBatchSize <= 0) {
+                throw new IllegalArgumentException("Batch window must not be negative and maximum batch size must be positive");
+            }
+            return new HttpRequestCollapser<B, T>(this);
+        }
+    }
+
+    private final HttpRequestTemplate<B> batchTemplate;
+    private final String keyProperty;
+    private final String batchProperty;
+    private final String separator;
+    private final BatchResponseMapper<B, T> responseMapper;
+    private final Batcher batcher;
+
+    private HttpRequestCollapser(Builder<B, T> builder) {
+        batchTemplate = builder.batchTemplate;
+        keyProperty = builder.keyProperty;
+        batchProperty = builder.batchProperty != null ? builder.batchProperty : builder.keyProperty;
+        separator = builder.separator;
+        responseMapper = builder.responseMapper;
+        batcher = new Batcher(builder.batchWindowMillis, builder.maxBatchSize, builder.scheduler);
+    }
+
+    /**
+     * @return a builder of individual requests, which requires the key property
+     */
+    public RequestBuilder<T> requestBuilder() {
+        return new CollapsedRequestBuilder();
+    }
+
+    /**
+     * Execute the batch that is open, if any, and stop the batch window timer. Requests made after
+     * the shutdown fail with an {@link IllegalStateException}.
+     */
+    public void shutdown() {
+        batcher.shutdown();
+    }
+
+    private class Batcher extends BatchingCacheProvider<T> {
+
+        Batcher(long batchWindowMillis, int maxBatchSize, Scheduler scheduler) {
+            super(batchWindowMillis, maxBatchSize, scheduler);
+        }
+
+        @Override
+        protected Observable<Map<String, T>> getBulk(Collection<String> keys) {
+            final List<String> batchKeys = new ArrayList<String>(keys);
+            StringBuilder joined = new StringBuilder();
+            for (String key : batchKeys) {
+                if (joined.length() > 0) {
+                    joined.append(separator);
+                }
+                joined.append(key);
+            }
+            return batchTemplate.requestBuilder()
+                    .withRequestProperty(batchProperty, joined.toString())
+                    .build()
+                    .toObservable()
+                    .map(new Func1<B, Map<String, T>>() {
+                        @Override
+                        public Map<String, T> call(B batchResponse) {
+                            Map<String, T> results = responseMapper.mapResponse(batchResponse, batchKeys);
+                            return results != null ? results : new HashMap<String, T>();
+                        }
+                    });
+        }
+
+        @Override
+        protected Throwable createMissException(String key) {
+            return new NoSuchElementException("No result for key " + key + " in the response of " + batchTemplate.name());
+        }
+    }
+
+    private class CollapsedRequestBuilder extends RequestBuilder<T> {
+        private Object key;
+
+        @Override
+        public RequestBuilder<T> withRequestProperty(String name, Object value) {
+            if (keyProperty.equals(name)) {
+                key = value;
+            }
+            return this;
+        }
+
+        @Override
+        public RibbonRequest<T> build() {
+            if (key == null) {
+                throw new IllegalArgumentException("Request property " + keyProperty + " is not defined");
+            }
+            return new CollapsedRequest(String.valueOf(key));
+        }
+    }
+
+    private class CollapsedRequest implements RibbonRequest<T> {
+        private final String key;
+
+        CollapsedRequest(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public T execute() {
+            return toObservable().toBlocking().last();
+        }
+
+        @Override
+        public Future<T> queue() {
+            return toObservable().toBlocking().toFuture();
+        }
+
+        @Override
+        public Observable<T> observe() {
+            ReplaySubject<T> subject = ReplaySubject.create();
+            toObservable().subscribe(subject);
+            return subject;
+        }
+
+        @Override
+        public Observable<T> toObservable() {
+            return batcher.get(key, null);
+        }
+
+        @Override
+        public RequestWithMetaData<T> withMetadata() {
+            return new CollapsedMetaRequest(this);
+        }
+    }
+
+    private class CollapsedMetaRequest implements RequestWithMetaData<T> {
+        private final CollapsedRequest request;
+
+        CollapsedMetaRequest(CollapsedRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public Observable<RibbonResponse<Observable<T>>> observe() {
+            return Observable.<RibbonResponse<Observable<T>>>just(new CollapsedResponse<Observable<T>>(request.observe()));
+        }
+
+        @Override
+        public Observable<RibbonResponse<Observable<T>>> toObservable() {
+            return Observable.defer(new Func0<Observable<RibbonResponse<Observable<T>>>>() {
+                @Override
+                public Observable<RibbonResponse<Observable<T>>> call() {
+                    return observe();
+                }
+            });
+        }
+
+        @Override
+        public Future<RibbonResponse<T>> queue() {
+            return request.toObservable().map(new Func1<T, RibbonResponse<T>>() {
+                @Override
+                public RibbonResponse<T> call(T content) {
+                    return new CollapsedResponse<T>(content);
+                }
+            }).toBlocking().toFuture();
+        }
+
+        @Override
+        public RibbonResponse<T> execute() {
+            return new CollapsedResponse<T>(request.execute());
+        }
+    }
+
+    private static class CollapsedResponse<R> extends RibbonResponse<R> {
+        private final R content;
+
+        CollapsedResponse(R content) {
+            this.content = content;
+        }
+
+        @Override
+        public R content() {
+            return content;
+        }
+
+        /**
+         * @return null, as the request has no command of its own
+         */
+        @Override
+        public HystrixInvokableInfo<?> getHystrixInfo() {
+            return null;
+        }
+    }
+}
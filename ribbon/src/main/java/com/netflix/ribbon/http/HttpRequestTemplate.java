@@ -25,8 +25,12 @@ import com.netflix.ribbon.CacheProvider;
 import com.netflix.ribbon.RequestTemplate;
 import com.netflix.ribbon.ResourceGroup.TemplateBuilder;
 import com.netflix.ribbon.ResponseValidator;
+import com.netflix.ribbon.codec.ContentDecoder;
+import com.netflix.ribbon.codec.DeserializingContentDecoder;
 import com.netflix.ribbon.hystrix.FallbackHandler;
 import com.netflix.ribbon.template.ParsedTemplate;
+import com.netflix.serialization.Deserializer;
+import com.netflix.serialization.TypeDef;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -66,6 +70,8 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
         private Setter setter;
         private Map<String, ParsedTemplate> parsedTemplates;
         private ResponseValidator<HttpClientResponse<ByteBuf>> validator;
+        private ContentDecoder<T> contentDecoder;
+        private boolean coalesceRequests;
 
         private Builder(String name, HttpResourceGroup resourceGroup, Class<? extends T> classType) {
             this.name = name;
@@ -124,6 +130,26 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
             return this;
         }
 
+        /**
+         * Decoder of the response content into the result type. If not set, and the result type is not
+         * {@link ByteBuf}, the content is deserialized with the {@link Deserializer} of the resource group.
+         */
+        public Builder<T> withContentDecoder(ContentDecoder<T> contentDecoder) {
+            this.contentDecoder = contentDecoder;
+            return this;
+        }
+
+        /**
+         * Share one execution among the concurrent GET requests with the same request cache key, across all
+         * request contexts, see {@link #withRequestCacheKey(String)}. The key is released when the execution
+         * completes, so a request that comes after it starts a new execution. Requests made with
+         * {@link com.netflix.ribbon.RibbonRequest#withMetadata()} are not coalesced.
+         */
+        public Builder<T> withRequestCoalescing() {
+            this.coalesceRequests = true;
+            return this;
+        }
+
         public  Builder<T> withHeader(String name, String value) {
             headers.add(name, value);
             return this;
@@ -137,7 +163,11 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
         }
 
         public HttpRequestTemplate<T> build() {
-            return new HttpRequestTemplate<T>(name, resourceGroup, classType, setter, method, headers, parsedUriTemplate, fallbackHandler, validator, cacheProvider, cacheKeyTemplate);
+            if (coalesceRequests && cacheKeyTemplate == null) {
+                throw new IllegalArgumentException("Request coalescing requires a request cache key");
+            }
+            return new HttpRequestTemplate<T>(name, resourceGroup, classType, setter, method, headers, parsedUriTemplate, fallbackHandler, validator, cacheProvider, cacheKeyTemplate,
+                    contentDecoder, coalesceRequests);
         }
     }
 
@@ -156,6 +186,8 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
     private final int concurrentRequestLimit;
     private final HttpHeaders headers;
     private final HttpResourceGroup group;
+    private final ContentDecoder<T> contentDecoder;
+    private final RequestCoalescer<T> requestCoalescer;
 
     public static class CacheProviderWithKeyTemplate<T> {
         private final ParsedTemplate keyTemplate;
@@ -177,6 +209,20 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
                         HttpMethod method, HttpHeaders headers, ParsedTemplate uriTemplate,
                         FallbackHandler<T> fallbackHandler, ResponseValidator<HttpClientResponse<ByteBuf>> validator, CacheProviderWithKeyTemplate<T> cacheProvider,
                         ParsedTemplate hystrixCacheKeyTemplate) {
+        this(name, group, classType, setter, method, headers, uriTemplate, fallbackHandler, validator, cacheProvider, hystrixCacheKeyTemplate, null);
+    }
+
+    protected HttpRequestTemplate(String name, HttpResourceGroup group, Class<? extends T> classType, HystrixObservableCommand.Setter setter,
+                        HttpMethod method, HttpHeaders headers, ParsedTemplate uriTemplate,
+                        FallbackHandler<T> fallbackHandler, ResponseValidator<HttpClientResponse<ByteBuf>> validator, CacheProviderWithKeyTemplate<T> cacheProvider,
+                        ParsedTemplate hystrixCacheKeyTemplate, ContentDecoder<T> contentDecoder) {
+        this(name, group, classType, setter, method, headers, uriTemplate, fallbackHandler, validator, cacheProvider, hystrixCacheKeyTemplate, contentDecoder, false);
+    }
+
+    protected HttpRequestTemplate(String name, HttpResourceGroup group, Class<? extends T> classType, HystrixObservableCommand.Setter setter,
+                        HttpMethod method, HttpHeaders headers, ParsedTemplate uriTemplate,
+                        FallbackHandler<T> fallbackHandler, ResponseValidator<HttpClientResponse<ByteBuf>> validator, CacheProviderWithKeyTemplate<T> cacheProvider,
+                        ParsedTemplate hystrixCacheKeyTemplate, ContentDecoder<T> contentDecoder, boolean coalesceRequests) {
         this.group = group;
         this.name = name;
         this.classType = classType;
@@ -188,6 +234,8 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
         this.hystrixCacheKeyTemplate = hystrixCacheKeyTemplate;
         this.client = group.getClient();
         this.headers = headers;
+        this.contentDecoder = contentDecoder != null ? contentDecoder : createContentDecoder(group, classType);
+        this.requestCoalescer = coalesceRequests ? new RequestCoalescer<T>() : null;
         if (client instanceof LoadBalancingRxClient) {
             LoadBalancingRxClient ribbonClient = (LoadBalancingRxClient) client;
             maxResponseTime = ribbonClient.getResponseTimeOut();
@@ -218,6 +266,14 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static <T> ContentDecoder<T> createContentDecoder(HttpResourceGroup group, Class<? extends T> classType) {
+        if (ByteBuf.class.isAssignableFrom(classType) || group.getDeserializer() == null) {
+            return null;
+        }
+        return new DeserializingContentDecoder<T>((Deserializer<T>) group.getDeserializer(), (TypeDef<T>) TypeDef.fromClass(classType));
+    }
+
     @Override
     public HttpRequestBuilder<T> requestBuilder() {
         return new HttpRequestBuilder<T>(this);
@@ -243,6 +299,14 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
         return parsedUriTemplate;
     }
 
+    protected final ContentDecoder<T> contentDecoder() {
+        return contentDecoder;
+    }
+
+    final RequestCoalescer<T> requestCoalescer() {
+        return requestCoalescer;
+    }
+
     protected final HttpMethod method() {
         return method;
     }
@@ -262,7 +326,8 @@ public class HttpRequestTemplate<T> extends RequestTemplate<T, HttpClientRespons
 
     @Override
     public HttpRequestTemplate<T> copy(String name) {
-        HttpRequestTemplate<T> newTemplate = new HttpRequestTemplate<T>(name, group, classType, setter, method, headers, parsedUriTemplate, fallbackHandler, validator, cacheProvider, hystrixCacheKeyTemplate);
+        HttpRequestTemplate<T> newTemplate = new HttpRequestTemplate<T>(name, group, classType, setter, method, headers, parsedUriTemplate, fallbackHandler, validator, cacheProvider, hystrixCacheKeyTemplate,
+                contentDecoder, requestCoalescer != null);
         return newTemplate;
     }
 
@@ -19,6 +19,7 @@ import com.netflix.client.config.ClientConfigFactory;
 import com.netflix.ribbon.ClientOptions;
 import com.netflix.ribbon.ResourceGroup;
 import com.netflix.ribbon.RibbonTransportFactory;
+import com.netflix.serialization.Deserializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -27,6 +28,7 @@ import io.reactivex.netty.protocol.http.client.HttpClient;
 public class HttpResourceGroup extends ResourceGroup<HttpRequestTemplate<?>> {
     private final HttpClient<ByteBuf, ByteBuf> client;
     private final HttpHeaders headers;
+    private final Deserializer<?> deserializer;
 
     public static class Builder extends GroupBuilder<HttpResourceGroup> {
         private ClientOptions clientOptions;
@@ -34,6 +36,7 @@ public class HttpResourceGroup extends ResourceGroup<HttpRequestTemplate<?>> {
         private ClientConfigFactory clientConfigFactory;
         private RibbonTransportFactory transportFactory;
         private String name;
+        private Deserializer<?> deserializer;
 
         private Builder(String name, ClientConfigFactory configFactory, RibbonTransportFactory transportFactory) {
             this.name = name;
@@ -56,9 +59,18 @@ public class HttpResourceGroup extends ResourceGroup<HttpRequestTemplate<?>> {
             return this;
         }
 
+        /**
+         * Deserializer used by the templates of this group whose result type is not {@link ByteBuf}, unless
+         * the template has its own {@link com.netflix.ribbon.codec.ContentDecoder}
+         */
+        public Builder withDeserializer(Deserializer<?> deserializer) {
+            this.deserializer = deserializer;
+            return this;
+        }
+
         @Override
         public HttpResourceGroup build() {
-            return new HttpResourceGroup(name, clientOptions, clientConfigFactory, transportFactory, httpHeaders);
+            return new HttpResourceGroup(name, clientOptions, clientConfigFactory, transportFactory, httpHeaders, deserializer);
         }
     }
 
@@ -66,12 +78,19 @@ public class HttpResourceGroup extends ResourceGroup<HttpRequestTemplate<?>> {
         super(groupName, ClientOptions.create(), ClientConfigFactory.DEFAULT, RibbonTransportFactory.DEFAULT);
         client = transportFactory.newHttpClient(getClientConfig());
         headers = HttpHeaders.EMPTY_HEADERS;
+        deserializer = null;
     }
 
     protected HttpResourceGroup(String groupName, ClientOptions options, ClientConfigFactory configFactory, RibbonTransportFactory transportFactory, HttpHeaders headers) {
+        this(groupName, options, configFactory, transportFactory, headers, null);
+    }
+
+    protected HttpResourceGroup(String groupName, ClientOptions options, ClientConfigFactory configFactory, RibbonTransportFactory transportFactory, HttpHeaders headers,
+                                Deserializer<?> deserializer) {
         super(groupName, options, configFactory, transportFactory);
         client = transportFactory.newHttpClient(getClientConfig());
         this.headers = headers;
+        this.deserializer = deserializer;
     }
 
     @Override
@@ -83,6 +102,14 @@ public class HttpResourceGroup extends ResourceGroup<HttpRequestTemplate<?>> {
         return HttpRequestTemplate.Builder.newBuilder(name, this, ByteBuf.class);
     }
 
+    /**
+     * Create a builder of a collapser of individual requests into requests of the batch template,
+     * see {@link HttpRequestCollapser}
+     */
+    public <B, T> HttpRequestCollapser.Builder<B, T> newCollapserBuilder(HttpRequestTemplate<B> batchTemplate) {
+        return HttpRequestCollapser.Builder.newBuilder(batchTemplate);
+    }
+
     public final HttpHeaders getHeaders() {
         return headers;
     }
@@ -90,4 +117,8 @@ public class HttpResourceGroup extends ResourceGroup<HttpRequestTemplate<?>> {
     public final HttpClient<ByteBuf, ByteBuf> getClient() {
         return client;
     }
+
+    public final Deserializer<?> getDeserializer() {
+        return deserializer;
+    }
 }
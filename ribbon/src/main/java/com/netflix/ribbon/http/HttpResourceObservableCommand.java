@@ -20,6 +20,7 @@ import com.netflix.hystrix.exception.HystrixBadRequestException;
 import com.netflix.ribbon.ResponseValidator;
 import com.netflix.ribbon.ServerError;
 import com.netflix.ribbon.UnsuccessfulResponseException;
+import com.netflix.ribbon.codec.ContentDecoder;
 import com.netflix.ribbon.hystrix.FallbackHandler;
 import io.netty.buffer.ByteBuf;
 import io.reactivex.netty.protocol.http.client.HttpClient;
@@ -39,6 +40,7 @@ public class HttpResourceObservableCommand<T> extends HystrixObservableCommand<T
     private final FallbackHandler<T> fallbackHandler;
     private final Class<? extends T> classType;
     private final ResponseValidator<HttpClientResponse<ByteBuf>> validator;
+    private final ContentDecoder<T> contentDecoder;
 
     public HttpResourceObservableCommand(HttpClient<ByteBuf, ByteBuf> httpClient,
                                          HttpClientRequest<ByteBuf> httpRequest, String hystrixCacheKey,
@@ -47,7 +49,19 @@ public class HttpResourceObservableCommand<T> extends HystrixObservableCommand<T
                                          ResponseValidator<HttpClientResponse<ByteBuf>> validator,
                                          Class<? extends T> classType,
                                          HystrixObservableCommand.Setter setter) {
+        this(httpClient, httpRequest, hystrixCacheKey, requestProperties, fallbackHandler, validator, classType, null, setter);
+    }
+
+    public HttpResourceObservableCommand(HttpClient<ByteBuf, ByteBuf> httpClient,
+                                         HttpClientRequest<ByteBuf> httpRequest, String hystrixCacheKey,
+                                         Map<String, Object> requestProperties,
+                                         FallbackHandler<T> fallbackHandler,
+                                         ResponseValidator<HttpClientResponse<ByteBuf>> validator,
+                                         Class<? extends T> classType,
+                                         ContentDecoder<T> contentDecoder,
+                                         HystrixObservableCommand.Setter setter) {
         super(setter);
+        this.contentDecoder = contentDecoder;
         this.httpClient = httpClient;
         this.fallbackHandler = fallbackHandler;
         this.validator = validator;
@@ -96,6 +110,9 @@ public class HttpResourceObservableCommand<T> extends HystrixObservableCommand<T
         return httpResponseObservable.flatMap(new Func1<HttpClientResponse<ByteBuf>, Observable<T>>() {
             @Override
             public Observable<T> call(HttpClientResponse<ByteBuf> t1) {
+                if (contentDecoder != null) {
+                    return contentDecoder.decode(t1.getContent());
+                }
                 return t1.getContent().map(new Func1<ByteBuf, T>() {
                     @Override
                     public T call(ByteBuf t1) {
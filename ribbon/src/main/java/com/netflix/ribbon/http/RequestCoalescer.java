@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.http;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Shares one execution among the concurrent requests with the same key, across all request contexts. The first
+ * request with a key starts the execution, and the requests with the same key that come before it completes
+ * receive the same results, including those already emitted. The key is released when the execution completes,
+ * so a later request starts a new execution. The execution is canceled when all its requests are unsubscribed.
+ * <p>
+ * A {@link ByteBuf} result is retained until the execution completes, and each request receives a duplicate
+ * with its own reader index, which shares the reference count of the result.
+ *
+ * @param <T> type of the results
+ */
+class RequestCoalescer<T> {
+
+    private final ConcurrentMap<String, Execution> executions = new ConcurrentHashMap<String, Execution>();
+
+    Observable<T> coalesce(final String key, final Func0<Observable<T>> executionFactory) {
+        return Observable.create(new OnSubscribe<T>() {
+            @Override
+            public void call(Subscriber<? super T> subscriber) {
+                while (true) {
+                    Execution execution = executions.get(key);
+                    if (execution == null) {
+                        Execution created = new Execution(key);
+                        execution = executions.putIfAbsent(key, created);
+                        if (execution == null) {
+                            created.join(subscriber);
+                            if (!created.isUnsubscribed()) {
+                                executionFactory.call().subscribe(created);
+                            }
+                            return;
+                        }
+                    }
+                    if (execution.join(subscriber)) {
+                        return;
+                    }
+                    // completed just now
+                    executions.remove(key, execution);
+                }
+            }
+        });
+    }
+
+    int getExecutionCount() {
+        return executions.size();
+    }
+
+    private class Execution extends Subscriber<T> {
+        private final String key;
+        // modified while guarded by this, and copied on write as a subscriber may leave while receiving a result
+        private final List<Subscriber<? super T>> subscribers = new CopyOnWriteArrayList<Subscriber<? super T>>();
+        // guarded by this
+        private final List<T> results = new ArrayList<T>(1);
+        private boolean done;
+
+        Execution(String key) {
+            this.key = key;
+        }
+
+        boolean join(final Subscriber<? super T> subscriber) {
+            synchronized (this) {
+                if (done) {
+                    return false;
+                }
+                subscribers.add(subscriber);
+                for (T result : results) {
+                    subscriber.onNext(share(result));
+                }
+            }
+            subscriber.add(Subscriptions.create(new Action0() {
+                @Override
+                public void call() {
+                    leave(subscriber);
+                }
+            }));
+            return true;
+        }
+
+        private void leave(Subscriber<? super T> subscriber) {
+            synchronized (this) {
+                if (done || !subscribers.remove(subscriber) || !subscribers.isEmpty()) {
+                    return;
+                }
+                done = true;
+                releaseResults();
+            }
+            executions.remove(key, this);
+            unsubscribe();
+        }
+
+        @Override
+        public void onNext(T result) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (result instanceof ByteBuf) {
+                    ((ByteBuf) result).retain();
+                }
+                results.add(result);
+                for (Subscriber<? super T> subscriber : subscribers) {
+                    subscriber.onNext(share(result));
+                }
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+            executions.remove(key, this);
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                for (Subscriber<? super T> subscriber : subscribers) {
+                    subscriber.onCompleted();
+                }
+                releaseResults();
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            executions.remove(key, this);
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                for (Subscriber<? super T> subscriber : subscribers) {
+                    subscriber.onError(e);
+                }
+                releaseResults();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private T share(T result) {
+            if (result instanceof ByteBuf) {
+                return (T) ((ByteBuf) result).duplicate();
+            }
+            return result;
+        }
+
+        private void releaseResults() {
+            for (T result : results) {
+                if (result instanceof ByteBuf) {
+                    ((ByteBuf) result).release();
+                }
+            }
+            results.clear();
+        }
+    }
+}
@@ -16,22 +16,30 @@
 package com.netflix.ribbon.proxy;
 
 import com.netflix.ribbon.RibbonRequest;
+import com.netflix.ribbon.codec.Utf8ContentTransformer;
 import com.netflix.ribbon.http.HttpRequestBuilder;
+import com.netflix.ribbon.http.HttpRequestTemplate;
 import com.netflix.ribbon.http.HttpRequestTemplate.Builder;
 import com.netflix.ribbon.http.HttpResourceGroup;
 import com.netflix.ribbon.proxy.processor.AnnotationProcessor;
 import com.netflix.ribbon.proxy.processor.AnnotationProcessorsProvider;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.reactivex.netty.channel.ContentTransformer;
 import io.reactivex.netty.channel.StringTransformer;
 import rx.Observable;
 
 import java.lang.reflect.Method;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * Executes the calls of a single proxy method. The {@link HttpRequestTemplate} of the method is built once,
+ * when the proxy is created, and the mapping of method arguments to template variables is precomputed,
+ * so a call only creates the request from the template.
+ *
  * @author Tomasz Bak
  */
 class MethodTemplateExecutor {
@@ -46,30 +54,47 @@ class MethodTemplateExecutor {
     private static final ContentTransformer<byte[]> BYTE_ARRAY_TRANSFORMER = new ContentTransformer<byte[]>() {
         @Override
         public ByteBuf call(byte[] toTransform, ByteBufAllocator byteBufAllocator) {
-            ByteBuf byteBuf = byteBufAllocator.buffer(toTransform.length);
-            byteBuf.writeBytes(toTransform);
-            return byteBuf;
+            return Unpooled.wrappedBuffer(toTransform);
         }
     };
 
-    private static final StringTransformer STRING_TRANSFORMER = new StringTransformer();
+    // strings are sent in the default charset, as by RxNetty's StringTransformer; UTF-8 is encoded without a copy
+    private static final ContentTransformer<String> STRING_TRANSFORMER = Charset.forName("UTF-8").equals(Charset.defaultCharset())
+            ? Utf8ContentTransformer.INSTANCE : new StringTransformer();
 
     private final HttpResourceGroup httpResourceGroup;
     private final MethodTemplate methodTemplate;
-    private final Builder<?> httpRequestTemplateBuilder;
+    private final HttpRequestTemplate<?> httpRequestTemplate;
+    private final String[] paramNames;
+    private final int[] paramPositions;
+    private final ContentTransformer<?> contentTransformer;
 
     MethodTemplateExecutor(HttpResourceGroup httpResourceGroup, MethodTemplate methodTemplate, AnnotationProcessorsProvider annotations) {
         this.httpResourceGroup = httpResourceGroup;
         this.methodTemplate = methodTemplate;
-        httpRequestTemplateBuilder = createHttpRequestTemplateBuilder();
+        Builder<?> httpRequestTemplateBuilder = createHttpRequestTemplateBuilder();
         for (AnnotationProcessor processor: annotations.getProcessors()) {
             processor.process(methodTemplate.getTemplateName(), httpRequestTemplateBuilder, methodTemplate.getMethod());
         }
+        // Hystrix reads the command properties of a template only once per command key, so a template built
+        // for every call would not pick up dynamic property changes either
+        httpRequestTemplate = httpRequestTemplateBuilder.build();
+
+        int length = methodTemplate.getParamSize();
+        paramNames = new String[length];
+        paramPositions = new int[length];
+        for (int i = 0; i < length; i++) {
+            paramNames[i] = methodTemplate.getParamName(i);
+            paramPositions[i] = methodTemplate.getParamPosition(i);
+        }
+        // transformers are expected to be stateless, so one instance serves all calls of the method
+        Class<? extends ContentTransformer<?>> contentTransformerClass = methodTemplate.getContentTransformerClass();
+        contentTransformer = contentTransformerClass == null ? null : Utils.newInstance(contentTransformerClass);
     }
 
     @SuppressWarnings("unchecked")
     public <O> RibbonRequest<O> executeFromTemplate(Object[] args) {
-        HttpRequestBuilder<?> requestBuilder = httpRequestTemplateBuilder.build().requestBuilder();
+        HttpRequestBuilder<?> requestBuilder = httpRequestTemplate.requestBuilder();
         withParameters(requestBuilder, args);
         withContent(requestBuilder, args);
 
@@ -93,11 +118,8 @@ class MethodTemplateExecutor {
     }
 
     private void withParameters(HttpRequestBuilder<?> requestBuilder, Object[] args) {
-        int length = methodTemplate.getParamSize();
-        for (int i = 0; i < length; i++) {
-            String name = methodTemplate.getParamName(i);
-            Object value = args[methodTemplate.getParamPosition(i)];
-            requestBuilder.withRequestProperty(name, value);
+        for (int i = 0; i < paramNames.length; i++) {
+            requestBuilder.withRequestProperty(paramNames[i], args[paramPositions[i]]);
         }
     }
 
@@ -111,8 +133,7 @@ class MethodTemplateExecutor {
             if (ByteBuf.class.isAssignableFrom(methodTemplate.getGenericContentType())) {
                 requestBuilder.withContent((Observable<ByteBuf>) contentValue); 
             } else {
-                ContentTransformer contentTransformer = Utils.newInstance(methodTemplate.getContentTransformerClass());
-                requestBuilder.withRawContentSource((Observable) contentValue, contentTransformer);
+                requestBuilder.withRawContentSource((Observable) contentValue, (ContentTransformer) contentTransformer);
             }
         } else if (contentValue instanceof ByteBuf) {
             requestBuilder.withRawContentSource(Observable.just((ByteBuf) contentValue), BYTE_BUF_TRANSFORMER);
@@ -121,8 +142,7 @@ class MethodTemplateExecutor {
         } else if (contentValue instanceof String) {
             requestBuilder.withRawContentSource(Observable.just((String) contentValue), STRING_TRANSFORMER);
         } else {
-            ContentTransformer contentTransformer = Utils.newInstance(methodTemplate.getContentTransformerClass());
-            requestBuilder.withRawContentSource(Observable.just(contentValue), contentTransformer);
+            requestBuilder.withRawContentSource(Observable.just(contentValue), (ContentTransformer) contentTransformer);
         }
     }
 
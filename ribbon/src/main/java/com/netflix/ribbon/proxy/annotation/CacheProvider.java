@@ -29,4 +29,9 @@ public @interface CacheProvider {
     String key();
 
     Class<? extends CacheProviderFactory<?>> provider();
+
+    /**
+     * If defined, the values are cached in process by a near cache in front of the provider
+     */
+    NearCache[] nearCache() default {};
 }
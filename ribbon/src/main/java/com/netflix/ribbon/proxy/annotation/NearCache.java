@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.proxy.annotation;
+
+import com.google.common.cache.Weigher;
+import com.netflix.ribbon.NearCacheProvider;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Settings of a {@link NearCacheProvider} placed in front of the provider of a {@link CacheProvider} annotation.
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NearCache {
+
+    /**
+     * Maximum total size of the entries in bytes, as measured by the weigher
+     */
+    long maxBytes();
+
+    /**
+     * Time to live of the entries in milliseconds
+     */
+    long ttl();
+
+    /**
+     * Period in milliseconds after an entry expires during which it is still returned while it is reloaded
+     */
+    long staleWhileRevalidate() default 0;
+
+    /**
+     * Defaults to {@link NearCacheProvider.SizeEstimatingWeigher}
+     */
+    Class<? extends Weigher<String, ?>>[] weigher() default {};
+}
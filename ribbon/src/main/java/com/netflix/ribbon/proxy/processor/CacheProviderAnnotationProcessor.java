@@ -1,13 +1,18 @@
 package com.netflix.ribbon.proxy.processor;
 
+import com.google.common.cache.Weigher;
 import com.netflix.ribbon.CacheProviderFactory;
+import com.netflix.ribbon.NearCacheProvider;
 import com.netflix.ribbon.ResourceGroup.GroupBuilder;
 import com.netflix.ribbon.ResourceGroup.TemplateBuilder;
 import com.netflix.ribbon.RibbonResourceFactory;
+import com.netflix.ribbon.proxy.ProxyAnnotationException;
 import com.netflix.ribbon.proxy.Utils;
 import com.netflix.ribbon.proxy.annotation.CacheProvider;
+import com.netflix.ribbon.proxy.annotation.NearCache;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Allen Wang
@@ -18,10 +23,36 @@ public class CacheProviderAnnotationProcessor implements AnnotationProcessor<Gro
         CacheProvider annotation = method.getAnnotation(CacheProvider.class);
         if (annotation != null) {
             CacheProviderFactory<?> factory = Utils.newInstance(annotation.provider());
-            templateBuilder.withCacheProvider(annotation.key(), factory.createCacheProvider());
+            com.netflix.ribbon.CacheProvider<?> provider = factory.createCacheProvider();
+            NearCache[] nearCaches = annotation.nearCache();
+            if (nearCaches.length > 1) {
+                throw new ProxyAnnotationException("Multiple near caches defined on method " + method.getName());
+            } else if (nearCaches.length == 1) {
+                provider = createNearCache(nearCaches[0], provider);
+            }
+            templateBuilder.withCacheProvider(annotation.key(), provider);
         }
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static NearCacheProvider<?> createNearCache(NearCache annotation, com.netflix.ribbon.CacheProvider<?> provider) {
+        Class<? extends Weigher<String, ?>>[] weigherClasses = annotation.weigher();
+        Weigher weigher;
+        if (weigherClasses.length == 0) {
+            weigher = new NearCacheProvider.SizeEstimatingWeigher();
+        } else if (weigherClasses.length > 1) {
+            throw new ProxyAnnotationException("Multiple weighers defined on near cache");
+        } else {
+            weigher = Utils.newInstance(weigherClasses[0]);
+        }
+        return NearCacheProvider.builder()
+                .withRemoteCacheProvider((com.netflix.ribbon.CacheProvider) provider)
+                .withMaximumWeight(annotation.maxBytes(), weigher)
+                .withTimeToLive(annotation.ttl(), TimeUnit.MILLISECONDS)
+                .withStaleWhileRevalidate(annotation.staleWhileRevalidate(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
     @Override
     public void process(String groupName, GroupBuilder groupBuilder, RibbonResourceFactory resourceFactory, Class<?> interfaceClass) {
     }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template compiled for repeated expansion. The literal text between variables is kept as precomputed
+ * segments and each variable occurrence is resolved to the index of its variable name, so an expansion
+ * only looks up the values and appends them between the segments.
+ */
+public final class CompiledTemplate {
+
+    /**
+     * Length assumed for a variable value when estimating the size of an expansion
+     */
+    private static final int ESTIMATED_VALUE_LENGTH = 16;
+
+    private final String template;
+    // segments[i] precedes slot i, the last segment follows the last slot
+    private final String[] segments;
+    private final int[] slotVariables;
+    private final boolean[] matrixSlots;
+    private final String[] variableNames;
+    private final int estimatedSize;
+
+    private CompiledTemplate(String template, String[] segments, int[] slotVariables, boolean[] matrixSlots,
+                             String[] variableNames) {
+        this.template = template;
+        this.segments = segments;
+        this.slotVariables = slotVariables;
+        this.matrixSlots = matrixSlots;
+        this.variableNames = variableNames;
+        int size = 0;
+        for (String segment : segments) {
+            size += segment.length();
+        }
+        for (int slot = 0; slot < slotVariables.length; slot++) {
+            size += ESTIMATED_VALUE_LENGTH;
+            if (matrixSlots[slot]) {
+                // ";name="
+                size += variableNames[slotVariables[slot]].length() + 2;
+            }
+        }
+        this.estimatedSize = size;
+    }
+
+    public static CompiledTemplate compile(String template) {
+        return compile(template, TemplateParser.parseTemplate(template));
+    }
+
+    static CompiledTemplate compile(String template, List<Object> parsed) {
+        List<String> segments = new ArrayList<String>();
+        List<String> names = new ArrayList<String>();
+        int slotCount = 0;
+        for (Object part : parsed) {
+            if (part instanceof TemplateVar) {
+                slotCount++;
+            }
+        }
+        int[] slotVariables = new int[slotCount];
+        boolean[] matrixSlots = new boolean[slotCount];
+        StringBuilder segment = new StringBuilder();
+        int slot = 0;
+        for (Object part : parsed) {
+            if (part instanceof TemplateVar) {
+                segments.add(segment.toString());
+                segment.setLength(0);
+                String name = part.toString();
+                int index = names.indexOf(name);
+                if (index < 0) {
+                    index = names.size();
+                    names.add(name);
+                }
+                slotVariables[slot] = index;
+                matrixSlots[slot] = part instanceof MatrixVar;
+                slot++;
+            } else {
+                segment.append(part);
+            }
+        }
+        segments.add(segment.toString());
+        return new CompiledTemplate(template, segments.toArray(new String[segments.size()]), slotVariables,
+                matrixSlots, names.toArray(new String[names.size()]));
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Expand the template with the variables looked up by name.
+     *
+     * @throws TemplateParsingException if the value of a path variable is missing
+     */
+    public String expand(Map<String, ?> variables) throws TemplateParsingException {
+        StringBuilder builder = new StringBuilder(estimatedSize);
+        int slots = slotVariables.length;
+        for (int slot = 0; slot < slots; slot++) {
+            builder.append(segments[slot]);
+            String name = variableNames[slotVariables[slot]];
+            Object value = variables.get(name);
+            if (value == null) {
+                if (!matrixSlots[slot]) {
+                    throw new TemplateParsingException(String.format("template variable %s was not supplied for template %s", name, template));
+                }
+                continue;
+            }
+            if (matrixSlots[slot]) {
+                builder.append(';').append(name).append('=');
+            }
+            builder.append(value);
+        }
+        return builder.append(segments[slots]).toString();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -21,11 +21,13 @@ public class ParsedTemplate {
 
     private List<Object> parsed;
     private String template;
+    private final CompiledTemplate compiled;
 
     public ParsedTemplate(List<Object> parsed, String template) {
         super();
         this.parsed = parsed;
         this.template = template;
+        this.compiled = CompiledTemplate.compile(template, parsed);
     }
 
     public final List<Object> getParsed() {
@@ -35,6 +37,10 @@ public class ParsedTemplate {
     public final String getTemplate() {
         return template;
     }
+
+    public final CompiledTemplate getCompiled() {
+        return compiled;
+    }
     
     public static ParsedTemplate create(String template) {
         List<Object> parsed = TemplateParser.parseTemplate(template);
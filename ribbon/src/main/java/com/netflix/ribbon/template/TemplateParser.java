@@ -31,38 +31,40 @@ public class TemplateParser {
         if (template == null) {
             return templateParts;
         }
-        StringBuilder val = new StringBuilder();
-        String key;
-        for (char c : template.toCharArray()) {
-            switch (c) {
+        int start = 0;
+        int length = template.length();
+        for (int i = 0; i < length; i++) {
+            switch (template.charAt(i)) {
                 case '{':
-                    key = val.toString();
-                    val = new StringBuilder();
-                    templateParts.add(key);
+                    templateParts.add(template.substring(start, i));
+                    start = i + 1;
                     break;
 
                 case '}':
-                    key = val.toString();
-                    val = new StringBuilder();
+                    String key = template.substring(start, i);
+                    start = i + 1;
                     if (key.charAt(0) == ';') {
                         templateParts.add(new MatrixVar(key.substring(1)));
                     } else {
                         templateParts.add(new PathVar(key));
                     }
                     break;
-                default:
-                    val.append(c);
             }
         }
-        key = val.toString();
-        if (!key.isEmpty()) {
-            templateParts.add(key);
+        if (start < length) {
+            templateParts.add(template.substring(start));
         }
         return templateParts;
     }
 
     public static String toData(Map<String, Object> variables, ParsedTemplate parsedTemplate) throws TemplateParsingException {
-        return toData(variables, parsedTemplate.getTemplate(), parsedTemplate.getParsed());
+        String template = parsedTemplate.getTemplate();
+        // skip expansion if there's no valid variables set. ex. {a} is the
+        // first valid
+        if (variables.isEmpty() && template.indexOf('{') == 0) {
+            return template;
+        }
+        return parsedTemplate.getCompiled().expand(variables);
     }
     
     public static String toData(Map<String, Object> variables, String template, List<Object> parsedList) throws TemplateParsingException {
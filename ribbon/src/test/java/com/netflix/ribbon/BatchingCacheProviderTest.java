@@ -0,0 +1,97 @@
+package com.netflix.ribbon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+public class BatchingCacheProviderTest {
+
+    private TestScheduler scheduler;
+
+    private InMemoryBatchingCacheProvider<String> cacheProvider;
+
+    @Before
+    public void setUp() {
+        scheduler = new TestScheduler();
+        cacheProvider = new InMemoryBatchingCacheProvider<String>(10, 3, scheduler);
+        cacheProvider.put("key1", "value1");
+        cacheProvider.put("key2", "value2");
+    }
+
+    @Test
+    public void testLookupsInWindowAreBatched() {
+        TestSubscriber<String> subscriber1 = new TestSubscriber<String>();
+        TestSubscriber<String> subscriber2 = new TestSubscriber<String>();
+        TestSubscriber<String> duplicate = new TestSubscriber<String>();
+        TestSubscriber<String> miss = new TestSubscriber<String>();
+        cacheProvider.get("key1", null).subscribe(subscriber1);
+        cacheProvider.get("key2", null).subscribe(subscriber2);
+        cacheProvider.get("key1", null).subscribe(duplicate);
+        cacheProvider.get("key3", null).subscribe(miss);
+
+        // the batch is full after three keys
+        assertEquals(1, cacheProvider.getBulkGets().size());
+        assertEquals(Arrays.asList("key1", "key2", "key3"), cacheProvider.getBulkGets().get(0));
+        subscriber1.assertReceivedOnNext(Arrays.asList("value1"));
+        subscriber1.assertTerminalEvent();
+        subscriber2.assertReceivedOnNext(Arrays.asList("value2"));
+        duplicate.assertReceivedOnNext(Arrays.asList("value1"));
+        assertEquals(1, miss.getOnErrorEvents().size());
+        assertTrue(miss.getOnErrorEvents().get(0) instanceof NoSuchElementException);
+    }
+
+    @Test
+    public void testBatchFetchedAfterWindow() {
+        TestSubscriber<String> subscriber = new TestSubscriber<String>();
+        cacheProvider.get("key1", null).subscribe(subscriber);
+        scheduler.advanceTimeBy(9, TimeUnit.MILLISECONDS);
+        assertEquals(0, cacheProvider.getBulkGets().size());
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(1, cacheProvider.getBulkGets().size());
+        subscriber.assertReceivedOnNext(Arrays.asList("value1"));
+
+        // a new lookup opens a new batch
+        TestSubscriber<String> next = new TestSubscriber<String>();
+        cacheProvider.get("key2", null).subscribe(next);
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("key2"), cacheProvider.getBulkGets().get(1));
+        next.assertReceivedOnNext(Arrays.asList("value2"));
+    }
+
+    @Test
+    public void testUnsubscribedLookupIsRemoved() {
+        Subscription subscription = cacheProvider.get("key1", null).subscribe(new TestSubscriber<String>());
+        TestSubscriber<String> subscriber = new TestSubscriber<String>();
+        cacheProvider.get("key2", null).subscribe(subscriber);
+        subscription.unsubscribe();
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList("key2"), cacheProvider.getBulkGets().get(0));
+        subscriber.assertReceivedOnNext(Arrays.asList("value2"));
+    }
+
+    @Test
+    public void testFailedBulkGet() {
+        RuntimeException error = new RuntimeException("cache unavailable");
+        cacheProvider.setError(error);
+        TestSubscriber<String> subscriber1 = new TestSubscriber<String>();
+        TestSubscriber<String> subscriber2 = new TestSubscriber<String>();
+        cacheProvider.get("key1", null).subscribe(subscriber1);
+        cacheProvider.get("key2", null).subscribe(subscriber2);
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList(error), subscriber1.getOnErrorEvents());
+        assertEquals(Arrays.asList(error), subscriber2.getOnErrorEvents());
+    }
+}
@@ -0,0 +1,60 @@
+package com.netflix.ribbon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import rx.Observable;
+import rx.Scheduler;
+
+/**
+ * A {@link BatchingCacheProvider} backed by a map, which stands in for a remote cache in tests
+ * and records the keys of each bulk get.
+ */
+public class InMemoryBatchingCacheProvider<T> extends BatchingCacheProvider<T> {
+
+    private final Map<String, T> cache = new ConcurrentHashMap<String, T>();
+
+    private final List<List<String>> bulkGets = new CopyOnWriteArrayList<List<String>>();
+
+    private volatile RuntimeException error;
+
+    public InMemoryBatchingCacheProvider(long batchWindowMillis, int maxBatchSize, Scheduler scheduler) {
+        super(batchWindowMillis, maxBatchSize, scheduler);
+    }
+
+    public void put(String key, T value) {
+        cache.put(key, value);
+    }
+
+    /**
+     * Fail the following bulk gets with the given error, or succeed again if it is null
+     */
+    public void setError(RuntimeException error) {
+        this.error = error;
+    }
+
+    public List<List<String>> getBulkGets() {
+        return bulkGets;
+    }
+
+    @Override
+    protected Observable<Map<String, T>> getBulk(Collection<String> keys) {
+        bulkGets.add(new ArrayList<String>(keys));
+        if (error != null) {
+            return Observable.error(error);
+        }
+        Map<String, T> values = new HashMap<String, T>();
+        for (String key : keys) {
+            T value = cache.get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return Observable.just(values);
+    }
+}
@@ -0,0 +1,315 @@
+package com.netflix.ribbon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func1;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Weigher;
+import com.netflix.hystrix.HystrixObservableCommand.Setter;
+import com.netflix.ribbon.ResourceGroup.TemplateBuilder;
+import com.netflix.ribbon.hystrix.FallbackHandler;
+import com.netflix.ribbon.proxy.annotation.NearCache;
+import com.netflix.ribbon.proxy.processor.CacheProviderAnnotationProcessor;
+import com.netflix.ribbon.proxy.sample.SampleCacheProviderFactory;
+
+public class NearCacheProviderTest {
+
+    static class FakeTicker extends Ticker {
+        final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(long millis) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+
+    static class RemoteCacheProvider implements CacheProvider<String> {
+        final Map<String, String> values = new ConcurrentHashMap<String, String>();
+        final AtomicInteger lookups = new AtomicInteger();
+        volatile PublishSubject<String> pending;
+
+        @Override
+        public Observable<String> get(String key, Map<String, Object> requestProperties) {
+            lookups.incrementAndGet();
+            if (pending != null) {
+                return pending;
+            }
+            String value = values.get(key);
+            return value == null ? Observable.<String>error(new NoSuchElementException(key)) : Observable.just(value);
+        }
+    }
+
+    static final Weigher<String, Object> UNIT_WEIGHER = new Weigher<String, Object>() {
+        @Override
+        public int weigh(String key, Object value) {
+            return 1;
+        }
+    };
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    private final RemoteCacheProvider remote = new RemoteCacheProvider();
+
+    private NearCacheProvider<String> createNearCache(long maxWeight, long staleWhileRevalidate) {
+        return NearCacheProvider.<String>builder()
+                .withRemoteCacheProvider(remote)
+                .withMaximumWeight(maxWeight, UNIT_WEIGHER)
+                .withTimeToLive(100, TimeUnit.MILLISECONDS)
+                .withStaleWhileRevalidate(staleWhileRevalidate, TimeUnit.MILLISECONDS)
+                .withTicker(ticker)
+                .build();
+    }
+
+    private String lookup(CacheProvider<String> cacheProvider, String key) {
+        return cacheProvider.get(key, null).toBlocking().first();
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() {
+        NearCacheProvider<String> nearCache = createNearCache(100, 0);
+        remote.pending = PublishSubject.create();
+        TestSubscriber<String> subscriber1 = new TestSubscriber<String>();
+        TestSubscriber<String> subscriber2 = new TestSubscriber<String>();
+        nearCache.get("key1", null).subscribe(subscriber1);
+        nearCache.get("key1", null).subscribe(subscriber2);
+        assertEquals(1, remote.lookups.get());
+
+        remote.pending.onNext("value1");
+        remote.pending.onCompleted();
+        subscriber1.assertReceivedOnNext(Arrays.asList("value1"));
+        subscriber2.assertReceivedOnNext(Arrays.asList("value1"));
+
+        // cached now
+        remote.pending = null;
+        assertEquals("value1", lookup(nearCache, "key1"));
+        assertEquals(1, remote.lookups.get());
+    }
+
+    @Test
+    public void testExpiry() {
+        NearCacheProvider<String> nearCache = createNearCache(100, 0);
+        remote.values.put("key1", "value1");
+        assertEquals("value1", lookup(nearCache, "key1"));
+        ticker.advance(99);
+        assertEquals("value1", lookup(nearCache, "key1"));
+        assertEquals(1, remote.lookups.get());
+
+        remote.values.put("key1", "value2");
+        ticker.advance(1);
+        assertEquals("value2", lookup(nearCache, "key1"));
+        assertEquals(2, remote.lookups.get());
+
+        // an entry with its own time to live
+        nearCache.put("key2", "value3", 10, TimeUnit.MILLISECONDS);
+        assertEquals("value3", lookup(nearCache, "key2"));
+        ticker.advance(10);
+        TestSubscriber<String> subscriber = new TestSubscriber<String>();
+        nearCache.get("key2", null).subscribe(subscriber);
+        assertTrue(subscriber.getOnErrorEvents().get(0) instanceof NoSuchElementException);
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() {
+        NearCacheProvider<String> nearCache = createNearCache(100, 50);
+        remote.values.put("key1", "value1");
+        assertEquals("value1", lookup(nearCache, "key1"));
+
+        remote.values.put("key1", "value2");
+        remote.pending = PublishSubject.create();
+        ticker.advance(120);
+        // the stale value is returned while it is reloaded
+        assertEquals("value1", lookup(nearCache, "key1"));
+        assertEquals("value1", lookup(nearCache, "key1"));
+        assertEquals(2, remote.lookups.get());
+        remote.pending.onNext("value2");
+        remote.pending.onCompleted();
+        remote.pending = null;
+        assertEquals("value2", lookup(nearCache, "key1"));
+        assertEquals(2, remote.lookups.get());
+
+        // too old to be returned
+        ticker.advance(150);
+        remote.values.put("key1", "value3");
+        assertEquals("value3", lookup(nearCache, "key1"));
+    }
+
+    @Test
+    public void testWithoutRemoteCacheProvider() {
+        NearCacheProvider<String> nearCache = NearCacheProvider.<String>builder()
+                .withMaximumWeight(1000, new NearCacheProvider.SizeEstimatingWeigher())
+                .withTimeToLive(100, TimeUnit.MILLISECONDS)
+                .build();
+        nearCache.put("key1", "value1");
+        assertEquals("value1", lookup(nearCache, "key1"));
+        assertEquals(96 + 2 * 4 + 2 * 6, nearCache.getWeight());
+
+        nearCache.invalidate("key1");
+        TestSubscriber<String> subscriber = new TestSubscriber<String>();
+        nearCache.get("key1", null).subscribe(subscriber);
+        assertTrue(subscriber.getOnErrorEvents().get(0) instanceof NoSuchElementException);
+    }
+
+    @Test
+    public void testFrequentEntriesSurviveScan() {
+        NearCacheProvider<String> nearCache = createNearCache(100, 0);
+        for (int i = 0; i < 100; i++) {
+            remote.values.put("hot" + i, "value" + i);
+        }
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 90; i++) {
+                lookup(nearCache, "hot" + i);
+            }
+        }
+        int lookups = remote.lookups.get();
+        // keys that are looked up once do not displace the frequently used ones
+        for (int i = 0; i < 1000; i++) {
+            nearCache.put("cold" + i, "value");
+        }
+        assertTrue(nearCache.getWeight() <= 100);
+        for (int i = 0; i < 90; i++) {
+            lookup(nearCache, "hot" + i);
+        }
+        assertEquals(lookups, remote.lookups.get());
+    }
+
+    @Test
+    public void testByteBufValuesAreReadIndependently() {
+        NearCacheProvider<ByteBuf> nearCache = NearCacheProvider.<ByteBuf>builder()
+                .withMaximumWeight(10000, new NearCacheProvider.SizeEstimatingWeigher())
+                .withTimeToLive(100, TimeUnit.MILLISECONDS)
+                .build();
+        ByteBuf content = Unpooled.copiedBuffer("value1", Charset.defaultCharset());
+        nearCache.put("key1", content);
+        // the cache holds its own reference
+        content.release();
+        assertEquals(1, content.refCnt());
+
+        for (int i = 0; i < 2; i++) {
+            // retained by the caller, as HttpRequest does for the results it returns
+            ByteBuf value = nearCache.get("key1", null).map(new Func1<ByteBuf, ByteBuf>() {
+                @Override
+                public ByteBuf call(ByteBuf buf) {
+                    return buf.retain();
+                }
+            }).toBlocking().first();
+            assertEquals(2, content.refCnt());
+            assertEquals("value1", value.readBytes(value.readableBytes()).toString(Charset.defaultCharset()));
+            value.release();
+        }
+        assertEquals(1, content.refCnt());
+
+        nearCache.invalidate("key1");
+        assertEquals(0, content.refCnt());
+    }
+
+    @Test
+    public void testLoadedByteBufValuesAreReadIndependently() {
+        final PublishSubject<ByteBuf> pending = PublishSubject.create();
+        NearCacheProvider<ByteBuf> nearCache = NearCacheProvider.<ByteBuf>builder()
+                .withRemoteCacheProvider(new CacheProvider<ByteBuf>() {
+                    @Override
+                    public Observable<ByteBuf> get(String key, Map<String, Object> requestProperties) {
+                        return pending;
+                    }
+                })
+                .withMaximumWeight(10000, new NearCacheProvider.SizeEstimatingWeigher())
+                .withTimeToLive(100, TimeUnit.MILLISECONDS)
+                .build();
+        final List<String> reads = new ArrayList<String>();
+        Action1<ByteBuf> reader = new Action1<ByteBuf>() {
+            @Override
+            public void call(ByteBuf buf) {
+                reads.add(buf.readBytes(buf.readableBytes()).toString(Charset.defaultCharset()));
+            }
+        };
+        nearCache.get("key1", null).subscribe(reader);
+        nearCache.get("key1", null).subscribe(reader);
+        ByteBuf content = Unpooled.copiedBuffer("value1", Charset.defaultCharset());
+        pending.onNext(content);
+        // released by the remote provider after it is emitted
+        content.release();
+        pending.onCompleted();
+        nearCache.get("key1", null).subscribe(reader);
+        assertEquals(Arrays.asList("value1", "value1", "value1"), reads);
+        assertEquals(1, content.refCnt());
+    }
+
+    interface NearCacheService {
+        @com.netflix.ribbon.proxy.annotation.CacheProvider(key = "movie_{id}", provider = SampleCacheProviderFactory.class,
+                nearCache = @NearCache(maxBytes = 1024 * 1024, ttl = 1000, staleWhileRevalidate = 500))
+        RibbonRequest<String> findMovie(String id);
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class CapturingTemplateBuilder extends TemplateBuilder {
+        CacheProvider cacheProvider;
+
+        @Override
+        public TemplateBuilder withCacheProvider(String cacheKeyTemplate, CacheProvider cacheProvider) {
+            this.cacheProvider = cacheProvider;
+            return this;
+        }
+
+        @Override
+        public TemplateBuilder withFallbackProvider(FallbackHandler fallbackProvider) {
+            return this;
+        }
+
+        @Override
+        public TemplateBuilder withResponseValidator(ResponseValidator transformer) {
+            return this;
+        }
+
+        @Override
+        public TemplateBuilder withRequestCacheKey(String cacheKeyTemplate) {
+            return this;
+        }
+
+        @Override
+        public TemplateBuilder withHystrixProperties(Setter setter) {
+            return this;
+        }
+
+        @Override
+        public RequestTemplate build() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testNearCacheAnnotation() throws Exception {
+        Method method = NearCacheService.class.getMethod("findMovie", String.class);
+        CapturingTemplateBuilder templateBuilder = new CapturingTemplateBuilder();
+        new CacheProviderAnnotationProcessor().process("findMovie", templateBuilder, method);
+        assertNotNull(templateBuilder.cacheProvider);
+        assertTrue(templateBuilder.cacheProvider instanceof NearCacheProvider);
+    }
+}
@@ -23,6 +23,8 @@ import com.netflix.hystrix.strategy.concurrency.HystrixRequestContext;
 import com.netflix.ribbon.http.HttpRequestTemplate;
 import com.netflix.ribbon.http.HttpResourceGroup;
 import com.netflix.ribbon.hystrix.FallbackHandler;
+import com.netflix.ribbon.test.resources.EmbeddedResources.Person;
+import com.netflix.serialization.JacksonCodec;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -106,6 +108,29 @@ public class RibbonTest {
         assertEquals(content, result);
     }
     
+    @Test
+    public void testDeserializedContent() throws IOException {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-type", "application/json")
+                .setBody("{\"name\": \"ribbon\", \"age\": 2}"));
+        server.play();
+
+        HttpResourceGroup group = Ribbon.createHttpResourceGroupBuilder("deserializedClient")
+                .withClientOptions(ClientOptions.create()
+                        .withConfigurationBasedServerList("localhost:" + server.getPort()))
+                .withDeserializer(JacksonCodec.getInstance())
+                .build();
+        HttpRequestTemplate<Person> template = group.newTemplateBuilder("person", Person.class)
+                .withUriTemplate("/person")
+                .withMethod("GET")
+                .build();
+
+        Person person = template.requestBuilder().build().execute();
+        assertEquals(new Person("ribbon", 2), person);
+    }
+
     @Test
     public void testHystrixCache() throws IOException {
         // LogManager.getRootLogger().setLevel((Level)Level.DEBUG);
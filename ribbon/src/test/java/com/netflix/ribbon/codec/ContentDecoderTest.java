@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+import com.netflix.ribbon.test.resources.EmbeddedResources.Person;
+import com.netflix.serialization.JacksonCodec;
+import com.netflix.serialization.TypeDef;
+
+import static org.junit.Assert.*;
+
+public class ContentDecoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Split the content into buffers of the given size
+     */
+    private static Observable<ByteBuf> chunks(String content, int size, List<ByteBuf> emitted) {
+        byte[] bytes = content.getBytes(UTF_8);
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+        for (int i = 0; i < bytes.length; i += size) {
+            buffers.add(Unpooled.copiedBuffer(bytes, i, Math.min(size, bytes.length - i)));
+        }
+        emitted.addAll(buffers);
+        return Observable.from(buffers);
+    }
+
+    /**
+     * Check that the decoder released everything it retained
+     */
+    private static void assertReleased(List<ByteBuf> buffers) {
+        for (ByteBuf buf : buffers) {
+            assertEquals(1, buf.refCnt());
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testDeserialize() {
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+        ContentDecoder<Person> decoder = new DeserializingContentDecoder<Person>(
+                JacksonCodec.<Person>getInstance(), TypeDef.fromClass(Person.class));
+        Person person = decoder.decode(chunks("{\"name\": \"ribbon\", \"age\": 3}", 5, buffers)).toBlocking().single();
+        assertEquals(new Person("ribbon", 3), person);
+        assertReleased(buffers);
+    }
+
+    @Test
+    public void testJsonArrayStream() {
+        String content = " [{\"name\": \"a,]\\\"}\", \"age\": 1}, {\"name\": \"b\", \"age\": 2},\n{\"name\":\"[c]\",\"age\":3}] ";
+        List<Person> expected = Arrays.asList(new Person("a,]\"}", 1), new Person("b", 2), new Person("[c]", 3));
+        ContentDecoder<Person> decoder = new JsonArrayContentDecoder<Person>(
+                JacksonCodec.<Person>getInstance(), TypeDef.fromClass(Person.class));
+        for (int size = 1; size <= content.length(); size++) {
+            List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+            List<Person> persons = decoder.decode(chunks(content, size, buffers)).toList().toBlocking().single();
+            assertEquals("chunk size " + size, expected, persons);
+            assertReleased(buffers);
+        }
+    }
+
+    @Test
+    public void testJsonArrayStreamEmitsElementsAsTheyArrive() {
+        ContentDecoder<Integer> decoder = new JsonArrayContentDecoder<Integer>(
+                JacksonCodec.<Integer>getInstance(), TypeDef.fromClass(Integer.class));
+        final List<Integer> received = new ArrayList<Integer>();
+        ByteBuf first = Unpooled.copiedBuffer("[1, 22, 3", UTF_8);
+        final ByteBuf second = Unpooled.copiedBuffer("33]", UTF_8);
+        Observable<ByteBuf> content = Observable.just(first).concatWith(Observable.defer(new Func0<Observable<ByteBuf>>() {
+            @Override
+            public Observable<ByteBuf> call() {
+                // the complete elements of the first buffer are emitted before the second one arrives
+                assertEquals(Arrays.asList(1, 22), received);
+                return Observable.just(second);
+            }
+        }));
+        decoder.decode(content).toBlocking().forEach(new Action1<Integer>() {
+            @Override
+            public void call(Integer i) {
+                received.add(i);
+            }
+        });
+        assertEquals(Arrays.asList(1, 22, 333), received);
+        assertReleased(Arrays.asList(first, second));
+    }
+
+    @Test
+    public void testEmptyJsonArray() {
+        ContentDecoder<Integer> decoder = new JsonArrayContentDecoder<Integer>(
+                JacksonCodec.<Integer>getInstance(), TypeDef.fromClass(Integer.class));
+        for (String content : Arrays.asList("[]", " [ \n] ")) {
+            assertTrue(decoder.decode(Observable.just(Unpooled.copiedBuffer(content, UTF_8))).toList().toBlocking().single().isEmpty());
+        }
+    }
+
+    @Test
+    public void testMissingJsonArrayElement() {
+        ContentDecoder<Integer> decoder = new JsonArrayContentDecoder<Integer>(
+                JacksonCodec.<Integer>getInstance(), TypeDef.fromClass(Integer.class));
+        for (String content : Arrays.asList("[1,]", "[,1]", "[1,,2]", "[1, ]", "[,]")) {
+            try {
+                decoder.decode(Observable.just(Unpooled.copiedBuffer(content, UTF_8))).toList().toBlocking().single();
+                fail("Decoded " + content);
+            } catch (RuntimeException e) {
+                assertTrue(content, e.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testIncompleteJsonArray() {
+        ContentDecoder<Integer> decoder = new JsonArrayContentDecoder<Integer>(
+                JacksonCodec.<Integer>getInstance(), TypeDef.fromClass(Integer.class));
+        decoder.decode(Observable.just(Unpooled.copiedBuffer("[1, 2", UTF_8))).toList().toBlocking().single();
+    }
+}
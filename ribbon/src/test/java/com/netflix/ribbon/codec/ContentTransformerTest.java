@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import rx.Observable;
+
+import com.netflix.ribbon.test.resources.EmbeddedResources.Person;
+import com.netflix.serialization.JacksonCodec;
+import com.netflix.serialization.TypeDef;
+
+import static org.junit.Assert.*;
+
+public class ContentTransformerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testUtf8() {
+        String[] values = {"", "ribbon", "caf\u00e9 \u20ac", "\ud83d\ude00 emoji", "unpaired \ud83d"};
+        for (String value : values) {
+            ByteBuf buf = Utf8ContentTransformer.INSTANCE.call(value, PooledByteBufAllocator.DEFAULT);
+            try {
+                assertTrue(buf.isDirect());
+                byte[] expected = value.getBytes(UTF_8);
+                assertEquals(value, expected.length, buf.readableBytes());
+                assertEquals(value, new String(expected, UTF_8), buf.toString(UTF_8));
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        SerializingContentTransformer<Person> transformer = new SerializingContentTransformer<Person>(
+                JacksonCodec.<Person>getInstance(), TypeDef.fromClass(Person.class));
+        ByteBuf buf = transformer.call(new Person("ribbon", 4), PooledByteBufAllocator.DEFAULT);
+        try {
+            assertTrue(buf.isDirect());
+            assertEquals(new Person("ribbon", 4), new DeserializingContentDecoder<Person>(JacksonCodec.<Person>getInstance(),
+                    TypeDef.fromClass(Person.class)).decode(Observable.just(buf)).toBlocking().single());
+        } finally {
+            buf.release();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+
+import com.google.mockwebserver.MockResponse;
+import com.google.mockwebserver.MockWebServer;
+import com.netflix.ribbon.ClientOptions;
+import com.netflix.ribbon.Ribbon;
+import com.netflix.ribbon.RibbonResponse;
+
+public class HttpRequestCollapserTest {
+
+    /**
+     * Maps a response of lines of key=value
+     */
+    static final BatchResponseMapper<ByteBuf, String> LINE_MAPPER = new BatchResponseMapper<ByteBuf, String>() {
+        @Override
+        public Map<String, String> mapResponse(ByteBuf batchResponse, Collection<String> keys) {
+            Map<String, String> results = new HashMap<String, String>();
+            for (String line : batchResponse.toString(Charset.defaultCharset()).split("\n")) {
+                String[] keyValue = line.split("=");
+                results.put(keyValue[0], keyValue[1]);
+            }
+            return results;
+        }
+    };
+
+    private MockWebServer server;
+    private HttpResourceGroup group;
+    private final TestScheduler scheduler = new TestScheduler();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.play();
+        group = Ribbon.createHttpResourceGroup("collapserClient",
+                ClientOptions.create().withConfigurationBasedServerList("localhost:" + server.getPort()));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private HttpRequestCollapser<ByteBuf, String> createCollapser(int maxBatchSize) {
+        HttpRequestTemplate<ByteBuf> batchTemplate = group.newTemplateBuilder("movies", ByteBuf.class)
+                .withMethod("GET")
+                .withUriTemplate("/movies?ids={ids}")
+                .build();
+        return group.<ByteBuf, String>newCollapserBuilder(batchTemplate)
+                .withKeyProperty("id")
+                .withBatchProperty("ids")
+                .withBatchWindow(10, TimeUnit.MILLISECONDS)
+                .withMaxBatchSize(maxBatchSize)
+                .withResponseMapper(LINE_MAPPER)
+                .withScheduler(scheduler)
+                .build();
+    }
+
+    private TestSubscriber<String> request(HttpRequestCollapser<ByteBuf, String> collapser, Object id) {
+        TestSubscriber<String> subscriber = new TestSubscriber<String>();
+        collapser.requestBuilder().withRequestProperty("id", id).build().toObservable().subscribe(subscriber);
+        return subscriber;
+    }
+
+    @Test
+    public void testRequestsInWindowShareOneBatchRequest() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("1=one\n2=two"));
+        HttpRequestCollapser<ByteBuf, String> collapser = createCollapser(100);
+        TestSubscriber<String> subscriber1 = request(collapser, 1);
+        TestSubscriber<String> subscriber2 = request(collapser, 2);
+        TestSubscriber<String> subscriber3 = request(collapser, 1);
+        TestSubscriber<String> subscriber4 = request(collapser, 3);
+        assertEquals(0, server.getRequestCount());
+
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        subscriber4.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber1.assertReceivedOnNext(Arrays.asList("one"));
+        subscriber2.assertReceivedOnNext(Arrays.asList("two"));
+        subscriber3.assertReceivedOnNext(Arrays.asList("one"));
+        // not in the batch response
+        assertTrue(subscriber4.getOnErrorEvents().get(0) instanceof NoSuchElementException);
+        assertEquals(1, server.getRequestCount());
+        assertEquals("/movies?ids=1,2,3", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void testFullBatchIsRequestedBeforeWindowEnds() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("1=one\n2=two"));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("3=three"));
+        HttpRequestCollapser<ByteBuf, String> collapser = createCollapser(2);
+        TestSubscriber<String> subscriber1 = request(collapser, 1);
+        TestSubscriber<String> subscriber2 = request(collapser, 2);
+        subscriber1.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber2.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber1.assertReceivedOnNext(Arrays.asList("one"));
+        subscriber2.assertReceivedOnNext(Arrays.asList("two"));
+
+        TestSubscriber<String> subscriber3 = request(collapser, 3);
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        subscriber3.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber3.assertReceivedOnNext(Arrays.asList("three"));
+        assertEquals("/movies?ids=1,2", server.takeRequest().getPath());
+        assertEquals("/movies?ids=3", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void testFailedBatchRequestFailsAllRequests() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        HttpRequestCollapser<ByteBuf, String> collapser = createCollapser(100);
+        TestSubscriber<String> subscriber1 = request(collapser, 1);
+        TestSubscriber<String> subscriber2 = request(collapser, 2);
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        subscriber1.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber2.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        assertEquals(1, subscriber1.getOnErrorEvents().size());
+        assertEquals(1, subscriber2.getOnErrorEvents().size());
+    }
+
+    @Test
+    public void testRequestWithMetadata() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("1=one"));
+        HttpRequestCollapser<ByteBuf, String> collapser = createCollapser(1);
+        RibbonResponse<String> response = collapser.requestBuilder().withRequestProperty("id", 1).build()
+                .withMetadata().execute();
+        assertEquals("one", response.content());
+        // executed by the command of the batch request
+        assertNull(response.getHystrixInfo());
+    }
+
+    @Test
+    public void testShutdownExecutesOpenBatch() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("1=one"));
+        HttpRequestCollapser<ByteBuf, String> collapser = createCollapser(100);
+        TestSubscriber<String> subscriber1 = request(collapser, 1);
+        collapser.shutdown();
+        subscriber1.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        subscriber1.assertReceivedOnNext(Arrays.asList("one"));
+
+        TestSubscriber<String> subscriber2 = request(collapser, 2);
+        assertTrue(subscriber2.getOnErrorEvents().get(0) instanceof IllegalStateException);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKeyPropertyIsRequired() {
+        createCollapser(100).requestBuilder().withRequestProperty("name", "ribbon").build();
+    }
+}
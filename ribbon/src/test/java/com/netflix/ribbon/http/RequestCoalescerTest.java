@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.observers.TestSubscriber;
+import rx.subjects.PublishSubject;
+
+import com.netflix.ribbon.Ribbon;
+
+public class RequestCoalescerTest {
+
+    static class CountingExecutionFactory<T> implements Func0<Observable<T>> {
+        final AtomicInteger executions = new AtomicInteger();
+        final AtomicInteger cancellations = new AtomicInteger();
+        volatile PublishSubject<T> subject;
+
+        @Override
+        public Observable<T> call() {
+            executions.incrementAndGet();
+            subject = PublishSubject.create();
+            return subject.doOnUnsubscribe(new Action0() {
+                @Override
+                public void call() {
+                    cancellations.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneExecution() {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<String>();
+        CountingExecutionFactory<String> factory = new CountingExecutionFactory<String>();
+        TestSubscriber<String> subscriber1 = new TestSubscriber<String>();
+        TestSubscriber<String> subscriber2 = new TestSubscriber<String>();
+        coalescer.coalesce("key1", factory).subscribe(subscriber1);
+        factory.subject.onNext("value1");
+        // joins after the first result, which is replayed
+        coalescer.coalesce("key1", factory).subscribe(subscriber2);
+        factory.subject.onNext("value2");
+        assertEquals(1, factory.executions.get());
+        assertEquals(1, coalescer.getExecutionCount());
+
+        factory.subject.onCompleted();
+        subscriber1.assertReceivedOnNext(Arrays.asList("value1", "value2"));
+        subscriber2.assertReceivedOnNext(Arrays.asList("value1", "value2"));
+        subscriber1.assertTerminalEvent();
+        subscriber2.assertTerminalEvent();
+        assertEquals(0, coalescer.getExecutionCount());
+
+        // the key is released when the execution completes
+        coalescer.coalesce("key1", factory).subscribe(new TestSubscriber<String>());
+        assertEquals(2, factory.executions.get());
+        // other keys do not share the execution
+        coalescer.coalesce("key2", factory).subscribe(new TestSubscriber<String>());
+        assertEquals(3, factory.executions.get());
+    }
+
+    @Test
+    public void testErrorIsSharedAndReleasesKey() {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<String>();
+        CountingExecutionFactory<String> factory = new CountingExecutionFactory<String>();
+        TestSubscriber<String> subscriber1 = new TestSubscriber<String>();
+        TestSubscriber<String> subscriber2 = new TestSubscriber<String>();
+        coalescer.coalesce("key1", factory).subscribe(subscriber1);
+        coalescer.coalesce("key1", factory).subscribe(subscriber2);
+        IllegalStateException error = new IllegalStateException();
+        factory.subject.onError(error);
+        assertEquals(Arrays.asList(error), subscriber1.getOnErrorEvents());
+        assertEquals(Arrays.asList(error), subscriber2.getOnErrorEvents());
+        assertEquals(0, coalescer.getExecutionCount());
+    }
+
+    @Test
+    public void testExecutionCanceledWhenAllRequestsUnsubscribe() {
+        RequestCoalescer<String> coalescer = new RequestCoalescer<String>();
+        CountingExecutionFactory<String> factory = new CountingExecutionFactory<String>();
+        Subscription subscription1 = coalescer.coalesce("key1", factory).subscribe(new TestSubscriber<String>());
+        TestSubscriber<String> subscriber2 = new TestSubscriber<String>();
+        Subscription subscription2 = coalescer.coalesce("key1", factory).subscribe(subscriber2);
+
+        subscription1.unsubscribe();
+        assertEquals(0, factory.cancellations.get());
+        factory.subject.onNext("value1");
+        subscriber2.assertReceivedOnNext(Arrays.asList("value1"));
+
+        subscription2.unsubscribe();
+        assertEquals(1, factory.cancellations.get());
+        assertEquals(0, coalescer.getExecutionCount());
+        assertFalse(factory.subject.hasObservers());
+    }
+
+    @Test
+    public void testByteBufReferenceCounting() {
+        RequestCoalescer<ByteBuf> coalescer = new RequestCoalescer<ByteBuf>();
+        CountingExecutionFactory<ByteBuf> factory = new CountingExecutionFactory<ByteBuf>();
+        TestSubscriber<ByteBuf> subscriber1 = new TestSubscriber<ByteBuf>();
+        TestSubscriber<ByteBuf> subscriber2 = new TestSubscriber<ByteBuf>();
+        coalescer.coalesce("key1", factory).subscribe(subscriber1);
+        coalescer.coalesce("key1", factory).subscribe(subscriber2);
+
+        ByteBuf content = Unpooled.copiedBuffer("value1", Charset.defaultCharset());
+        factory.subject.onNext(content);
+        // released by the transport after it is emitted
+        content.release();
+        assertEquals(1, content.refCnt());
+
+        ByteBuf result1 = subscriber1.getOnNextEvents().get(0);
+        ByteBuf result2 = subscriber2.getOnNextEvents().get(0);
+        // each request reads with its own reader index
+        assertEquals("value1", result1.toString(Charset.defaultCharset()));
+        result1.skipBytes(result1.readableBytes());
+        assertEquals("value1", result2.toString(Charset.defaultCharset()));
+        assertEquals(0, result2.readerIndex());
+
+        // retained by a request, as HttpRequest does for the results it returns
+        result2.retain();
+        factory.subject.onCompleted();
+        assertEquals(1, content.refCnt());
+        result2.release();
+        assertEquals(0, content.refCnt());
+    }
+
+    @Test
+    public void testTemplateCoalescesGetRequests() {
+        HttpResourceGroup group = Ribbon.createHttpResourceGroupBuilder("test").build();
+        HttpRequestTemplate<ByteBuf> template = group.newTemplateBuilder("testCoalescing", ByteBuf.class)
+                .withMethod("GET")
+                .withUriTemplate("/foo/{id}")
+                .withRequestCacheKey("foo/{id}")
+                .withRequestCoalescing()
+                .build();
+        assertTrue(template.requestCoalescer() != null);
+        assertTrue(template.copy("testCoalescingCopy").requestCoalescer() != null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCoalescingRequiresRequestCacheKey() {
+        HttpResourceGroup group = Ribbon.createHttpResourceGroupBuilder("test").build();
+        group.newTemplateBuilder("testCoalescingWithoutKey", ByteBuf.class)
+                .withMethod("GET")
+                .withUriTemplate("/foo/{id}")
+                .withRequestCoalescing()
+                .build();
+    }
+}
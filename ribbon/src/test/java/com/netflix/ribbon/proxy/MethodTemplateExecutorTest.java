@@ -162,8 +162,28 @@ public class MethodTemplateExecutorTest {
         assertEquals(ribbonRequestMock, ribbonRequest);
     }
 
+    @Test
+    public void testTemplateBuiltOnce() throws Exception {
+        expectUrlBase("GET", "/rawMovies/{id}");
+
+        expect(requestBuilderMock.withRequestProperty("id", "id123")).andReturn(requestBuilderMock);
+        expect(requestBuilderMock.withRequestProperty("id", "id456")).andReturn(requestBuilderMock);
+        expect(requestBuilderMock.build()).andReturn(ribbonRequestMock);
+        expect(httpRequestTemplateMock.requestBuilder()).andReturn(requestBuilderMock);
+        expect(httpResourceGroupMock.newTemplateBuilder("findRawMovieById")).andReturn(httpRequestTemplateBuilderMock);
+
+        replayAll();
+
+        MethodTemplateExecutor executor = createExecutor(SampleMovieService.class, "findRawMovieById");
+        executor.executeFromTemplate(new Object[]{"id123"});
+        executor.executeFromTemplate(new Object[]{"id456"});
+
+        verifyAll();
+    }
+
     @Test
     public void testFromFactory() throws Exception {
+        expect(httpRequestTemplateBuilderMock.build()).andReturn(httpRequestTemplateMock).anyTimes();
         expect(httpResourceGroupMock.newTemplateBuilder(anyObject(String.class))).andReturn(httpRequestTemplateBuilderMock).anyTimes();
         expect(httpRequestTemplateBuilderMock.withMethod(anyObject(String.class))).andReturn(httpRequestTemplateBuilderMock).anyTimes();
         expect(httpRequestTemplateBuilderMock.withUriTemplate(anyObject(String.class))).andReturn(httpRequestTemplateBuilderMock).anyTimes();
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Netflix, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.netflix.ribbon.template;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompiledTemplateTest {
+
+    @Test
+    public void testExpandMatchesParsedList() throws Exception {
+        String template = "/abc/{id}{;color}/x?name={name}&id={id}";
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("id", 5);
+        vars.put("name", "netflix");
+        CompiledTemplate compiled = CompiledTemplate.compile(template);
+        String expected = TemplateParser.toData(vars, template, TemplateParser.parseTemplate(template));
+        assertEquals("/abc/5/x?name=netflix&id=5", expected);
+        assertEquals(expected, compiled.expand(vars));
+
+        vars.put("color", "red");
+        assertEquals("/abc/5;color=red/x?name=netflix&id=5", compiled.expand(vars));
+        assertEquals(TemplateParser.toData(vars, template, TemplateParser.parseTemplate(template)), compiled.expand(vars));
+    }
+
+    @Test(expected = TemplateParsingException.class)
+    public void testMissingPathVariable() throws Exception {
+        CompiledTemplate.compile("/abc/{id}").expand(new HashMap<String, Object>());
+    }
+}